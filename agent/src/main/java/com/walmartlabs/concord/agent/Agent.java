@@ -31,6 +31,7 @@ import com.walmartlabs.concord.agent.executors.runner.DockerRunnerJobExecutor.Do
 import com.walmartlabs.concord.agent.executors.runner.RunnerJobExecutor.RunnerJobExecutorConfiguration;
 import com.walmartlabs.concord.agent.logging.LogAppender;
 import com.walmartlabs.concord.agent.logging.ProcessLogFactory;
+import com.walmartlabs.concord.agent.logging.RemoteLogAppender;
 import com.walmartlabs.concord.agent.postprocessing.JobFileUploadPostProcessor;
 import com.walmartlabs.concord.agent.postprocessing.JobPostProcessor;
 import com.walmartlabs.concord.client.ClientUtils;
@@ -42,6 +43,7 @@ import com.walmartlabs.concord.dependencymanager.DependencyManager;
 import com.walmartlabs.concord.project.InternalConstants;
 import com.walmartlabs.concord.server.queueclient.QueueClient;
 import com.walmartlabs.concord.server.queueclient.QueueClientConfiguration;
+import com.walmartlabs.concord.server.queueclient.message.MessageType;
 import com.walmartlabs.concord.server.queueclient.message.ProcessRequest;
 import com.walmartlabs.concord.server.queueclient.message.ProcessResponse;
 import org.slf4j.Logger;
@@ -70,6 +72,7 @@ public class Agent {
     private final ProcessApi processApi;
     private final ProcessLogFactory processLogFactory;
     private final ExecutorService executor;
+    private final ProcessPool processPool;
     private final WorkerFactory workerFactory;
 
     private final Map<UUID, Worker> activeWorkers = new ConcurrentHashMap<>();
@@ -84,18 +87,19 @@ public class Agent {
         SecretClient secretClient = new SecretClient(apiClient);
         RepositoryManager repositoryManager = new RepositoryManager(cfg, secretClient);
 
-        this.processLogFactory = new ProcessLogFactory(cfg.getLogDir(), cfg.getLogMaxDelay(), createLogAppender(processApi));
+        LogAppender logAppender = new RemoteLogAppender(apiClient, API_CALL_MAX_RETRIES, API_CALL_RETRY_DELAY, cfg.isLogCompression());
+        this.processLogFactory = new ProcessLogFactory(cfg.getLogDir(), cfg.getLogMaxDelay(), logAppender);
 
         this.executor = Executors.newCachedThreadPool();
 
-        ProcessPool processPool = new ProcessPool(cfg.getMaxPreforkAge(), cfg.getMaxPreforkCount());
+        this.processPool = new ProcessPool(cfg.getMaxPreforkAge(), cfg.getMaxPreforkCount());
         DependencyManager dependencyManager = new DependencyManager(cfg.getDependencyCacheDir());
         ImportManagerProvider imp = new ImportManagerProvider(repositoryManager, dependencyManager);
 
         JobExecutor runnerExec = createRunnerJobExecutor(cfg, processApi, processLogFactory, processPool, dependencyManager, executor);
         Map<JobRequest.Type, JobExecutor> executors = Collections.singletonMap(JobRequest.Type.RUNNER, runnerExec);
 
-        this.workerFactory = new WorkerFactory(repositoryManager, imp.get(), executors);
+        this.workerFactory = new WorkerFactory(repositoryManager, imp.get(), executors, executor);
     }
 
     public void run() throws Exception {
@@ -122,43 +126,67 @@ public class Agent {
             // check if the maintenance mode is enabled. If so, hang there indefinitely
             validateMaintenanceMode();
 
-            // TODO parallel acquire?
             // wait for a free "slot"
             workersAvailable.acquire();
             log.info("run -> acquired a slot, {}/{} remains", workersAvailable.availablePermits(), workersCount);
 
-            // fetch the next job
-            JobRequest jobRequest;
-            try {
-                jobRequest = take(queueClient);
-            } catch (Exception e) {
-                log.warn("run -> error while fetching a job: {}", e.getMessage());
+            // fetch the next job in a separate thread, so the agent can wait for multiple jobs at once:
+            // the queue client sends up to workersCount requests without waiting for responses
+            executor.submit(() -> acquireJob(queueClient, workersAvailable));
+        }
+    }
 
-                workersAvailable.release();
+    /**
+     * Releases the resources held by the agent: kills the pre-forked JVMs,
+     * unregisters the MBeans and stops watching the log files.
+     */
+    public void stop() {
+        log.info("stop -> stopping...");
+        processPool.stop();
+        processLogFactory.close();
+    }
 
-                // wait before retrying
-                // the server is not reachable or unhealthy, no point retrying immediately
-                Utils.sleep(ERROR_DELAY);
-                continue;
-            }
+    private void acquireJob(QueueClient queueClient, Semaphore workersAvailable) {
+        // fetch the next job
+        JobRequest jobRequest;
+        try {
+            jobRequest = take(queueClient);
+        } catch (Exception e) {
+            log.warn("acquireJob -> error while fetching a job: {}", e.getMessage());
 
-            if (jobRequest == null) {
-                // can happen on switching to maintenance mode or reconnecting, etc
-                workersAvailable.release();
-                continue;
-            }
+            // wait before retrying
+            // the server is not reachable or unhealthy, no point retrying immediately
+            Utils.sleep(ERROR_DELAY);
 
-            UUID instanceId = jobRequest.getInstanceId();
+            workersAvailable.release();
+            return;
+        }
 
-            // worker will handle the process' lifecycle
-            Worker w = workerFactory.create(jobRequest, createStatusCallback(instanceId, workersAvailable), createStateFetcher());
+        if (jobRequest == null) {
+            // can happen on switching to maintenance mode or reconnecting, etc
+            workersAvailable.release();
+            return;
+        }
+
+        UUID instanceId = jobRequest.getInstanceId();
 
-            // register the worker so we can cancel it later
-            activeWorkers.put(instanceId, w);
+        // worker will handle the process' lifecycle
+        Worker w;
+        try {
+            w = workerFactory.create(jobRequest, createStatusCallback(instanceId, workersAvailable), createStateFetcher());
+        } catch (ExecutionException e) {
+            log.error("acquireJob ['{}'] -> can't create a worker: {}", instanceId, e.getMessage());
 
-            // start a new thread to process the job
-            executor.submit(w);
+            workersAvailable.release();
+            updateStatus(instanceId, StatusEnum.FAILED);
+            return;
         }
+
+        // register the worker so we can cancel it later
+        activeWorkers.put(instanceId, w);
+
+        // start a new thread to process the job
+        executor.submit(w);
     }
 
     private QueueClient connectToServer() throws URISyntaxException {
@@ -168,6 +196,7 @@ public class Agent {
                 .connectTimeout(cfg.getConnectTimeout())
                 .pingInterval(cfg.getWebSocketPingInterval())
                 .maxNoActivityPeriod(cfg.getWebsocketMaxNoActivityPeriod())
+                .maxInFlightRequests(MessageType.PROCESS_REQUEST, cfg.getWorkersCount())
                 .build());
 
         queueClient.start();
@@ -271,22 +300,6 @@ public class Agent {
         w.cancel();
     }
 
-    private LogAppender createLogAppender(ProcessApi processApi) {
-        return (instanceId, ab) -> {
-            String path = "/api/v1/process/" + instanceId + "/log";
-
-            try {
-                ClientUtils.withRetry(API_CALL_MAX_RETRIES, API_CALL_RETRY_DELAY, () -> {
-                    ClientUtils.postData(processApi.getApiClient(), path, ab);
-                    return null;
-                });
-            } catch (ApiException e) {
-                // TODO handle errors
-                log.warn("appendLog ['{}'] -> error: {}", instanceId, e.getMessage());
-            }
-        };
-    }
-
     private static List<JobPostProcessor> createPostProcessors(ProcessApi processApi) {
         return Collections.singletonList(
                 new JobFileUploadPostProcessor(InternalConstants.Files.JOB_ATTACHMENTS_DIR_NAME,
@@ -47,6 +47,7 @@ public class Configuration {
 
     private final Path logDir;
     private final long logMaxDelay;
+    private final boolean logCompression;
 
     private final int workersCount;
     private final Path javaPath;
@@ -73,6 +74,8 @@ public class Configuration {
 
     private final Path repositoryCacheDir;
     private final long repositoryLockTimeout;
+    private final Path repositoryExportDir;
+    private final long repositoryExportMaxSize;
 
     private final String repositoryOauthToken;
     private final boolean shallowClone;
@@ -103,6 +106,7 @@ public class Configuration {
 
         this.logDir = getDir(cfg, "logDir");
         this.logMaxDelay = cfg.getDuration("logMaxDelay", TimeUnit.MILLISECONDS);
+        this.logCompression = cfg.getBoolean("logCompression");
 
         this.workersCount = cfg.getInt("workersCount");
 
@@ -142,6 +146,8 @@ public class Configuration {
 
         this.repositoryCacheDir = getDir(cfg, "repositoryCache.cacheDir");
         this.repositoryLockTimeout = cfg.getDuration("repositoryCache.lockTimeout", TimeUnit.MILLISECONDS);
+        this.repositoryExportDir = getDir(cfg, "repositoryCache.exportDir");
+        this.repositoryExportMaxSize = cfg.getBytes("repositoryCache.exportMaxSize");
 
         this.repositoryOauthToken = getStringOrDefault(cfg, "git.oauth", () -> null);
         this.shallowClone = cfg.getBoolean("git.shallowClone");
@@ -185,6 +191,10 @@ public class Configuration {
         return logMaxDelay;
     }
 
+    public boolean isLogCompression() {
+        return logCompression;
+    }
+
     public Path getPayloadDir() {
         return payloadDir;
     }
@@ -297,6 +307,14 @@ public class Configuration {
         return repositoryCacheDir;
     }
 
+    public Path getRepositoryExportDir() {
+        return repositoryExportDir;
+    }
+
+    public long getRepositoryExportMaxSize() {
+        return repositoryExportMaxSize;
+    }
+
     public int getRepositorySshTimeout() {
         return repositorySshTimeout;
     }
@@ -327,6 +345,7 @@ public class Configuration {
                 ", payloadDir=" + payloadDir +
                 ", logDir=" + logDir +
                 ", logMaxDelay=" + logMaxDelay +
+                ", logCompression=" + logCompression +
                 ", workersCount=" + workersCount +
                 ", javaPath=" + javaPath +
                 ", pollInterval=" + pollInterval +
@@ -345,6 +364,8 @@ public class Configuration {
                 ", extraDockerVolumes=" + extraDockerVolumes +
                 ", repositoryCacheDir=" + repositoryCacheDir +
                 ", repositoryLockTimeout=" + repositoryLockTimeout +
+                ", repositoryExportDir=" + repositoryExportDir +
+                ", repositoryExportMaxSize=" + repositoryExportMaxSize +
                 ", repositoryOauthToken='" + repositoryOauthToken + '\'' +
                 ", shallowClone=" + shallowClone +
                 ", repositoryHttpLowSpeedLimit=" + repositoryHttpLowSpeedLimit +
@@ -26,6 +26,7 @@ public class Main {
     public static void main(String[] args) throws Exception {
         Configuration cfg = new Configuration();
         Agent a = new Agent(cfg);
+        Runtime.getRuntime().addShutdownHook(new Thread(a::stop, "agent-shutdown"));
         a.run();
     }
 }
@@ -20,20 +20,49 @@ package com.walmartlabs.concord.agent;
  * =====
  */
 
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import com.walmartlabs.concord.ApiException;
 import com.walmartlabs.concord.client.ClientUtils;
 import com.walmartlabs.concord.client.ProcessApi;
-import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.Posix;
+import org.apache.commons.compress.archivers.zip.AsiExtraField;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipExtraField;
+import org.apache.commons.compress.archivers.zip.ZipShort;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
 
+/**
+ * Downloads the process state and extracts it while the data is being
+ * received. Each extracted file is checked against the CRC and the size
+ * recorded in the archive. The archive must end with the "end of central
+ * directory" record, otherwise the state is considered incomplete.
+ */
 public class RemoteStateFetcher implements Worker.StateFetcher {
 
     private static final Logger log = LoggerFactory.getLogger(RemoteStateFetcher.class);
 
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final ZipShort ASI_HEADER_ID = new AsiExtraField().getHeaderId();
+
+    /**
+     * "End of central directory" record without a comment.
+     */
+    private static final int EOCD_SIZE = 22;
+    private static final byte[] EOCD_SIG = {0x50, 0x4b, 0x05, 0x06};
+
     private final ProcessApi processApi;
     private final int maxRetries;
     private final long retryDelay;
@@ -45,27 +74,222 @@ public class RemoteStateFetcher implements Worker.StateFetcher {
     }
 
     @Override
-    public void downloadState(JobRequest job) throws Exception {
-        File payload = null;
-        try {
-            payload = ClientUtils.withRetry(maxRetries, retryDelay, () -> processApi.downloadState(job.getInstanceId()));
-            IOUtils.unzip(payload.toPath(), job.getPayloadDir(), StandardCopyOption.REPLACE_EXISTING);
-        } finally {
-            if (payload != null) {
-                delete(payload.toPath());
+    public void downloadState(JobRequest job, Path dst) throws Exception {
+        // a failed attempt may leave some files behind, they are overwritten
+        // by the next attempt
+        ClientUtils.withRetry(maxRetries, retryDelay, () -> {
+            Call call = processApi.downloadStateCall(job.getInstanceId(), null, null);
+            Response resp = call.execute();
+            try (ResponseBody body = resp.body()) {
+                if (!resp.isSuccessful()) {
+                    throw new ApiException(resp.code(), resp.message(), resp.headers().toMultimap(), body.string());
+                }
+
+                int count = extract(body.byteStream(), dst);
+                log.info("downloadState ['{}'] -> extracted {} file(s)", job.getInstanceId(), count);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Extracts a ZIP archive from the stream, without buffering the whole archive.
+     * The archive's entries must be DEFLATED or contain the CRC and
+     * the size in their local headers. See {@code ProcessStateManager.ZipConsumer}
+     * on the server side.
+     * <p>
+     * {@link ZipArchiveInputStream} doesn't distinguish the end of the archive
+     * from a stream truncated at an entry's boundary. The last bytes of the
+     * stream are checked for the "end of central directory" record.
+     *
+     * @return number of extracted files
+     */
+    static int extract(InputStream in, Path dst) throws IOException {
+        Path root = dst.toAbsolutePath().normalize();
+
+        TailInputStream tailIn = new TailInputStream(in);
+
+        int count = 0;
+        try (ZipArchiveInputStream zip = new ZipArchiveInputStream(tailIn)) {
+            Extracted prev = null;
+
+            ZipArchiveEntry e;
+            while ((e = zip.getNextZipEntry()) != null) {
+                // the CRC and the size of an entry with a data descriptor
+                // are known only after the entry's data is read
+                verify(prev);
+                prev = null;
+
+                Path p = root.resolve(e.getName()).normalize();
+                if (!p.startsWith(root)) {
+                    throw new IOException("Invalid entry name: " + e.getName());
+                }
+
+                if (e.isDirectory()) {
+                    Files.createDirectories(p);
+                    continue;
+                }
+
+                Files.createDirectories(p.getParent());
+
+                CRC32 crc = new CRC32();
+                long size = 0;
+                try (OutputStream out = Files.newOutputStream(p)) {
+                    byte[] ab = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = zip.read(ab)) > 0) {
+                        crc.update(ab, 0, read);
+                        out.write(ab, 0, read);
+                        size += read;
+                    }
+                }
+
+                int unixMode = getUnixMode(e);
+                if (unixMode <= 0) {
+                    unixMode = Posix.DEFAULT_UNIX_MODE;
+                }
+                Files.setPosixFilePermissions(p, Posix.posix(unixMode));
+
+                prev = new Extracted(e, crc.getValue(), size);
+                count++;
+            }
+
+            verify(prev);
+
+            // read the rest of the archive (the central directory), if any
+            byte[] ab = new byte[BUFFER_SIZE];
+            while (tailIn.read(ab) >= 0) {
+                // just read the data
+            }
+
+            if (!tailIn.endsWith(EOCD_SIG, EOCD_SIZE)) {
+                throw new IOException("Unexpected end of the archive, the state is incomplete");
             }
         }
+
+        return count;
     }
 
-    private static void delete(Path dir) {
-        if (dir == null) {
+    /**
+     * The "external attributes" are stored only in the central directory
+     * which is not available when the archive is read sequentially. The server
+     * sends the unix mode in the local header using the ASi extra field.
+     */
+    private static int getUnixMode(ZipArchiveEntry e) {
+        ZipExtraField f = e.getExtraField(ASI_HEADER_ID);
+        if (f instanceof AsiExtraField) {
+            return ((AsiExtraField) f).getMode();
+        }
+        return e.getUnixMode();
+    }
+
+    private static void verify(Extracted x) throws IOException {
+        if (x == null) {
             return;
         }
 
-        try {
-            IOUtils.deleteRecursively(dir);
-        } catch (Exception e) {
-            log.warn("delete ['{}'] -> error", dir, e);
+        ZipArchiveEntry e = x.entry;
+        if (e.getCrc() != x.crc) {
+            throw new IOException("CRC mismatch: " + e.getName() + " (expected " + e.getCrc() + ", got " + x.crc + ")");
+        }
+
+        if (e.getSize() != x.size) {
+            throw new IOException("Size mismatch: " + e.getName() + " (expected " + e.getSize() + ", got " + x.size + ")");
+        }
+    }
+
+    /**
+     * Keeps the last bytes read from the stream.
+     */
+    private static final class TailInputStream extends FilterInputStream {
+
+        private final byte[] tail = new byte[EOCD_SIZE];
+        private long total;
+
+        private TailInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                append(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                append(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // the skipped bytes must be seen too
+            byte[] ab = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(ab, 0, (int) Math.min(ab.length, n - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Returns {@code true} if the last {@code size} bytes of the stream start
+         * with the specified signature and the record's comment is empty.
+         */
+        private boolean endsWith(byte[] sig, int size) {
+            if (total < size) {
+                return false;
+            }
+
+            for (int i = 0; i < sig.length; i++) {
+                if (tail[tail.length - size + i] != sig[i]) {
+                    return false;
+                }
+            }
+
+            // the comment's length, the last two bytes of the record
+            return tail[tail.length - 2] == 0 && tail[tail.length - 1] == 0;
+        }
+
+        private void append(byte[] b, int off, int len) {
+            total += len;
+
+            if (len >= tail.length) {
+                System.arraycopy(b, off + len - tail.length, tail, 0, tail.length);
+                return;
+            }
+
+            System.arraycopy(tail, len, tail, 0, tail.length - len);
+            System.arraycopy(b, off, tail, tail.length - len, len);
+        }
+    }
+
+    private static final class Extracted {
+
+        private final ZipArchiveEntry entry;
+        private final long crc;
+        private final long size;
+
+        private Extracted(ZipArchiveEntry entry, long crc, long size) {
+            this.entry = entry;
+            this.crc = crc;
+            this.size = size;
         }
     }
 }
@@ -24,6 +24,7 @@ import com.walmartlabs.concord.client.SecretClient;
 import com.walmartlabs.concord.repository.*;
 import com.walmartlabs.concord.sdk.Secret;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
@@ -35,8 +36,9 @@ public class RepositoryManager {
     private final RepositoryProviders providers;
     private final SecretClient secretClient;
     private final Path cacheDir;
+    private final RepositoryExportCache exportCache;
 
-    public RepositoryManager(Configuration cfg, SecretClient secretClient) {
+    public RepositoryManager(Configuration cfg, SecretClient secretClient) throws IOException {
         GitClientConfiguration gitCfg = GitClientConfiguration.builder()
                 .oauthToken(cfg.getRepositoryOauthToken())
                 .shallowClone(cfg.isShallowClone())
@@ -51,6 +53,9 @@ public class RepositoryManager {
 
         this.secretClient = secretClient;
         this.cacheDir = cfg.getRepositoryCacheDir();
+
+        // the runner can modify the workspace files in place, so the files are always copied
+        this.exportCache = new RepositoryExportCache(cfg.getRepositoryExportDir(), cfg.getRepositoryExportMaxSize(), false);
     }
 
     public void export(String repoUrl, String commitId, String repoPath, Path dest, SecretDefinition secretDefinition) throws ExecutionException {
@@ -60,11 +65,21 @@ public class RepositoryManager {
     public void export(String repoUrl, String branch, String commitId, String repoPath, Path dest, SecretDefinition secretDefinition) throws ExecutionException {
         Secret secret = getSecret(secretDefinition);
 
-        providers.withLock(repoUrl, () -> {
-            Repository repo = providers.fetch(repoUrl, branch, commitId, repoPath, secret, cacheDir);
-            repo.export(dest);
-            return null;
-        });
+        // exports are shared only between the processes using the same credentials
+        String key = repoUrl + "/" + repoPath;
+        if (secretDefinition != null) {
+            key += "/" + secretDefinition.org() + "/" + secretDefinition.name();
+        }
+
+        try {
+            exportCache.export(key, branch, commitId, dest, callback ->
+                    providers.withLock(repoUrl, () -> {
+                        callback.accept(providers.fetch(repoUrl, branch, commitId, repoPath, secret, cacheDir));
+                        return null;
+                    }));
+        } catch (IOException e) {
+            throw new ExecutionException("Error while exporting the repository '" + repoUrl + "': " + e.getMessage(), e);
+        }
     }
 
     private Secret getSecret(SecretDefinition secret) throws ExecutionException {
@@ -28,8 +28,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.file.Path;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static com.walmartlabs.concord.project.model.Import.SecretDefinition;
 
@@ -42,6 +45,7 @@ public class Worker implements Runnable {
     private final JobExecutor executor;
     private final CompletionCallback completionCallback;
     private final StateFetcher stateFetcher;
+    private final ExecutorService preparationExecutor;
     private final JobRequest jobRequest;
 
     private JobInstance jobInstance;
@@ -51,6 +55,7 @@ public class Worker implements Runnable {
                   JobExecutor executor,
                   CompletionCallback completionCallback,
                   StateFetcher stateFetcher,
+                  ExecutorService preparationExecutor,
                   JobRequest jobRequest) {
 
         this.repositoryManager = repositoryManager;
@@ -59,6 +64,7 @@ public class Worker implements Runnable {
         this.jobRequest = jobRequest;
         this.completionCallback = completionCallback;
         this.stateFetcher = stateFetcher;
+        this.preparationExecutor = preparationExecutor;
     }
 
     @Override
@@ -67,12 +73,8 @@ public class Worker implements Runnable {
         UUID instanceId = jobRequest.getInstanceId();
 
         try {
-            // fetch the git repo's data...
-            fetchRepo(jobRequest);
-            // ...and process imports
-            processImports(jobRequest);
-            // ...and download the saved process state from the server
-            downloadState(jobRequest);
+            // fetch the git repo's data, process imports and download the saved process state
+            prepare(jobRequest);
 
             // execute the job
             jobInstance = executor.exec(jobRequest);
@@ -120,9 +122,61 @@ public class Worker implements Runnable {
         log.info("handleError ['{}'] -> done", instanceId);
     }
 
-    private void fetchRepo(JobRequest r) throws Exception {
+    /**
+     * Prepares the job's payload directory. The repository export, the imports
+     * and the process state download run concurrently, the results are merged
+     * in the same order as if the steps were performed sequentially:
+     * the repository's files, then the imports, then the process state.
+     * Each step overwrites the files of the previous steps.
+     */
+    private void prepare(JobRequest r) throws Exception {
+        long t1 = System.currentTimeMillis();
+
+        Path payloadDir = r.getPayloadDir();
+
+        // the repository's data goes directly into the payload directory
+        // the imports and the process state are stored separately and moved on top of it
+        Path importsDir = null;
+        Path stateDir = null;
+        try {
+            importsDir = IOUtils.createTempDir(payloadDir.getParent(), "imports");
+            stateDir = IOUtils.createTempDir(payloadDir.getParent(), "state");
+
+            Path _importsDir = importsDir;
+            Path _stateDir = stateDir;
+
+            Future<Long> repoResult = preparationExecutor.submit(() -> fetchRepo(r, payloadDir));
+            Future<Long> importsResult = preparationExecutor.submit(() -> processImports(r, _importsDir));
+            Future<Long> stateResult = preparationExecutor.submit(() -> downloadState(r, _stateDir));
+
+            // wait for all steps to finish before reporting errors
+            // (in the same order as the steps are merged)
+            Step repo = Step.await(repoResult);
+            Step imports = Step.await(importsResult);
+            Step state = Step.await(stateResult);
+
+            repo.check();
+            imports.check();
+            state.check();
+
+            long t2 = System.currentTimeMillis();
+
+            merge(importsDir, payloadDir);
+            merge(stateDir, payloadDir);
+
+            long t3 = System.currentTimeMillis();
+
+            log.info("prepare ['{}'] -> done in {}ms (repository: {}ms, imports: {}ms, state: {}ms, merge: {}ms)",
+                    r.getInstanceId(), (t3 - t1), repo.duration, imports.duration, state.duration, (t3 - t2));
+        } finally {
+            delete(importsDir);
+            delete(stateDir);
+        }
+    }
+
+    private long fetchRepo(JobRequest r, Path dst) throws Exception {
         if (r.getRepoUrl() == null || r.getCommitId() == null) {
-            return;
+            return 0;
         }
 
         r.getLog().info("Exporting the repository data: {} @ {}, {}", r.getRepoUrl(), r.getCommitId(), r.getRepoPath());
@@ -133,7 +187,7 @@ public class Worker implements Runnable {
                     r.getRepoUrl(),
                     r.getCommitId(),
                     r.getRepoPath(),
-                    r.getPayloadDir(),
+                    dst,
                     getSecret(r)));
         } catch (Exception e) {
             r.getLog().error("Repository export error: {}", e.getMessage());
@@ -141,6 +195,7 @@ public class Worker implements Runnable {
         }
 
         r.getLog().info("Repository data export took {}ms", dt);
+        return dt;
     }
 
     private static SecretDefinition getSecret(JobRequest r) {
@@ -154,34 +209,70 @@ public class Worker implements Runnable {
                 .build();
     }
 
-    private void downloadState(JobRequest r) throws Exception {
+    private long downloadState(JobRequest r, Path dst) throws Exception {
         r.getLog().info("Downloading the process state...");
 
         long dt;
         try {
-            dt = withTimer(() -> stateFetcher.downloadState(r));
+            dt = withTimer(() -> stateFetcher.downloadState(r, dst));
         } catch (Exception e) {
             r.getLog().error("State download error: {}", e.getMessage());
             throw e;
         }
 
         r.getLog().info("Process state download took {}ms", dt);
+        return dt;
     }
 
-    private void processImports(JobRequest r) throws ExecutionException {
+    private long processImports(JobRequest r, Path dst) throws ExecutionException {
         if (r.getImports().isEmpty()) {
-            return;
+            return 0;
         }
 
         long dt;
         try {
-            dt = withTimer(() -> importManager.process(r.getImports(), r.getPayloadDir()));
+            dt = withTimer(() -> importManager.process(r.getImports(), dst));
         } catch (Exception e) {
             r.getLog().error("Error while reading the process' imports: " + e.getMessage());
             throw new ExecutionException("Error while reading the process' imports", e);
         }
 
         r.getLog().info("Import of external resources took {}ms", dt);
+        return dt;
+    }
+
+    /**
+     * Moves all files from {@code src} into {@code dst}, replacing the existing files.
+     */
+    private static void merge(Path src, Path dst) throws IOException {
+        Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Path p = dst.resolve(src.relativize(dir));
+                if (!Files.isDirectory(p)) {
+                    Files.createDirectories(p);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.move(file, dst.resolve(src.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void delete(Path dir) {
+        if (dir == null) {
+            return;
+        }
+
+        try {
+            IOUtils.deleteRecursively(dir);
+        } catch (IOException e) {
+            log.warn("delete ['{}'] -> error: {}", dir, e.getMessage());
+        }
     }
 
     private static Throwable unwrap(Throwable t) {
@@ -208,9 +299,41 @@ public class Worker implements Runnable {
         void apply() throws Exception;
     }
 
+    /**
+     * Result of a preparation step.
+     */
+    private static final class Step {
+
+        private final long duration;
+        private final Exception error;
+
+        private Step(long duration, Exception error) {
+            this.duration = duration;
+            this.error = error;
+        }
+
+        private static Step await(Future<Long> f) throws InterruptedException {
+            try {
+                return new Step(f.get(), null);
+            } catch (java.util.concurrent.ExecutionException e) {
+                Throwable t = e.getCause();
+                return new Step(0, t instanceof Exception ? (Exception) t : new RuntimeException(t));
+            }
+        }
+
+        private void check() throws Exception {
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
     public interface StateFetcher {
 
-        void downloadState(JobRequest jobRequest) throws Exception;
+        /**
+         * Downloads the process state and unpacks it into the {@code dst} directory.
+         */
+        void downloadState(JobRequest jobRequest, Path dst) throws Exception;
     }
 
     public interface CompletionCallback {
@@ -24,17 +24,24 @@ import com.walmartlabs.concord.agent.executors.JobExecutor;
 import com.walmartlabs.concord.imports.ImportManager;
 
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 public class WorkerFactory {
 
     private final RepositoryManager repositoryManager;
     private final ImportManager importManager;
     private final Map<JobRequest.Type, JobExecutor> executors;
+    private final ExecutorService preparationExecutor;
+
+    public WorkerFactory(RepositoryManager repositoryManager,
+                         ImportManager importManager,
+                         Map<JobRequest.Type, JobExecutor> executors,
+                         ExecutorService preparationExecutor) {
 
-    public WorkerFactory(RepositoryManager repositoryManager, ImportManager importManager, Map<JobRequest.Type, JobExecutor> executors) {
         this.repositoryManager = repositoryManager;
         this.importManager = importManager;
         this.executors = executors;
+        this.preparationExecutor = preparationExecutor;
     }
 
     public Worker create(JobRequest jobRequest, Worker.CompletionCallback completionCallback, Worker.StateFetcher stateFetcher) throws ExecutionException {
@@ -43,6 +50,6 @@ public class WorkerFactory {
             throw new ExecutionException("Unsupported job type: " + jobRequest.getType());
         }
 
-        return new Worker(repositoryManager, importManager, executor, completionCallback, stateFetcher, jobRequest);
+        return new Worker(repositoryManager, importManager, executor, completionCallback, stateFetcher, preparationExecutor, jobRequest);
     }
 }
@@ -26,23 +26,50 @@ import com.walmartlabs.concord.agent.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
-public class ProcessPool {
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps "pre-forked" JVMs for each observed command line.
+ * <p>
+ * The number of pre-forked instances of each command follows the demand:
+ * it equals to the number of requests for that command made during
+ * the last {@code maxEntryAge} ms, limited by {@code maxEntryCount}.
+ * Commands without recent requests are not pre-forked at all.
+ * <p>
+ * New processes are always started outside of the pool's lock.
+ */
+public class ProcessPool implements ProcessPoolMXBean {
 
     private static final Logger log = LoggerFactory.getLogger(ProcessPool.class);
 
     private static final long CLEANUP_PERIOD = 30000;
+    private static final String MBEAN_NAME = "com.walmartlabs.concord.agent:type=ProcessPool";
 
     private final long maxEntryAge;
     private final int maxEntryCount;
-    private final Map<HashCode, Queue<ProcessEntry>> pool = new HashMap<>();
+    private final Map<HashCode, Slot> pool = new HashMap<>();
     private final ExecutorService executor = Executors.newCachedThreadPool();
 
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+    private final AtomicLong startErrors = new AtomicLong();
+
+    private Thread cleanupThread;
+    private ObjectName mbeanName;
+
     public ProcessPool(long maxEntryAge, int maxEntryCount) {
         this.maxEntryAge = maxEntryAge;
         this.maxEntryCount = maxEntryCount;
@@ -65,98 +92,268 @@ public class ProcessPool {
         }, "process-pool-cleanup");
 
         t.start();
+        this.cleanupThread = t;
+
+        this.mbeanName = registerMBean();
     }
 
-    public ProcessEntry take(HashCode hc, ProcessLauncher launcher) throws ExecutionException {
+    /**
+     * Stops the cleanup thread, kills the idle processes and unregisters
+     * the pool's MBean. Must be called when the pool is no longer used.
+     */
+    public void stop() {
+        cleanupThread.interrupt();
+        executor.shutdownNow();
+
+        List<ProcessEntry> entries = new ArrayList<>();
         synchronized (pool) {
-            Queue<ProcessEntry> q = pool.computeIfAbsent(hc, k -> new LinkedList<>());
+            pool.values().forEach(s -> entries.addAll(s.idle));
+            pool.clear();
+        }
 
-            ProcessEntry entry = q.poll();
-            if (entry == null) {
-                try {
-                    entry = launcher.start();
-                } catch (IOException e) {
-                    throw new ExecutionException("Error while starting a new process", e);
-                }
+        for (ProcessEntry e : entries) {
+            Utils.kill(e.process);
+        }
 
-                log.info("take -> started a new process: {}", entry.procDir);
-            } else {
-                log.info("take -> using a pre-forked instance: {}", entry.procDir);
+        if (mbeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            } catch (JMException e) {
+                log.warn("stop -> can't unregister the pool's MBean: {}", e.getMessage());
             }
+            mbeanName = null;
+        }
+    }
 
-            executor.submit(() -> populate(hc, launcher));
-
-            return entry;
+    private ObjectName registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            try {
+                return server.registerMBean(this, new ObjectName(MBEAN_NAME)).getObjectName();
+            } catch (InstanceAlreadyExistsException e) {
+                // another pool in the same JVM (e.g. in tests)
+                ObjectName name = new ObjectName(MBEAN_NAME + ",id=" + Integer.toHexString(System.identityHashCode(this)));
+                return server.registerMBean(this, name).getObjectName();
+            }
+        } catch (JMException e) {
+            log.warn("init -> can't register the pool's MBean: {}", e.getMessage());
+            return null;
         }
     }
 
-    private void populate(HashCode hc, ProcessLauncher launcher) {
+    public ProcessEntry take(HashCode hc, ProcessLauncher launcher) throws ExecutionException {
+        long t1 = System.nanoTime();
+
+        Slot slot;
+        ProcessEntry entry;
+        int toStart;
         synchronized (pool) {
-            // calculate the total number of processes in the pool
-            int total = 0;
-            for (Map.Entry<HashCode, Queue<ProcessEntry>> e : pool.entrySet()) {
-                total += e.getValue().size();
-            }
+            slot = pool.computeIfAbsent(hc, k -> new Slot());
+            slot.launcher = launcher;
+            slot.takes.add(System.currentTimeMillis());
 
-            if (total >= maxEntryCount) {
-                // mark the oldest entry for removal
-                ProcessEntry oldest = null;
-                for (Map.Entry<HashCode, Queue<ProcessEntry>> q : pool.entrySet()) {
-                    for (ProcessEntry e : q.getValue()) {
-                        if (oldest == null || oldest.timestamp > e.timestamp) {
-                            oldest = e;
-                        }
-                    }
-                }
+            entry = slot.idle.poll();
 
-                // it's never null
-                assert oldest != null;
+            // warm up as many instances as the current demand requires
+            toStart = slot.reserve(target(slot, System.currentTimeMillis()));
+        }
 
-                oldest.remove = true;
-            }
+        for (int i = 0; i < toStart; i++) {
+            populate(hc, slot);
+        }
 
-            // add a new pool entry
-            Queue<ProcessEntry> q = pool.computeIfAbsent(hc, k -> new LinkedList<>());
+        if (entry == null) {
             try {
-                q.add(launcher.start());
+                entry = launcher.start();
             } catch (IOException e) {
-                log.error("populate -> error while starting a new process", e);
+                throw new ExecutionException("Error while starting a new process", e);
             }
+
+            misses.incrementAndGet();
+            log.info("take -> started a new process: {}", entry.procDir);
+        } else {
+            hits.incrementAndGet();
+            log.info("take -> using a pre-forked instance: {}", entry.procDir);
         }
+
+        long dt = System.nanoTime() - t1;
+        totalWaitTime.addAndGet(dt);
+        maxWaitTime.accumulateAndGet(dt, Math::max);
+
+        return entry;
+    }
+
+    private void populate(HashCode hc, Slot slot) {
+        executor.submit(() -> {
+            ProcessEntry entry;
+            try {
+                entry = slot.launcher.start();
+            } catch (Exception e) {
+                log.error("populate -> error while starting a new process", e);
+                startErrors.incrementAndGet();
+
+                synchronized (pool) {
+                    slot.starting--;
+                }
+                return;
+            }
+
+            List<ProcessEntry> toKill = new ArrayList<>();
+
+            synchronized (pool) {
+                slot.starting--;
+
+                if (pool.get(hc) != slot) {
+                    // the slot was removed while the process was starting
+                    toKill.add(entry);
+                } else {
+                    if (idleCount() >= maxEntryCount) {
+                        // make room by removing the oldest entry
+                        ProcessEntry oldest = removeOldest();
+                        if (oldest != null) {
+                            toKill.add(oldest);
+                        }
+                    }
+
+                    if (idleCount() >= maxEntryCount) {
+                        toKill.add(entry);
+                    } else {
+                        slot.idle.add(entry);
+                    }
+                }
+            }
+
+            for (ProcessEntry e : toKill) {
+                Utils.kill(e.process);
+            }
+        });
     }
 
     private void maintenance() {
-        List<HashCode> queuesToRemove = new ArrayList<>();
         List<Process> processesToKill = new ArrayList<>();
+        List<Map.Entry<HashCode, Slot>> slotsToPopulate = new ArrayList<>();
+        int slotsRemoved = 0;
 
         long t = System.currentTimeMillis();
 
         synchronized (pool) {
-            pool.forEach((hc, q) -> {
-                q.removeIf(e -> {
-                    if (e.remove || t - e.timestamp >= maxEntryAge) {
-                        processesToKill.add(e.process);
+            Iterator<Map.Entry<HashCode, Slot>> it = pool.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<HashCode, Slot> e = it.next();
+                Slot slot = e.getValue();
+
+                slot.idle.removeIf(pe -> {
+                    if (t - pe.timestamp >= maxEntryAge) {
+                        processesToKill.add(pe.process);
                         return true;
                     }
                     return false;
                 });
 
-                if (q.isEmpty()) {
-                    queuesToRemove.add(hc);
+                int target = target(slot, t);
+                if (target == 0 && slot.idle.isEmpty() && slot.starting == 0) {
+                    it.remove();
+                    slotsRemoved++;
+                    continue;
                 }
-            });
 
-            for (HashCode hc : queuesToRemove) {
-                pool.remove(hc);
+                // replace the expired instances if there is still demand for them
+                int n = slot.reserve(target);
+                for (int i = 0; i < n; i++) {
+                    slotsToPopulate.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey(), slot));
+                }
             }
         }
 
-        log.info("maintenance -> removed {} queues", queuesToRemove.size());
+        slotsToPopulate.forEach(e -> populate(e.getKey(), e.getValue()));
+
+        log.info("maintenance -> removed {} queues, killed {} processes, {} idle, hit rate {}, avg wait {}ms",
+                slotsRemoved, processesToKill.size(), getIdleCount(), getHitRate(), getAverageWaitTime());
 
         for (Process p : processesToKill) {
             Utils.kill(p);
         }
-        log.info("maintenance -> killed {} processes", processesToKill.size());
+    }
+
+    /**
+     * Returns the number of pre-forked instances required for the specified slot.
+     * Must be called while holding the pool's lock.
+     */
+    private int target(Slot slot, long now) {
+        while (!slot.takes.isEmpty() && now - slot.takes.peek() >= maxEntryAge) {
+            slot.takes.poll();
+        }
+        return Math.min(slot.takes.size(), maxEntryCount);
+    }
+
+    private int idleCount() {
+        int total = 0;
+        for (Slot s : pool.values()) {
+            total += s.idle.size();
+        }
+        return total;
+    }
+
+    private ProcessEntry removeOldest() {
+        Slot slot = null;
+        for (Slot s : pool.values()) {
+            ProcessEntry e = s.idle.peek();
+            if (e != null && (slot == null || slot.idle.peek().timestamp > e.timestamp)) {
+                slot = s;
+            }
+        }
+        return slot != null ? slot.idle.poll() : null;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total > 0 ? (double) h / total : 0;
+    }
+
+    @Override
+    public double getAverageWaitTime() {
+        long total = hits.get() + misses.get();
+        return total > 0 ? (double) TimeUnit.NANOSECONDS.toMicros(totalWaitTime.get()) / total / 1000 : 0;
+    }
+
+    @Override
+    public long getMaxWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitTime.get());
+    }
+
+    @Override
+    public int getIdleCount() {
+        synchronized (pool) {
+            return idleCount();
+        }
+    }
+
+    @Override
+    public int getStartingCount() {
+        synchronized (pool) {
+            int total = 0;
+            for (Slot s : pool.values()) {
+                total += s.starting;
+            }
+            return total;
+        }
+    }
+
+    @Override
+    public long getStartErrorCount() {
+        return startErrors.get();
     }
 
     public interface ProcessLauncher {
@@ -170,8 +367,6 @@ public class ProcessPool {
         private final Process process;
         private final Path procDir;
 
-        private boolean remove = false;
-
         public ProcessEntry(Process process, Path procDir) {
             this.timestamp = System.currentTimeMillis();
             this.process = process;
@@ -186,4 +381,30 @@ public class ProcessPool {
             return procDir;
         }
     }
+
+    /**
+     * Pre-forked instances and recent requests of a single command.
+     * Guarded by the pool's lock.
+     */
+    private static final class Slot {
+
+        private final Queue<ProcessEntry> idle = new LinkedList<>();
+        private final Queue<Long> takes = new LinkedList<>();
+
+        private ProcessLauncher launcher;
+        private int starting;
+
+        /**
+         * Reserves the number of new instances required to reach the target.
+         */
+        private int reserve(int target) {
+            int n = target - idle.size() - starting;
+            if (n <= 0) {
+                return 0;
+            }
+
+            starting += n;
+            return n;
+        }
+    }
 }
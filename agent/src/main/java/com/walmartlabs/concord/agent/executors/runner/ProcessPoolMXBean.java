@@ -0,0 +1,67 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+/**
+ * JMX view of the {@link ProcessPool} statistics.
+ */
+public interface ProcessPoolMXBean {
+
+    /**
+     * Number of requests served by a pre-forked JVM.
+     */
+    long getHitCount();
+
+    /**
+     * Number of requests that had to start a new JVM.
+     */
+    long getMissCount();
+
+    /**
+     * Ratio of hits to the total number of requests.
+     */
+    double getHitRate();
+
+    /**
+     * Average time (in ms) a request spent waiting for a JVM.
+     */
+    double getAverageWaitTime();
+
+    /**
+     * Maximum time (in ms) a request spent waiting for a JVM.
+     */
+    long getMaxWaitTime();
+
+    /**
+     * Number of pre-forked JVMs waiting for a job.
+     */
+    int getIdleCount();
+
+    /**
+     * Number of JVMs currently being started in background.
+     */
+    int getStartingCount();
+
+    /**
+     * Number of failed background starts.
+     */
+    long getStartErrorCount();
+}
@@ -42,6 +42,7 @@ public class RunnerCommandBuilder {
     private Path runnerCfgPath;
     private String logLevel;
     private Path extraDockerVolumesFile;
+    private boolean deferredLibraries;
 
     public RunnerCommandBuilder() {
         this.objectMapper = new ObjectMapper();
@@ -82,6 +83,11 @@ public class RunnerCommandBuilder {
         return this;
     }
 
+    public RunnerCommandBuilder deferredLibraries(boolean deferredLibraries) {
+        this.deferredLibraries = deferredLibraries;
+        return this;
+    }
+
     public String[] build() {
         List<String> l = new ArrayList<>();
 
@@ -121,6 +127,11 @@ public class RunnerCommandBuilder {
             l.add("-Dconcord.dockerExtraVolumes=" + extraDockerVolumesFile);
         }
 
+        if (deferredLibraries) {
+            // the process' libraries are loaded only after the payload is received
+            l.add("-D" + InternalConstants.Agent.DEFERRED_LIBRARIES_KEY + "=true");
+        }
+
         // classpath
         l.add("-cp");
 
@@ -130,6 +130,7 @@ public class RunnerJobExecutor {
     protected ProcessEntry buildProcessEntry(RunnerJob job) throws Exception {
         ProcessEntry pe;
         if (canUsePrefork(job)) {
+            // the process' own libraries are picked up by the runner after the payload is received
             String[] cmd = createCmd(job);
             pe = fork(job, cmd);
         } else {
@@ -286,7 +287,8 @@ public class RunnerJobExecutor {
                 .logLevel(getLogLevel(job))
                 .extraDockerVolumesFile(createExtraDockerVolumesFile(job))
                 .runnerPath(cfg.runnerPath.toAbsolutePath())
-                .runnerCfgPath(runnerCfgFile.toAbsolutePath());
+                .runnerCfgPath(runnerCfgFile.toAbsolutePath())
+                .deferredLibraries(hasLibraries(job));
 
         return runner.build();
     }
@@ -304,10 +306,9 @@ public class RunnerJobExecutor {
 
         // the job's payload directory containing all files from the process' state snapshot and/or the repository's data
         Path src = job.getPayloadDir();
-        // the VM's payload directory
+        // the VM's payload directory, it is the VM's working directory and must stay in place
         Path dst = entry.getProcDir().resolve(InternalConstants.Files.PAYLOAD_DIR_NAME);
-        // TODO use move
-        IOUtils.copy(src, dst);
+        movePayload(src, dst);
 
         writeInstanceId(job.getInstanceId(), dst);
 
@@ -424,17 +425,18 @@ public class RunnerJobExecutor {
     }
 
     private static boolean canUsePrefork(RunnerJob job) {
+        // the process supplied its own JVM parameters, can't use preforking:
+        // the parameters can reference the payload's files and the pre-forked
+        // JVMs are started before the payload is available
         Path workDir = job.getPayloadDir();
-
-        if (Files.exists(workDir.resolve(InternalConstants.Files.LIBRARIES_DIR_NAME))) {
-            // the process supplied its own libraries, can't use preforking
-            return false;
-        }
-
-        // the process supplied its own JVM parameters, can't use preforking
         return !Files.exists(workDir.resolve(InternalConstants.Agent.AGENT_PARAMS_FILE_NAME));
     }
 
+    private static boolean hasLibraries(RunnerJob job) {
+        Path workDir = job.getPayloadDir();
+        return Files.exists(workDir.resolve(InternalConstants.Files.LIBRARIES_DIR_NAME));
+    }
+
     private static HashCode hash(String[] as) {
         HashFunction f = Hashing.sha256();
         Hasher h = f.newHasher();
@@ -492,6 +494,20 @@ public class RunnerJobExecutor {
         }
     }
 
+    /**
+     * Moves the payload's files into the existing directory. Each top-level entry is
+     * renamed atomically, the runner starts reading the payload only after
+     * the instance ID file is written.
+     */
+    private static void movePayload(Path src, Path dst) throws IOException {
+        try (Stream<Path> s = Files.list(src)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                Files.move(p, dst.resolve(p.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        Files.delete(src);
+    }
+
     private static void writeInstanceId(UUID instanceId, Path dst) throws IOException {
         Path idPath = dst.resolve(InternalConstants.Files.INSTANCE_ID_FILE_NAME);
         Files.write(idPath, instanceId.toString().getBytes(), StandardOpenOption.CREATE, StandardOpenOption.SYNC);
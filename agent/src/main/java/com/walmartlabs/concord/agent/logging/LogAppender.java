@@ -24,5 +24,13 @@ import java.util.UUID;
 
 public interface LogAppender {
 
-    void appendLog(UUID instanceId, byte[] ab);
+    default void appendLog(UUID instanceId, byte[] ab) {
+        appendLog(instanceId, ab, 0, ab.length);
+    }
+
+    /**
+     * Appends {@code len} bytes of the specified array starting at {@code off}.
+     * The caller may reuse the array after the method returns.
+     */
+    void appendLog(UUID instanceId, byte[] ab, int off, int len);
 }
@@ -0,0 +1,178 @@
+package com.walmartlabs.concord.agent.logging;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Notifies the log readers when their files are modified.
+ * Uses a single {@link WatchService} for the whole log directory. If the service
+ * is not available, {@link Signal#await(long)} simply waits for the timeout.
+ * <p>
+ * Must be closed when no longer used, to stop the watching thread.
+ */
+public class LogFileWatcher implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(LogFileWatcher.class);
+
+    private final Path dir;
+    private final Map<Path, Signal> signals = new ConcurrentHashMap<>();
+    private final WatchService watchService;
+    private final Thread thread;
+
+    public LogFileWatcher(Path dir) {
+        this.dir = dir;
+
+        WatchService watchService = null;
+        try {
+            watchService = dir.getFileSystem().newWatchService();
+            dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("init -> can't watch {}, falling back to polling: {}", dir, e.getMessage());
+            closeSilently(watchService);
+            watchService = null;
+        }
+
+        this.watchService = watchService;
+
+        if (watchService != null) {
+            WatchService ws = watchService;
+            Thread t = new Thread(() -> run(ws), "log-file-watcher");
+            t.setDaemon(true);
+            t.start();
+            this.thread = t;
+        } else {
+            this.thread = null;
+        }
+    }
+
+    /**
+     * Returns a signal that is set every time the specified file is modified.
+     * The file must be located in the watched directory.
+     */
+    public Signal register(Path file) {
+        if (!dir.equals(file.getParent())) {
+            throw new IllegalArgumentException("Expected a file in " + dir + ", got: " + file);
+        }
+
+        return signals.computeIfAbsent(file.getFileName(), k -> new Signal());
+    }
+
+    public void unregister(Path file) {
+        signals.remove(file.getFileName());
+    }
+
+    /**
+     * Stops watching the directory. The registered signals are set, so the
+     * readers waiting for them can check their files one last time.
+     */
+    @Override
+    public void close() {
+        closeSilently(watchService);
+
+        if (thread != null) {
+            thread.interrupt();
+        }
+
+        signals.values().forEach(Signal::set);
+    }
+
+    private void run(WatchService ws) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey k = ws.take();
+
+                for (WatchEvent<?> e : k.pollEvents()) {
+                    if (e.kind() == OVERFLOW) {
+                        // some events were lost, wake everyone up
+                        signals.values().forEach(Signal::set);
+                        continue;
+                    }
+
+                    Signal s = signals.get((Path) e.context());
+                    if (s != null) {
+                        s.set();
+                    }
+                }
+
+                if (!k.reset()) {
+                    log.warn("run -> {} is no longer watched, falling back to polling", dir);
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // ignore
+        } finally {
+            closeSilently(ws);
+        }
+    }
+
+    private static void closeSilently(WatchService ws) {
+        if (ws == null) {
+            return;
+        }
+
+        try {
+            ws.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    public static final class Signal {
+
+        private boolean set;
+
+        public synchronized void set() {
+            set = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits until the signal is set or the timeout expires. Resets the signal.
+         *
+         * @return {@code true} if the signal was set.
+         */
+        public synchronized boolean await(long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+
+            long remaining = timeout;
+            while (!set && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+
+            boolean result = set;
+            set = false;
+            return result;
+        }
+    }
+}
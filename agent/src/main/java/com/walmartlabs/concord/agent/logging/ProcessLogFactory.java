@@ -28,18 +28,28 @@ public class ProcessLogFactory {
     private final Path logDir;
     private final long logStreamMaxDelay;
     private final LogAppender logAppender;
+    private final LogFileWatcher logFileWatcher;
 
     public ProcessLogFactory(Path logDir, long logStreamMaxDelay, LogAppender logAppender) {
         this.logDir = logDir;
         this.logStreamMaxDelay = logStreamMaxDelay;
         this.logAppender = logAppender;
+        this.logFileWatcher = new LogFileWatcher(logDir);
     }
 
     public RedirectedProcessLog createRedirectedLog(UUID instanceId) {
-        return new RedirectedProcessLog(logDir, instanceId, logAppender, logStreamMaxDelay);
+        return new RedirectedProcessLog(logDir, instanceId, logAppender, logFileWatcher, logStreamMaxDelay);
     }
 
     public RemoteProcessLog createRemoteLog(UUID instanceId) {
         return new RemoteProcessLog(instanceId, logAppender);
     }
+
+    /**
+     * Stops watching the log files. The logs created by this factory
+     * fall back to polling.
+     */
+    public void close() {
+        logFileWatcher.close();
+    }
 }
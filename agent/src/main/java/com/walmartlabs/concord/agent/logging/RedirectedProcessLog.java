@@ -26,36 +26,52 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.UUID;
-import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 /**
  * Log that uses a local file as a buffer before sending the data into the specified {@link LogAppender}.
  * Typically, {@link #run(Supplier)} method should be executed in a separate thread.
+ * <p>
+ * New data is sent as soon as the file is modified (see {@link LogFileWatcher}),
+ * but not later than {@code logSteamMaxDelay}. The chunk size and the delay between
+ * chunks adapt to the amount of data produced by the process: a process that logs
+ * a lot gets larger chunks, a process that logs small amounts of data often gets
+ * fewer requests.
  */
 public class RedirectedProcessLog implements ProcessLog {
 
+    private static final int MIN_CHUNK_SIZE = 8 * 1024;
+    private static final int MAX_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Min time to wait for more data after the file was modified.
+     */
+    private static final long MIN_LINGER = 50;
+
     private final UUID instanceId;
     private final LogAppender appender;
+    private final LogFileWatcher watcher;
     private final long logSteamMaxDelay;
 
     private final LocalProcessLog localLog;
 
-    public RedirectedProcessLog(Path baseDir, UUID instanceId, LogAppender appender, long logSteamMaxDelay) {
+    public RedirectedProcessLog(Path baseDir, UUID instanceId, LogAppender appender, LogFileWatcher watcher, long logSteamMaxDelay) {
         this.instanceId = instanceId;
         this.appender = appender;
+        this.watcher = watcher;
         this.logSteamMaxDelay = logSteamMaxDelay;
         this.localLog = new LocalProcessLog(baseDir, instanceId);
     }
 
     public void run(Supplier<Boolean> stopCondition) throws Exception {
-        Consumer<Chunk> sink = chunk -> {
-            byte[] ab = new byte[chunk.len];
-            System.arraycopy(chunk.ab, 0, ab, 0, chunk.len);
-            appender.appendLog(instanceId, ab);
-        };
+        Path p = localLog.logFile();
 
-        streamLog(localLog.logFile(), stopCondition, logSteamMaxDelay, sink);
+        LogFileWatcher.Signal signal = watcher.register(p);
+        try {
+            streamLog(p, signal, stopCondition);
+        } finally {
+            watcher.unregister(p);
+        }
     }
 
     public void flush() throws Exception {
@@ -87,20 +103,35 @@ public class RedirectedProcessLog implements ProcessLog {
         this.localLog.error(log, args);
     }
 
-    private static void streamLog(Path p, Supplier<Boolean> stopCondition, long maxDelay, Consumer<Chunk> sink) throws IOException {
+    private void streamLog(Path p, LogFileWatcher.Signal signal, Supplier<Boolean> stopCondition) throws IOException {
         long total = 0;
 
-        byte[] ab = new byte[8192];
+        // the buffer is reused for all chunks, the appender doesn't keep the data
+        byte[] ab = new byte[MIN_CHUNK_SIZE];
+        long linger = MIN_LINGER;
 
         try (InputStream in = Files.newInputStream(p, StandardOpenOption.READ)) {
             while (true) {
                 int read = in.read(ab, 0, ab.length);
+                boolean full = read == ab.length;
+
                 if (read > 0) {
-                    sink.accept(new Chunk(ab, read));
+                    appender.appendLog(instanceId, ab, 0, read);
                     total += read;
+
+                    if (full) {
+                        // more data is likely available, use larger chunks and shorter delays
+                        if (ab.length < MAX_CHUNK_SIZE) {
+                            ab = new byte[Math.min(ab.length * 2, MAX_CHUNK_SIZE)];
+                        }
+                        linger = Math.max(linger / 2, MIN_LINGER);
+                    } else {
+                        // small chunk, wait longer for the next one
+                        linger = Math.min(linger * 2, logSteamMaxDelay);
+                    }
                 }
 
-                if (read < ab.length) {
+                if (!full) {
                     if (stopCondition.get() && total >= Files.size(p)) {
                         // the log and the job are finished
                         break;
@@ -108,7 +139,13 @@ public class RedirectedProcessLog implements ProcessLog {
 
                     // job is still running, wait for more data
                     try {
-                        Thread.sleep(maxDelay);
+                        if (signal.await(logSteamMaxDelay)) {
+                            // the file was modified, give the process a chance to write a bit more
+                            Thread.sleep(linger);
+                        } else {
+                            // the process is quiet, send the next data as soon as it arrives
+                            linger = MIN_LINGER;
+                        }
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
                         break;
@@ -117,15 +154,4 @@ public class RedirectedProcessLog implements ProcessLog {
             }
         }
     }
-
-    private static final class Chunk {
-
-        private final byte[] ab;
-        private final int len;
-
-        private Chunk(byte[] ab, int len) { // NOSONAR
-            this.ab = ab;
-            this.len = len;
-        }
-    }
 }
@@ -0,0 +1,135 @@
+package com.walmartlabs.concord.agent.logging;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.squareup.okhttp.*;
+import com.walmartlabs.concord.ApiClient;
+import com.walmartlabs.concord.ApiException;
+import com.walmartlabs.concord.Pair;
+import com.walmartlabs.concord.auth.Authentication;
+import com.walmartlabs.concord.client.ClientUtils;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Sends the log data to the server. The data is optionally compressed
+ * using gzip, the compression is performed while the request is being sent.
+ */
+public class RemoteLogAppender implements LogAppender {
+
+    private static final Logger log = LoggerFactory.getLogger(RemoteLogAppender.class);
+
+    private static final MediaType APPLICATION_OCTET_STREAM_TYPE = MediaType.parse("application/octet-stream");
+
+    /**
+     * Smaller chunks are sent uncompressed, the gzip overhead is not worth it.
+     */
+    private static final int MIN_COMPRESSED_SIZE = 1024;
+
+    private final ApiClient apiClient;
+    private final int maxRetries;
+    private final long retryDelay;
+    private final boolean compression;
+
+    public RemoteLogAppender(ApiClient apiClient, int maxRetries, long retryDelay, boolean compression) {
+        this.apiClient = apiClient;
+        this.maxRetries = maxRetries;
+        this.retryDelay = retryDelay;
+        this.compression = compression;
+    }
+
+    @Override
+    public void appendLog(UUID instanceId, byte[] ab, int off, int len) {
+        String path = "/api/v1/process/" + instanceId + "/log";
+        boolean gzip = compression && len >= MIN_COMPRESSED_SIZE;
+
+        try {
+            ClientUtils.withRetry(maxRetries, retryDelay, () -> {
+                RequestBody body = gzip ? new GzipRequestBody(ab, off, len) : RequestBody.create(APPLICATION_OCTET_STREAM_TYPE, ab, off, len);
+                return apiClient.execute(buildCall(path, body, gzip));
+            });
+        } catch (ApiException e) {
+            // TODO handle errors
+            log.warn("appendLog ['{}'] -> error: {}", instanceId, e.getMessage());
+        }
+    }
+
+    private Call buildCall(String path, RequestBody body, boolean gzip) {
+        List<Pair> queryParams = new ArrayList<>();
+        Map<String, String> headerParams = new HashMap<>();
+
+        for (Authentication a : apiClient.getAuthentications().values()) {
+            a.applyToParams(queryParams, headerParams);
+        }
+
+        if (gzip) {
+            headerParams.put("Content-Encoding", "gzip");
+        }
+
+        String url = apiClient.buildUrl(path, queryParams, null);
+        Request.Builder b = new Request.Builder().url(url);
+        apiClient.processHeaderParams(headerParams, b);
+
+        Request request = b.method("POST", body).build();
+        return apiClient.getHttpClient().newCall(request);
+    }
+
+    private static final class GzipRequestBody extends RequestBody {
+
+        private final byte[] ab;
+        private final int off;
+        private final int len;
+
+        private GzipRequestBody(byte[] ab, int off, int len) { // NOSONAR
+            this.ab = ab;
+            this.off = off;
+            this.len = len;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return APPLICATION_OCTET_STREAM_TYPE;
+        }
+
+        @Override
+        public long contentLength() {
+            // unknown, sent using the chunked encoding
+            return -1;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            BufferedSink gzipSink = Okio.buffer(new GzipSink(sink));
+            gzipSink.write(ab, off, len);
+            gzipSink.close();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.IOUtils;
+import org.apache.commons.compress.archivers.zip.AsiExtraField;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RemoteStateFetcherTest {
+
+    private static final byte[] DATA_DESCRIPTOR_SIG = {0x50, 0x4b, 0x07, 0x08};
+    private static final byte[] CENTRAL_DIRECTORY_SIG = {0x50, 0x4b, 0x01, 0x02};
+
+    private Path dst;
+
+    @Before
+    public void setUp() throws IOException {
+        dst = IOUtils.createTempDir("state");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        IOUtils.deleteRecursively(dst);
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+        byte[] ab = zip();
+
+        int count = RemoteStateFetcher.extract(new ByteArrayInputStream(ab), dst);
+        assertEquals(2, count);
+
+        assertEquals("hello", new String(Files.readAllBytes(dst.resolve("a.txt")), StandardCharsets.UTF_8));
+        assertEquals("world", new String(Files.readAllBytes(dst.resolve("b/c.sh")), StandardCharsets.UTF_8));
+        assertTrue(Files.getPosixFilePermissions(dst.resolve("b/c.sh")).contains(PosixFilePermission.OWNER_EXECUTE));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCrcMismatch() throws Exception {
+        byte[] ab = zip();
+
+        // corrupt the CRC in the data descriptor of the last entry
+        int i = lastIndexOf(ab, DATA_DESCRIPTOR_SIG);
+        assertTrue(i > 0);
+        ab[i + 4] ^= 0xFF;
+
+        RemoteStateFetcher.extract(new ByteArrayInputStream(ab), dst);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception {
+        byte[] ab = zip();
+
+        // cut the archive before the data descriptor of the last entry
+        int i = lastIndexOf(ab, DATA_DESCRIPTOR_SIG);
+        assertTrue(i > 0);
+
+        RemoteStateFetcher.extract(new ByteArrayInputStream(Arrays.copyOf(ab, i)), dst);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedAtEntryBoundary() throws Exception {
+        byte[] ab = zip();
+
+        // cut the archive right after the last entry, before the central directory
+        int i = indexOf(ab, CENTRAL_DIRECTORY_SIG);
+        assertTrue(i > 0);
+
+        RemoteStateFetcher.extract(new ByteArrayInputStream(Arrays.copyOf(ab, i)), dst);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidName() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(out)) {
+            add(zip, "../x.txt", "boo", 0644);
+        }
+
+        RemoteStateFetcher.extract(new ByteArrayInputStream(out.toByteArray()), dst);
+    }
+
+    /**
+     * Creates an archive the same way the server does: the output is
+     * not seekable, so the entries have data descriptors.
+     */
+    private static byte[] zip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(out)) {
+            add(zip, "a.txt", "hello", 0644);
+            add(zip, "b/c.sh", "world", 0755);
+        }
+        return out.toByteArray();
+    }
+
+    private static void add(ZipArchiveOutputStream zip, String name, String data, int unixMode) throws IOException {
+        ZipArchiveEntry e = new ZipArchiveEntry(name);
+        e.setUnixMode(unixMode);
+        e.setMethod(ZipArchiveEntry.DEFLATED);
+        AsiExtraField asi = new AsiExtraField();
+        asi.setMode(unixMode);
+        e.addExtraField(asi);
+        zip.putArchiveEntry(e);
+        zip.write(data.getBytes(StandardCharsets.UTF_8));
+        zip.closeArchiveEntry();
+    }
+
+    private static int indexOf(byte[] ab, byte[] pattern) {
+        for (int i = 0; i <= ab.length - pattern.length; i++) {
+            if (matches(ab, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] ab, byte[] pattern) {
+        for (int i = ab.length - pattern.length; i >= 0; i--) {
+            if (matches(ab, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] ab, int offset, byte[] pattern) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (ab[offset + j] != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,130 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.agent.executors.JobExecutor;
+import com.walmartlabs.concord.agent.logging.ProcessLog;
+import com.walmartlabs.concord.client.ProcessEntry.StatusEnum;
+import com.walmartlabs.concord.imports.ImportManager;
+import com.walmartlabs.concord.server.queueclient.message.ImportEntry;
+import com.walmartlabs.concord.server.queueclient.message.Imports;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class WorkerTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testMergeOrder() throws Exception {
+        Path baseDir = Files.createTempDirectory("test");
+        Path payloadDir = Files.createDirectory(baseDir.resolve("payload"));
+
+        // the repository export is the slowest step, but its files must be overwritten by the other steps
+        RepositoryManager repositoryManager = mock(RepositoryManager.class);
+        doAnswer(inv -> {
+            Thread.sleep(200);
+            Path dst = inv.getArgument(3);
+            write(dst, "a.txt", "repo");
+            write(dst, "b.txt", "repo");
+            write(dst, "sub/c.txt", "repo");
+            return null;
+        }).when(repositoryManager).export(eq("repoUrl"), eq("commitId"), any(), any(), any());
+
+        ImportManager importManager = mock(ImportManager.class);
+        doAnswer(inv -> {
+            Path dst = inv.getArgument(1);
+            write(dst, "b.txt", "import");
+            write(dst, "sub/d.txt", "import");
+            return Collections.emptyList();
+        }).when(importManager).process(any(), any());
+
+        Worker.StateFetcher stateFetcher = (job, dst) -> {
+            write(dst, "a.txt", "state");
+            write(dst, "sub/d.txt", "state");
+        };
+
+        // collect the payload's files before they are removed
+        Map<String, String> files = new HashMap<>();
+        JobExecutor jobExecutor = job -> {
+            for (String f : new String[]{"a.txt", "b.txt", "sub/c.txt", "sub/d.txt"}) {
+                files.put(f, new String(Files.readAllBytes(job.getPayloadDir().resolve(f))));
+            }
+            return mock(JobInstance.class);
+        };
+
+        Worker.CompletionCallback callback = mock(Worker.CompletionCallback.class);
+
+        ImportEntry importEntry = ImportEntry.MvnEntry.builder()
+                .url("mvn://test")
+                .build();
+
+        JobRequest jobRequest = new JobRequest(JobRequest.Type.RUNNER, UUID.randomUUID(), payloadDir, null,
+                "repoUrl", null, "commitId", null, mock(ProcessLog.class), Imports.of(Collections.singletonList(importEntry)));
+
+        new Worker(repositoryManager, importManager, jobExecutor, callback, stateFetcher, executor, jobRequest).run();
+
+        verify(callback).onStatusChange(StatusEnum.FINISHED);
+
+        assertEquals("state", files.get("a.txt"));
+        assertEquals("import", files.get("b.txt"));
+        assertEquals("repo", files.get("sub/c.txt"));
+        assertEquals("state", files.get("sub/d.txt"));
+
+        // the temporary directories are removed
+        try (Stream<Path> s = Files.list(baseDir)) {
+            assertEquals(0, s.count());
+        }
+    }
+
+    private static void write(Path dir, String name, String data) throws IOException {
+        Path p = dir.resolve(name);
+        Files.createDirectories(p.getParent());
+        Files.write(p, data.getBytes());
+    }
+}
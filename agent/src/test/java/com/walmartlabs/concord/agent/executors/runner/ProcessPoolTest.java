@@ -0,0 +1,133 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.hash.HashCode;
+import com.walmartlabs.concord.agent.executors.runner.ProcessPool.ProcessEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+public class ProcessPoolTest {
+
+    private ProcessPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new ProcessPool(60000, 3);
+    }
+
+    @After
+    public void tearDown() {
+        pool.stop();
+    }
+
+    @Test
+    public void testDemand() throws Exception {
+        HashCode a = HashCode.fromInt(1);
+        AtomicInteger starts = new AtomicInteger();
+        ProcessPool.ProcessLauncher launcher = () -> {
+            starts.incrementAndGet();
+            return new ProcessEntry(mock(Process.class), Paths.get("a"));
+        };
+
+        // cold start, one instance is warmed up in background
+        pool.take(a, launcher);
+        waitForIdle(1);
+        assertEquals(0, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+        assertEquals(2, starts.get());
+
+        // the second request uses the pre-forked instance, the demand grows to 2
+        pool.take(a, launcher);
+        waitForIdle(2);
+        assertEquals(1, pool.getHitCount());
+
+        // the demand is capped by the max entry count
+        for (int i = 0; i < 5; i++) {
+            pool.take(a, launcher);
+        }
+        waitForIdle(3);
+        assertEquals(0, pool.getStartErrorCount());
+        assertEquals(7, pool.getHitCount() + pool.getMissCount());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        HashCode a = HashCode.fromInt(1);
+        HashCode b = HashCode.fromInt(2);
+
+        ProcessPool.ProcessLauncher launcherA = () -> new ProcessEntry(mock(Process.class), Paths.get("a"));
+        ProcessPool.ProcessLauncher launcherB = () -> new ProcessEntry(mock(Process.class), Paths.get("b"));
+
+        pool.take(a, launcherA);
+        waitForIdle(1);
+
+        // make sure the instances of "b" are newer
+        Thread.sleep(10);
+
+        pool.take(b, launcherB);
+        pool.take(b, launcherB);
+        pool.take(b, launcherB);
+        waitForIdle(3);
+
+        // the oldest instance of "a" was replaced with instances of "b"
+        long misses = pool.getMissCount();
+        pool.take(a, launcherA);
+        assertEquals(misses + 1, pool.getMissCount());
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        int count = mbeanCount(server);
+
+        // multiple pools can coexist
+        ProcessPool another = new ProcessPool(60000, 3);
+        assertEquals(count + 1, mbeanCount(server));
+
+        another.stop();
+        assertEquals(count, mbeanCount(server));
+    }
+
+    private static int mbeanCount(MBeanServer server) throws Exception {
+        return server.queryNames(new ObjectName("com.walmartlabs.concord.agent:type=ProcessPool,*"), null).size();
+    }
+
+    private void waitForIdle(int expected) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (pool.getIdleCount() == expected && pool.getStartingCount() == 0) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        assertEquals(expected, pool.getIdleCount());
+    }
+}
@@ -0,0 +1,157 @@
+package com.walmartlabs.concord.agent.logging;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class RedirectedProcessLogTest {
+
+    private Path logDir;
+    private LogFileWatcher watcher;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        logDir = IOUtils.createTempDir("logs");
+        watcher = new LogFileWatcher(logDir);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        watcher.close();
+        IOUtils.deleteRecursively(logDir);
+    }
+
+    @Test(timeout = 60000)
+    public void testChunks() throws Exception {
+        UUID instanceId = UUID.randomUUID();
+        CollectingAppender appender = new CollectingAppender();
+
+        RedirectedProcessLog log = new RedirectedProcessLog(logDir, instanceId, appender, watcher, 1000);
+        Path logFile = logDir.resolve(instanceId + ".log");
+
+        // a chatty process: 4MB of short lines
+        byte[] line = "0123456789012345678901234567890123456789012345678901234567890123456789\n".getBytes(StandardCharsets.UTF_8);
+        int lines = 4 * 1024 * 1024 / line.length;
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (OutputStream out = Files.newOutputStream(logFile, StandardOpenOption.CREATE_NEW)) {
+            for (int i = 0; i < lines; i++) {
+                out.write(line);
+                expected.write(line);
+            }
+        }
+
+        log.flush();
+
+        assertArrayEquals(expected.toByteArray(), appender.data());
+
+        // the chunks grow while more data is available
+        assertEquals(256 * 1024, appender.maxChunkSize());
+        assertTrue(appender.chunks() < expected.size() / (8 * 1024));
+    }
+
+    @Test(timeout = 60000)
+    public void testModifiedFile() throws Exception {
+        UUID instanceId = UUID.randomUUID();
+        CollectingAppender appender = new CollectingAppender();
+
+        // the max delay is longer than the test's timeout: the data must be
+        // sent because the file was modified and not because the delay expired
+        RedirectedProcessLog log = new RedirectedProcessLog(logDir, instanceId, appender, watcher, TimeUnit.HOURS.toMillis(1));
+        Path logFile = logDir.resolve(instanceId + ".log");
+        Files.createFile(logFile);
+
+        AtomicBoolean stop = new AtomicBoolean(false);
+        Future<?> reader = executor.submit(() -> {
+            log.run(stop::get);
+            return null;
+        });
+
+        Files.write(logFile, "first\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        appender.awaitSize(6);
+
+        // the reader is waiting for the next modification
+        Files.write(logFile, "second\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        appender.awaitSize(13);
+
+        // closing the watcher wakes up the reader
+        stop.set(true);
+        watcher.close();
+        reader.get();
+
+        assertEquals("first\nsecond\n", new String(appender.data(), StandardCharsets.UTF_8));
+    }
+
+    private static final class CollectingAppender implements LogAppender {
+
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream(8 * 1024 * 1024);
+        private int chunks;
+        private int maxChunkSize;
+
+        @Override
+        public synchronized void appendLog(UUID instanceId, byte[] ab, int off, int len) {
+            data.write(ab, off, len);
+            chunks++;
+            maxChunkSize = Math.max(maxChunkSize, len);
+            notifyAll();
+        }
+
+        synchronized void awaitSize(int size) throws InterruptedException {
+            while (data.size() < size) {
+                wait();
+            }
+        }
+
+        synchronized int chunks() {
+            return chunks;
+        }
+
+        synchronized int maxChunkSize() {
+            return maxChunkSize;
+        }
+
+        synchronized byte[] data() {
+            return data.toByteArray();
+        }
+    }
+}
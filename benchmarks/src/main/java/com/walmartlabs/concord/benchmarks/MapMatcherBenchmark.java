@@ -0,0 +1,91 @@
+package com.walmartlabs.concord.benchmarks;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import com.walmartlabs.concord.common.MapMatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching of a GitHub event against the trigger conditions (see DefaultEventFilter)
+ * using {@link MapMatcher#matches(Map, Map)} and the pre-compiled {@link MapMatcher.Compiled}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapMatcherBenchmark {
+
+    private Map<String, Object> event;
+    private Map<String, Object> conditions;
+    private MapMatcher.Compiled compiled;
+
+    @Setup
+    public void setUp() {
+        Map<String, Object> repositoryInfo = new HashMap<>();
+        repositoryInfo.put("projectId", UUID.randomUUID().toString());
+        repositoryInfo.put("repository", "my-repo");
+        repositoryInfo.put("branch", "master");
+        repositoryInfo.put("enabled", true);
+
+        event = new HashMap<>();
+        event.put("githubOrg", "my-org");
+        event.put("githubRepo", "my-repo");
+        event.put("githubHost", "github.com");
+        event.put("branch", "master");
+        event.put("type", "push");
+        event.put("status", "opened");
+        event.put("sender", "someone");
+        event.put("version", 2);
+        event.put("repositoryInfo", Collections.singletonList(repositoryInfo));
+
+        conditions = new HashMap<>();
+        conditions.put("githubOrg", "my-.*");
+        conditions.put("githubRepo", "my-(repo|other-repo)");
+        conditions.put("githubHost", "github\\.com");
+        conditions.put("branch", "(master|release-.*)");
+        conditions.put("type", "push");
+        conditions.put("version", 2);
+        conditions.put("repositoryInfo", Collections.singletonList(Collections.singletonMap("repository", ".*")));
+
+        compiled = MapMatcher.compile(conditions);
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return MapMatcher.matches(event, conditions);
+    }
+
+    @Benchmark
+    public boolean compiledMatches() {
+        return compiled.matches(event);
+    }
+
+    @Benchmark
+    public boolean compileAndMatch() {
+        return MapMatcher.compile(conditions).matches(event);
+    }
+}
@@ -0,0 +1,142 @@
+package com.walmartlabs.concord.benchmarks;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import com.walmartlabs.concord.policyengine.CheckResult;
+import com.walmartlabs.concord.policyengine.ConcurrentProcessRule;
+import com.walmartlabs.concord.policyengine.EntityRule;
+import com.walmartlabs.concord.policyengine.PolicyEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Policy checks performed by the process queue dispatcher for each candidate
+ * (see ConcurrentProcessFilter) and by the entity policy checks.
+ * Compares creating a new {@link PolicyEngine} for each check with reusing
+ * the same (cached) instance.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PolicyEngineBenchmark {
+
+    private Map<String, Object> rules;
+    private PolicyEngine engine;
+    private List<UUID> processes;
+    private Map<String, Object> entityAttrs;
+    private Pattern pattern;
+
+    @Setup
+    public void setUp() {
+        rules = createRules();
+        engine = new PolicyEngine(rules);
+        pattern = Pattern.compile("(my|your)-project.*", Pattern.CASE_INSENSITIVE);
+
+        processes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            processes.add(UUID.randomUUID());
+        }
+
+        Map<String, Object> owner = new HashMap<>();
+        owner.put("username", "someone");
+        owner.put("userType", "LDAP");
+
+        Map<String, Object> entity = new HashMap<>();
+        entity.put("name", "my-project");
+        entity.put("orgName", "Default");
+
+        entityAttrs = new HashMap<>();
+        entityAttrs.put("owner", owner);
+        entityAttrs.put("entity", entity);
+    }
+
+    @Benchmark
+    public CheckResult<ConcurrentProcessRule, List<UUID>> dispatchFilterNewEngine() {
+        return new PolicyEngine(rules).getConcurrentProcessPolicy().check(() -> processes, () -> processes);
+    }
+
+    @Benchmark
+    public CheckResult<ConcurrentProcessRule, List<UUID>> dispatchFilterCachedEngine() {
+        return engine.getConcurrentProcessPolicy().check(() -> processes, () -> processes);
+    }
+
+    @Benchmark
+    public CheckResult<EntityRule, Map<String, Object>> entityPolicyNewEngine() {
+        return new PolicyEngine(rules).getEntityPolicy().check("project", "create", () -> entityAttrs);
+    }
+
+    @Benchmark
+    public CheckResult<EntityRule, Map<String, Object>> entityPolicyCachedEngine() {
+        return engine.getEntityPolicy().check("project", "create", () -> entityAttrs);
+    }
+
+    @Benchmark
+    public boolean regexCompiledOnEachCall() {
+        return Pattern.compile("(my|your)-project.*", Pattern.CASE_INSENSITIVE).matcher("my-project").matches();
+    }
+
+    @Benchmark
+    public boolean regexPrecompiled() {
+        return pattern.matcher("my-project").matches();
+    }
+
+    private static Map<String, Object> createRules() {
+        Map<String, Object> concurrent = new HashMap<>();
+        concurrent.put("msg", "Too many concurrent processes");
+        concurrent.put("maxPerOrg", 10);
+
+        Map<String, Object> queue = new HashMap<>();
+        queue.put("concurrent", concurrent);
+
+        Map<String, Object> conditions = new HashMap<>();
+        conditions.put("owner", Collections.singletonMap("userType", "LDAP"));
+        conditions.put("entity", Collections.singletonMap("name", "(test|tmp)-.*"));
+
+        Map<String, Object> entityRule = new HashMap<>();
+        entityRule.put("msg", "Temporary projects are not allowed");
+        entityRule.put("entity", "project");
+        entityRule.put("action", "create");
+        entityRule.put("conditions", conditions);
+
+        Map<String, Object> entity = new HashMap<>();
+        entity.put("deny", Collections.singletonList(entityRule));
+
+        Map<String, Object> taskRule = new HashMap<>();
+        taskRule.put("taskName", "ansible.*");
+        taskRule.put("method", "execute");
+
+        Map<String, Object> task = new HashMap<>();
+        task.put("deny", Collections.singletonList(taskRule));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("queue", queue);
+        result.put("entity", entity);
+        result.put("task", task);
+        return result;
+    }
+}
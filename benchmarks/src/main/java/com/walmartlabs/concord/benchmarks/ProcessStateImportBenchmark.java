@@ -0,0 +1,184 @@
+package com.walmartlabs.concord.benchmarks;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.db.DatabaseConfiguration;
+import com.walmartlabs.concord.db.DatabaseModule;
+import com.walmartlabs.concord.db.MainDBChangeLogProvider;
+import com.walmartlabs.concord.server.cfg.ProcessStateConfiguration;
+import com.walmartlabs.concord.server.cfg.SecretStoreConfiguration;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.state.ProcessStateManager;
+import org.jooq.Configuration;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Import of a synthetic workspace into the process state using
+ * {@link ProcessStateManager#importPath(ProcessKey, String, Path)}.
+ * <p>
+ * Requires a local PostgreSQL instance, the connection parameters can be
+ * specified using {@code -Ddb.url}, {@code -Ddb.username} and {@code -Ddb.password}.
+ * The schema is created (or updated) automatically.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessStateImportBenchmark {
+
+    private static final int FILES = 5000;
+    private static final int DIRS = 50;
+    private static final int FILE_SIZE = 2048;
+
+    /**
+     * If {@code true} each import uses new file contents, otherwise
+     * the same files are imported by every process.
+     */
+    @Param({"true", "false"})
+    public boolean newContent;
+
+    private DataSource dataSource;
+    private ProcessStateManager stateManager;
+    private Path workspace;
+    private List<Path> files;
+    private List<UUID> instanceIds;
+    private Timestamp startedAt;
+
+    @Setup
+    public void setUp() throws Exception {
+        DatabaseConfiguration dbCfg = new DbConfiguration(
+                System.getProperty("db.url", "jdbc:postgresql://localhost:5432/postgres"),
+                System.getProperty("db.username", "postgres"),
+                System.getProperty("db.password", "q1"));
+
+        DatabaseModule db = new DatabaseModule();
+        dataSource = db.appDataSource(dbCfg, new MetricRegistry(), Collections.singleton(new MainDBChangeLogProvider()));
+        Configuration cfg = db.appJooqConfiguration(dataSource);
+
+        ProcessStateConfiguration stateCfg = new ProcessStateConfiguration(24 * 60 * 60 * 1000, Collections.singletonList("_main.json"));
+        stateManager = new ProcessStateManager(cfg, new SecretStoreConfiguration(), stateCfg);
+
+        workspace = Files.createTempDirectory("workspace");
+        files = new ArrayList<>(FILES);
+        for (int i = 0; i < FILES; i++) {
+            Path dir = workspace.resolve("dir" + (i % DIRS));
+            if (!Files.exists(dir)) {
+                Files.createDirectories(dir);
+            }
+            files.add(dir.resolve("file" + i + ".txt"));
+        }
+        writeFiles();
+
+        instanceIds = new ArrayList<>();
+        startedAt = new Timestamp(System.currentTimeMillis());
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws IOException {
+        if (newContent) {
+            writeFiles();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Configuration cfg = new DatabaseModule().appJooqConfiguration(dataSource);
+        DSL.using(cfg).execute("delete from PROCESS_STATE where INSTANCE_ID = any(?)", (Object) instanceIds.toArray(new UUID[0]));
+        DSL.using(cfg).execute("delete from PROCESS_STATE_BLOBS b where LAST_USED_AT >= ? " +
+                "and not exists (select 1 from PROCESS_STATE s where s.ITEM_HASH = b.BLOB_HASH)", startedAt);
+
+        ((Closeable) dataSource).close();
+        for (Path p : files) {
+            Files.delete(p);
+        }
+        for (int i = 0; i < DIRS; i++) {
+            Files.delete(workspace.resolve("dir" + i));
+        }
+        Files.delete(workspace);
+    }
+
+    @Benchmark
+    public void importPath() {
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        instanceIds.add(processKey.getInstanceId());
+
+        stateManager.importPath(processKey, null, workspace);
+    }
+
+    private void writeFiles() throws IOException {
+        byte[] ab = new byte[FILE_SIZE];
+        for (Path p : files) {
+            ThreadLocalRandom.current().nextBytes(ab);
+            Files.write(p, ab);
+        }
+    }
+
+    private static final class DbConfiguration implements DatabaseConfiguration {
+
+        private final String url;
+        private final String username;
+        private final String password;
+
+        private DbConfiguration(String url, String username, String password) {
+            this.url = url;
+            this.username = username;
+            this.password = password;
+        }
+
+        @Override
+        public String url() {
+            return url;
+        }
+
+        @Override
+        public String username() {
+            return username;
+        }
+
+        @Override
+        public String password() {
+            return password;
+        }
+
+        @Override
+        public int maxPoolSize() {
+            return 2;
+        }
+    }
+}
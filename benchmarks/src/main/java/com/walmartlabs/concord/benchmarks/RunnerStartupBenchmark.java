@@ -0,0 +1,104 @@
+package com.walmartlabs.concord.benchmarks;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.walmartlabs.concord.runner.DependencySpaces;
+import org.eclipse.sisu.space.BeanScanning;
+import org.eclipse.sisu.space.SpaceModule;
+import org.eclipse.sisu.space.URLClassSpace;
+import org.eclipse.sisu.wire.WireModule;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Wiring of the process' dependencies on the runner's startup. Compares
+ * scanning of all dependencies (the previous behaviour) with using the Sisu
+ * indexes of the plugin JARs (see {@link DependencySpaces}).
+ * <p>
+ * Uses the JARs copied into {@code benchmarks/target/runner-deps} during
+ * the build, override with {@code -p depsDir=...}. Each invocation uses
+ * a new class loader, same as a new runner JVM.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RunnerStartupBenchmark {
+
+    @Param("benchmarks/target/runner-deps")
+    public String depsDir;
+
+    private List<URL> deps;
+
+    @Setup
+    public void setUp() throws IOException {
+        deps = new ArrayList<>();
+        try (Stream<Path> s = Files.list(Paths.get(depsDir))) {
+            s.filter(p -> p.toString().endsWith(".jar"))
+                    .sorted()
+                    .forEach(p -> {
+                        try {
+                            deps.add(p.toUri().toURL());
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        }
+
+        if (deps.isEmpty()) {
+            throw new IllegalStateException("No JARs found in " + depsDir);
+        }
+    }
+
+    @Benchmark
+    public Injector scanAll() throws IOException {
+        try (URLClassLoader cl = createClassLoader()) {
+            return Guice.createInjector(new WireModule(new SpaceModule(new URLClassSpace(cl), BeanScanning.ON)));
+        }
+    }
+
+    @Benchmark
+    public Injector indexed() throws IOException {
+        try (URLClassLoader cl = createClassLoader()) {
+            return Guice.createInjector(new WireModule(DependencySpaces.create(cl, deps, BeanScanning.ON)));
+        }
+    }
+
+    private URLClassLoader createClassLoader() {
+        return new URLClassLoader(deps.toArray(new URL[0]), RunnerStartupBenchmark.class.getClassLoader());
+    }
+}
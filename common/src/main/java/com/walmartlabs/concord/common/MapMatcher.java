@@ -20,11 +20,24 @@ package com.walmartlabs.concord.common;
  * =====
  */
 
-import java.util.Collection;
-import java.util.Map;
+import java.util.*;
+import java.util.regex.Pattern;
 
 public final class MapMatcher {
 
+    /**
+     * Parses the conditions. The result can be reused to match multiple values,
+     * the regular expressions are compiled once.
+     * Produces the same results as {@link #matches(Map, Map)}.
+     */
+    public static Compiled compile(Map<String, Object> conditions) {
+        if (conditions == null || conditions.isEmpty()) {
+            return Compiled.ANY;
+        }
+
+        return new Compiled(compileNode(conditions));
+    }
+
     public static boolean matches(Map<String, Object> data, Map<String, Object> conditions) {
         if (conditions == null || conditions.isEmpty()) {
             return true;
@@ -99,4 +112,164 @@ public final class MapMatcher {
     private static boolean compareValues(Object dataValue, Object conditionValue) {
         return dataValue.equals(conditionValue);
     }
+
+    @SuppressWarnings("unchecked")
+    private static Node compileNode(Object conditions) {
+        if (conditions == null) {
+            return Objects::isNull;
+        }
+
+        if (conditions instanceof Map) {
+            Map<String, Node> fields = new LinkedHashMap<>();
+            ((Map<String, Object>) conditions).forEach((k, v) -> fields.put(k, compileNode(v)));
+            return new ObjectNode((Map<String, Object>) conditions, fields);
+        } else if (conditions instanceof String) {
+            return new StringNode((String) conditions);
+        } else if (conditions instanceof Collection) {
+            List<Node> elements = new ArrayList<>();
+            for (Object c : (Collection<Object>) conditions) {
+                elements.add(compileNode(c));
+            }
+            return new ArrayNode((Collection<Object>) conditions, elements);
+        } else {
+            return data -> data != null && compareValues(data, conditions);
+        }
+    }
+
+    /**
+     * Pre-compiled conditions, see {@link #compile(Map)}.
+     */
+    public static final class Compiled {
+
+        private static final Compiled ANY = new Compiled(data -> true);
+
+        private final Node root;
+
+        private Compiled(Node root) {
+            this.root = root;
+        }
+
+        public boolean matches(Map<String, Object> data) {
+            return root.matches(data);
+        }
+    }
+
+    private interface Node {
+
+        boolean matches(Object data);
+    }
+
+    private static final class ObjectNode implements Node {
+
+        private final Map<String, Object> conditions;
+        private final Map<String, Node> fields;
+
+        private ObjectNode(Map<String, Object> conditions, Map<String, Node> fields) {
+            this.conditions = conditions;
+            this.fields = fields;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean matches(Object data) {
+            if (data == null) {
+                return false;
+            }
+
+            if (!(data instanceof Map)) {
+                return compareValues(data, conditions);
+            }
+
+            Map<String, Object> m = (Map<String, Object>) data;
+            for (Map.Entry<String, Node> e : fields.entrySet()) {
+                if (!e.getValue().matches(m.get(e.getKey()))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    private static final class StringNode implements Node {
+
+        private final String conditions;
+
+        /**
+         * Compiled on the first use. Same as with String#matches, invalid
+         * patterns are reported only when used.
+         */
+        private volatile Pattern pattern;
+
+        private StringNode(String conditions) {
+            this.conditions = conditions;
+        }
+
+        @Override
+        public boolean matches(Object data) {
+            if (data == null) {
+                return false;
+            }
+
+            if (!(data instanceof String)) {
+                return compareValues(data, conditions);
+            }
+
+            Pattern p = pattern;
+            if (p == null) {
+                p = Pattern.compile(conditions);
+                pattern = p;
+            }
+
+            return p.matcher((String) data).matches();
+        }
+    }
+
+    private static final class ArrayNode implements Node {
+
+        private final Collection<Object> conditions;
+        private final List<Node> elements;
+
+        private ArrayNode(Collection<Object> conditions, List<Node> elements) {
+            this.conditions = conditions;
+            this.elements = elements;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean matches(Object data) {
+            if (data == null) {
+                return false;
+            }
+
+            if (!(data instanceof Collection)) {
+                // the data value is matched against each of the conditions,
+                // same as MapMatcher#compareNodes
+                return matchAny(data, conditions);
+            }
+
+            Collection<Object> dataElements = (Collection<Object>) data;
+            if (elements.size() > dataElements.size()) {
+                return false;
+            }
+
+            for (Node n : elements) {
+                if (!anyMatches(n, dataElements)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private static boolean anyMatches(Node n, Collection<Object> dataElements) {
+            for (Object d : dataElements) {
+                if (n.matches(d)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
 }
@@ -26,36 +26,37 @@ import org.eclipse.aether.*;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.DependencyCollectionException;
 import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
 import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
 import org.eclipse.aether.impl.DefaultServiceLocator;
 import org.eclipse.aether.repository.LocalRepository;
 import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.repository.RepositoryPolicy;
 import org.eclipse.aether.resolution.*;
 import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+import org.eclipse.aether.spi.connector.checksum.ChecksumPolicyProvider;
 import org.eclipse.aether.spi.connector.transport.TransporterFactory;
 import org.eclipse.aether.transfer.AbstractTransferListener;
 import org.eclipse.aether.transfer.TransferEvent;
 import org.eclipse.aether.transport.file.FileTransporterFactory;
 import org.eclipse.aether.transport.http.HttpTransporterFactory;
 import org.eclipse.aether.util.artifact.JavaScopes;
+import org.eclipse.aether.util.graph.visitor.PreorderNodeListGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.bind.DatatypeConverter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 import static org.eclipse.aether.repository.RepositoryPolicy.CHECKSUM_POLICY_IGNORE;
@@ -73,26 +74,60 @@ public class DependencyManager {
     private static final MavenRepository MAVEN_CENTRAL = new MavenRepository("central", "default", "https://repo.maven.apache.org/maven2/", false);
     private static final List<MavenRepository> DEFAULT_REPOS = Collections.singletonList(MAVEN_CENTRAL);
 
-    private final Path cacheDir;
+    /**
+     * Max number of artifacts resolved (downloaded) at the same time.
+     */
+    private static final int RESOLVER_THREADS = 5;
+
+    /**
+     * Number of artifact locks. Different artifacts can share a lock,
+     * the number of locks doesn't depend on the number of artifacts.
+     */
+    private static final int LOCK_STRIPES = 64;
+
     private final Path localCacheDir;
     private final List<RemoteRepository> repositories;
-    private final Object mutex = new Object();
     private final RepositorySystem maven = newMavenRepositorySystem();
     private final RepositoryCache mavenCache = new DefaultRepositoryCache();
+    private final RepositorySystemSession session;
+    private final DirectLinkCache directLinkCache;
+
+    /**
+     * Striped artifact locks. The threads which resolve the same
+     * artifact wait for each other. Different JVMs can share the same local
+     * repository: artifacts are downloaded into temporary files and moved
+     * into place when complete (see {@link #newRepositorySystemSession}).
+     */
+    private final Object[] locks = newLocks(LOCK_STRIPES);
+    private final ExecutorService executor;
 
     public DependencyManager(Path cacheDir) throws IOException {
         this(cacheDir, readCfg());
     }
 
     public DependencyManager(Path cacheDir, List<MavenRepository> repositories) throws IOException {
-        this.cacheDir = cacheDir;
+        this(cacheDir, Paths.get(System.getProperty("user.home")).resolve(".m2/repository"), repositories);
+    }
+
+    public DependencyManager(Path cacheDir, Path localCacheDir, List<MavenRepository> repositories) throws IOException {
         if (!Files.exists(cacheDir)) {
             Files.createDirectories(cacheDir);
         }
-        this.localCacheDir = Paths.get(System.getProperty("user.home")).resolve(".m2/repository");
+        this.directLinkCache = new DirectLinkCache(cacheDir.resolve(FILES_CACHE_DIR));
+        this.localCacheDir = localCacheDir;
 
         log.info("init -> using repositories: {}", repositories);
         this.repositories = toRemote(repositories);
+        this.session = newRepositorySystemSession(maven);
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS,
+                1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "dependency-resolver");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
     }
 
     public Path getLocalCacheDir() {
@@ -166,55 +201,23 @@ public class DependencyManager {
     }
 
     private Collection<DependencyEntity> resolveDirectLinks(Collection<URI> items) throws IOException {
-        Collection<DependencyEntity> paths = new HashSet<>();
-        for (URI item : items) {
-            paths.add(new DependencyEntity(resolveFile(item), item));
-        }
-        return paths;
+        return parallel(items, item -> new DependencyEntity(resolveFile(item), item));
     }
 
     private Path resolveFile(URI uri) throws IOException {
-        boolean skipCache = shouldSkipCache(uri);
-        String name = getLastPart(uri);
-
-        Path baseDir = cacheDir.resolve(FILES_CACHE_DIR).resolve(hash(uri.toString()));
-        if (!Files.exists(baseDir)) {
-            Files.createDirectories(baseDir);
-        }
-
-        Path p = baseDir.resolve(name);
-
-        synchronized (mutex) {
-            if (!skipCache && Files.exists(p)) {
-                log.info("resolveFile -> using a cached copy of {}...", uri);
-                return p;
-            }
-
-            log.info("resolveFile -> downloading {}...", uri);
-            download(uri, p);
-
-            return p;
-        }
-    }
-
-    private static String hash(String s) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            md.update(s.getBytes());
-            return DatatypeConverter.printHexBinary(md.digest()).toUpperCase();
-        } catch (Exception e) {
-            throw new RuntimeException("Hash error", e);
-        }
+        return directLinkCache.get(uri);
     }
 
     private Artifact resolveMavenSingle(MavenDependency dep) throws IOException {
-        RepositorySystemSession session = newRepositorySystemSession(maven);
-
         ArtifactRequest req = new ArtifactRequest();
         req.setArtifact(dep.artifact);
         req.setRepositories(repositories);
 
-        synchronized (mutex) {
+        return resolveArtifact(req);
+    }
+
+    private Artifact resolveArtifact(ArtifactRequest req) throws IOException {
+        synchronized (lockFor(req.getArtifact().toString())) {
             try {
                 ArtifactResult r = maven.resolveArtifact(session, req);
                 return r.getArtifact();
@@ -225,16 +228,13 @@ public class DependencyManager {
     }
 
     private Collection<Artifact> resolveMavenSingleDependencies(Collection<MavenDependency> deps) throws IOException {
-        Collection<Artifact> paths = new HashSet<>();
-        for (MavenDependency dep : deps) {
-            paths.add(resolveMavenSingle(dep));
-        }
-        return paths;
+        return parallel(deps, this::resolveMavenSingle);
     }
 
     private Collection<Artifact> resolveMavenTransitiveDependencies(Collection<MavenDependency> deps) throws IOException {
-        RepositorySystem system = newMavenRepositorySystem();
-        RepositorySystemSession session = newRepositorySystemSession(system);
+        if (deps.isEmpty()) {
+            return Collections.emptySet();
+        }
 
         CollectRequest req = new CollectRequest();
         req.setDependencies(deps.stream()
@@ -242,24 +242,85 @@ public class DependencyManager {
                 .collect(Collectors.toList()));
         req.setRepositories(repositories);
 
-        DependencyRequest dependencyRequest = new DependencyRequest(req, null);
+        // collect the dependency graph first (POMs only), then download the artifacts in parallel
+        DependencyNode root;
+        try {
+            root = maven.collectDependencies(session, req).getRoot();
+        } catch (DependencyCollectionException e) {
+            throw new IOException(e);
+        }
 
-        synchronized (mutex) {
-            try {
-                return system.resolveDependencies(session, dependencyRequest)
-                        .getArtifactResults().stream()
-                        .map(ArtifactResult::getArtifact)
-                        .collect(Collectors.toSet());
-            } catch (DependencyResolutionException e) {
-                throw new IOException(e);
+        PreorderNodeListGenerator nlg = new PreorderNodeListGenerator();
+        root.accept(nlg);
+
+        Map<String, ArtifactRequest> requests = new LinkedHashMap<>();
+        for (DependencyNode n : nlg.getNodes()) {
+            if (n.getDependency() == null) {
+                continue;
+            }
+            requests.putIfAbsent(n.getArtifact().toString(), new ArtifactRequest(n));
+        }
+
+        return parallel(requests.values(), this::resolveArtifact);
+    }
+
+    private Object lockFor(String key) {
+        return locks[(key.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+
+    private static Object[] newLocks(int count) {
+        Object[] result = new Object[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new Object();
+        }
+        return result;
+    }
+
+    private <T, R> Collection<R> parallel(Collection<T> items, Resolver<T, R> resolver) throws IOException {
+        if (items.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        if (items.size() == 1) {
+            return Collections.singleton(resolver.resolve(items.iterator().next()));
+        }
+
+        List<Future<R>> futures = new ArrayList<>(items.size());
+        for (T i : items) {
+            futures.add(executor.submit(() -> resolver.resolve(i)));
+        }
+
+        Collection<R> result = new HashSet<>();
+        try {
+            for (Future<R> f : futures) {
+                result.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while resolving dependencies", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
             }
+            throw new IOException(cause);
+        } finally {
+            futures.forEach(f -> f.cancel(false));
         }
+
+        return result;
     }
 
-    private DefaultRepositorySystemSession newRepositorySystemSession(RepositorySystem system) {
+    private RepositorySystemSession newRepositorySystemSession(RepositorySystem system) {
         DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
         session.setCache(mavenCache);
-        session.setChecksumPolicy(RepositoryPolicy.CHECKSUM_POLICY_IGNORE);
+        // verify the checksums if the repository provides them, see OptionalChecksumPolicyProvider
+        session.setChecksumPolicy(RepositoryPolicy.CHECKSUM_POLICY_FAIL);
+
+        // download into unique temporary files and move them into the local repository
+        // when complete. The default "resumable" downloads use lock files which
+        // can't be shared by multiple threads of the same JVM.
+        session.setConfigProperty("aether.connector.resumeDownloads", false);
 
         LocalRepository localRepo = new LocalRepository(localCacheDir.toFile());
         session.setLocalRepositoryManager(system.newLocalRepositoryManager(session, localRepo));
@@ -281,6 +342,9 @@ public class DependencyManager {
             }
         });
 
+        // the session is shared between threads
+        session.setReadOnly();
+
         return session;
     }
 
@@ -289,36 +353,12 @@ public class DependencyManager {
                 artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
     }
 
-    private static void download(URI uri, Path dst) throws IOException {
-        try (InputStream in = uri.toURL().openStream();
-             OutputStream out = Files.newOutputStream(dst, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-
-            byte[] ab = new byte[4096];
-            int read;
-            while ((read = in.read(ab)) > 0) {
-                out.write(ab, 0, read);
-            }
-        }
-    }
-
-    private static String getLastPart(URI uri) {
-        String p = uri.getPath();
-        int idx = p.lastIndexOf('/');
-        if (idx >= 0 && idx + 1 < p.length()) {
-            return p.substring(idx + 1);
-        }
-        throw new IllegalArgumentException("Invalid dependency URL. Can't get a file name: " + uri);
-    }
-
-    private static boolean shouldSkipCache(URI u) {
-        return "file".equalsIgnoreCase(u.getScheme()) || u.getPath().contains("SNAPSHOT");
-    }
-
     private static RepositorySystem newMavenRepositorySystem() {
         DefaultServiceLocator locator = MavenRepositorySystemUtils.newServiceLocator();
         locator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
         locator.addService(TransporterFactory.class, FileTransporterFactory.class);
         locator.addService(TransporterFactory.class, HttpTransporterFactory.class);
+        locator.setServices(ChecksumPolicyProvider.class, new OptionalChecksumPolicyProvider());
 
         locator.setErrorHandler(new DefaultServiceLocator.ErrorHandler() {
             @Override
@@ -410,6 +450,12 @@ public class DependencyManager {
         return l;
     }
 
+    @FunctionalInterface
+    private interface Resolver<T, R> {
+
+        R resolve(T item) throws IOException;
+    }
+
     private static final class DependencyList {
 
         private final List<MavenDependency> mavenTransitiveDependencies;
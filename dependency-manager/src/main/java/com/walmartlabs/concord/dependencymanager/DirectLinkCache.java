@@ -0,0 +1,444 @@
+package com.walmartlabs.concord.dependencymanager;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache for the dependencies specified as direct links.
+ * <p>
+ * The downloaded files are stored once per unique content (SHA-256) in
+ * {@code blobs/}. Each URL gets its own directory ({@code MD5(url)/}) with
+ * a hard link to the content (which keeps the original file name) and an
+ * index file with the content's hash and the validators (ETag, Last-Modified)
+ * received with it. Mutable URLs (SNAPSHOTs, local files) are revalidated
+ * using conditional requests.
+ * <p>
+ * If the server publishes a checksum ({@code .sha256} or {@code .sha1} next
+ * to the file), it is fetched first and the content is taken from
+ * {@code blobs/} if it's already there, without downloading it again.
+ * The SHA-1 checksums are mapped to the content's hashes using the files
+ * in {@code checksums/}.
+ * <p>
+ * When the content of a URL changes, the previous blob is removed unless
+ * some other URL still links to it. Blobs of URLs which are no longer
+ * used are not removed, the cache directory can be safely deleted to
+ * reclaim the space.
+ * <p>
+ * All files are written into temporary files first and atomically moved into
+ * place, the cache can be shared by multiple JVMs.
+ */
+class DirectLinkCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectLinkCache.class);
+
+    private static final String BLOBS_DIR = "blobs";
+    private static final String CHECKSUMS_DIR = "checksums";
+    private static final String TMP_DIR = "tmp";
+    private static final String INDEX_FILE_NAME = ".index";
+
+    private static final String SHA1 = "sha1";
+    private static final String SHA256 = "sha256";
+
+    private final Path baseDir;
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    DirectLinkCache(Path baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    public Path get(URI uri) throws IOException {
+        String name = getLastPart(uri);
+        String key = hash("MD5", uri.toString().getBytes(StandardCharsets.UTF_8));
+
+        Path dir = baseDir.resolve(key);
+        Path dst = dir.resolve(name);
+
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            Index index = readIndex(dir);
+            boolean cached = index != null && Files.exists(dst);
+
+            if (cached && !isMutable(uri)) {
+                log.info("get -> using a cached copy of {}...", uri);
+                return dst;
+            }
+
+            // the checksum allows to skip the download if the content is already known
+            Checksum checksum = fetchChecksum(uri);
+            String known = checksum != null ? findBlob(checksum) : null;
+            if (known != null) {
+                if (cached && known.equals(index.sha256)) {
+                    log.info("get -> {} has the same checksum, using the cached copy...", uri);
+                    return dst;
+                }
+
+                log.info("get -> the content of {} is already cached, linking...", uri);
+                link(baseDir.resolve(BLOBS_DIR).resolve(known), dir, dst);
+                writeIndex(dir, new Index(known, null, null, Files.size(dst)));
+                evictReplaced(index, known);
+                return dst;
+            }
+
+            URLConnection conn = uri.toURL().openConnection();
+            if (cached && conn instanceof HttpURLConnection) {
+                if (index.etag != null) {
+                    conn.setRequestProperty("If-None-Match", index.etag);
+                }
+                if (index.lastModified != null) {
+                    conn.setRequestProperty("If-Modified-Since", index.lastModified);
+                }
+            }
+
+            Path tmp;
+            Digests digests;
+            try (InputStream in = conn.getInputStream()) {
+                if (cached && isNotModified(conn, index)) {
+                    log.info("get -> {} is not modified, using the cached copy...", uri);
+                    return dst;
+                }
+
+                log.info("get -> downloading {}...", uri);
+
+                tmp = Files.createTempFile(createDir(baseDir.resolve(TMP_DIR)), "download", ".tmp");
+                try {
+                    digests = copy(in, tmp);
+                    verifyChecksum(uri, checksum, digests);
+                } catch (IOException e) {
+                    Files.deleteIfExists(tmp);
+                    throw e;
+                }
+            }
+
+            Path blob = store(tmp, digests);
+            link(blob, dir, dst);
+
+            writeIndex(dir, new Index(digests.sha256,
+                    conn.getHeaderField("ETag"),
+                    conn.getHeaderField("Last-Modified"),
+                    conn.getContentLengthLong()));
+
+            evictReplaced(index, digests.sha256);
+
+            return dst;
+        }
+    }
+
+    private Path store(Path tmp, Digests digests) throws IOException {
+        Path blob = createDir(baseDir.resolve(BLOBS_DIR)).resolve(digests.sha256);
+        if (Files.exists(blob)) {
+            Files.delete(tmp);
+        } else {
+            Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        Path sha1 = createDir(baseDir.resolve(CHECKSUMS_DIR)).resolve(digests.sha1);
+        if (!Files.exists(sha1)) {
+            Path t = sha1.resolveSibling("." + UUID.randomUUID() + ".tmp");
+            Files.write(t, digests.sha256.getBytes(StandardCharsets.UTF_8));
+            Files.move(t, sha1, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        return blob;
+    }
+
+    /**
+     * Returns the SHA-256 of a blob with the specified checksum or
+     * {@code null} if there's no such blob.
+     */
+    private String findBlob(Checksum checksum) throws IOException {
+        String sha256 = checksum.value;
+        if (SHA1.equals(checksum.algorithm)) {
+            Path p = baseDir.resolve(CHECKSUMS_DIR).resolve(checksum.value);
+            if (!Files.exists(p)) {
+                return null;
+            }
+            sha256 = new String(Files.readAllBytes(p), StandardCharsets.UTF_8).trim();
+        }
+
+        return Files.exists(baseDir.resolve(BLOBS_DIR).resolve(sha256)) ? sha256 : null;
+    }
+
+    /**
+     * Removes the URL's previous blob if no other URL links to it.
+     * Requires a file system with hard links and the "unix" attribute view,
+     * otherwise the blob is kept.
+     */
+    private void evictReplaced(Index previous, String current) {
+        if (previous == null || previous.sha256.equals(current)) {
+            return;
+        }
+
+        Path blob = baseDir.resolve(BLOBS_DIR).resolve(previous.sha256);
+        try {
+            if (Files.exists(blob) && (Integer) Files.getAttribute(blob, "unix:nlink") == 1) {
+                Files.delete(blob);
+                log.debug("evictReplaced -> removed {}", blob);
+            }
+        } catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+            log.debug("evictReplaced -> can't remove {}: {}", blob, e.getMessage());
+        }
+    }
+
+    private static void link(Path blob, Path dir, Path dst) throws IOException {
+        Path tmp = createDir(dir).resolve("." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.createLink(tmp, blob);
+        } catch (UnsupportedOperationException | IOException e) {
+            log.debug("link -> can't create a hard link, copying instead: {}", e.getMessage());
+            Files.copy(blob, tmp, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(tmp, dst, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static boolean isNotModified(URLConnection conn, Index index) throws IOException {
+        if (conn instanceof HttpURLConnection) {
+            return ((HttpURLConnection) conn).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+        }
+
+        // no conditional requests for other protocols (e.g. local files)
+        String lastModified = conn.getHeaderField("Last-Modified");
+        return lastModified != null
+                && lastModified.equals(index.lastModified)
+                && conn.getContentLengthLong() == index.size;
+    }
+
+    /**
+     * Verifies the downloaded file using the checksum provided by the server, if any.
+     */
+    private static void verifyChecksum(URI uri, Checksum expected, Digests digests) throws IOException {
+        if (expected == null) {
+            return;
+        }
+
+        String actual = SHA1.equals(expected.algorithm) ? digests.sha1 : digests.sha256;
+        if (!expected.value.equalsIgnoreCase(actual)) {
+            throw new IOException("Checksum mismatch for " + uri + ": expected " + expected.value + ", got " + actual);
+        }
+    }
+
+    /**
+     * Fetches the {@code .sha256} or the {@code .sha1} file next to the specified URL.
+     *
+     * @return the checksum or {@code null} if the server doesn't provide one
+     */
+    private static Checksum fetchChecksum(URI uri) {
+        Checksum c = fetchChecksum(uri, SHA256, 64);
+        return c != null ? c : fetchChecksum(uri, SHA1, 40);
+    }
+
+    private static Checksum fetchChecksum(URI uri, String algorithm, int length) {
+        URI checksumUri = appendToPath(uri, "." + algorithm);
+
+        String value;
+        try (InputStream in = checksumUri.toURL().openStream()) {
+            value = parseChecksum(in, length);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.debug("fetchChecksum -> can't fetch the checksum of {}: {}", uri, e.getMessage());
+            return null;
+        }
+
+        if (value == null) {
+            log.debug("fetchChecksum -> invalid checksum file: {}", checksumUri);
+            return null;
+        }
+
+        return new Checksum(algorithm, value.toLowerCase());
+    }
+
+    private static String parseChecksum(InputStream in, int length) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+
+        // the checksum can be followed by the file's name
+        String s = line.trim().split("\\s+")[0];
+        return s.matches("[0-9a-fA-F]{" + length + "}") ? s : null;
+    }
+
+    /**
+     * Appends the suffix to the URL's path, keeping the query and the fragment.
+     */
+    static URI appendToPath(URI uri, String suffix) {
+        String s = uri.toString();
+
+        int end = s.length();
+        if (uri.getRawFragment() != null) {
+            end -= uri.getRawFragment().length() + 1;
+        }
+        if (uri.getRawQuery() != null) {
+            end -= uri.getRawQuery().length() + 1;
+        }
+
+        return URI.create(s.substring(0, end) + suffix + s.substring(end));
+    }
+
+    private static Digests copy(InputStream in, Path dst) throws IOException {
+        MessageDigest sha1 = digest("SHA-1");
+        MessageDigest sha256 = digest("SHA-256");
+
+        try (OutputStream out = Files.newOutputStream(dst, StandardOpenOption.TRUNCATE_EXISTING)) {
+            byte[] ab = new byte[8192];
+            int read;
+            while ((read = in.read(ab)) > 0) {
+                sha1.update(ab, 0, read);
+                sha256.update(ab, 0, read);
+                out.write(ab, 0, read);
+            }
+        }
+
+        return new Digests(toHex(sha1.digest()), toHex(sha256.digest()));
+    }
+
+    private static Index readIndex(Path dir) throws IOException {
+        Path p = dir.resolve(INDEX_FILE_NAME);
+        if (!Files.exists(p)) {
+            return null;
+        }
+
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(p)) {
+            props.load(in);
+        }
+
+        String sha256 = props.getProperty("sha256");
+        if (sha256 == null) {
+            return null;
+        }
+
+        return new Index(sha256,
+                props.getProperty("etag"),
+                props.getProperty("lastModified"),
+                Long.parseLong(props.getProperty("size", "-1")));
+    }
+
+    private static void writeIndex(Path dir, Index index) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("sha256", index.sha256);
+        if (index.etag != null) {
+            props.setProperty("etag", index.etag);
+        }
+        if (index.lastModified != null) {
+            props.setProperty("lastModified", index.lastModified);
+        }
+        props.setProperty("size", String.valueOf(index.size));
+
+        Path tmp = dir.resolve("." + UUID.randomUUID() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            props.store(out, null);
+        }
+        Files.move(tmp, dir.resolve(INDEX_FILE_NAME), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path createDir(Path p) throws IOException {
+        if (!Files.exists(p)) {
+            Files.createDirectories(p);
+        }
+        return p;
+    }
+
+    private static boolean isMutable(URI u) {
+        return "file".equalsIgnoreCase(u.getScheme()) || u.getPath().contains("SNAPSHOT");
+    }
+
+    private static String getLastPart(URI uri) {
+        String p = uri.getPath();
+        int idx = p.lastIndexOf('/');
+        if (idx >= 0 && idx + 1 < p.length()) {
+            return p.substring(idx + 1);
+        }
+        throw new IllegalArgumentException("Invalid dependency URL. Can't get a file name: " + uri);
+    }
+
+    private static String hash(String algorithm, byte[] ab) {
+        MessageDigest md = digest(algorithm);
+        md.update(ab);
+        return DatatypeConverter.printHexBinary(md.digest()).toUpperCase();
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Hash error", e);
+        }
+    }
+
+    private static String toHex(byte[] ab) {
+        return DatatypeConverter.printHexBinary(ab).toLowerCase();
+    }
+
+    private static final class Digests {
+
+        private final String sha1;
+        private final String sha256;
+
+        private Digests(String sha1, String sha256) {
+            this.sha1 = sha1;
+            this.sha256 = sha256;
+        }
+    }
+
+    private static final class Checksum {
+
+        private final String algorithm;
+        private final String value;
+
+        private Checksum(String algorithm, String value) {
+            this.algorithm = algorithm;
+            this.value = value;
+        }
+    }
+
+    private static final class Index {
+
+        private final String sha256;
+        private final String etag;
+        private final String lastModified;
+        private final long size;
+
+        private Index(String sha256, String etag, String lastModified, long size) {
+            this.sha256 = sha256;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.walmartlabs.concord.dependencymanager;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+import org.eclipse.aether.spi.connector.checksum.ChecksumPolicy;
+import org.eclipse.aether.spi.connector.checksum.ChecksumPolicyProvider;
+import org.eclipse.aether.transfer.ChecksumFailureException;
+import org.eclipse.aether.transfer.TransferResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies the checksums of downloaded artifacts if the repository provides them.
+ * <p>
+ * Unlike the standard {@link RepositoryPolicy#CHECKSUM_POLICY_FAIL} policy, missing
+ * checksums are not an error. Mismatched checksums fail the download (after one retry).
+ * {@link RepositoryPolicy#CHECKSUM_POLICY_IGNORE} disables the verification.
+ */
+class OptionalChecksumPolicyProvider implements ChecksumPolicyProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(OptionalChecksumPolicyProvider.class);
+
+    @Override
+    public ChecksumPolicy newChecksumPolicy(RepositorySystemSession session, RemoteRepository repository, TransferResource resource, String policy) {
+        if (RepositoryPolicy.CHECKSUM_POLICY_IGNORE.equals(policy)) {
+            return null;
+        }
+        return new OptionalChecksumPolicy(resource);
+    }
+
+    @Override
+    public String getEffectiveChecksumPolicy(RepositorySystemSession session, String policy1, String policy2) {
+        if (RepositoryPolicy.CHECKSUM_POLICY_FAIL.equals(policy1) || RepositoryPolicy.CHECKSUM_POLICY_FAIL.equals(policy2)) {
+            return RepositoryPolicy.CHECKSUM_POLICY_FAIL;
+        }
+        if (RepositoryPolicy.CHECKSUM_POLICY_WARN.equals(policy1) || RepositoryPolicy.CHECKSUM_POLICY_WARN.equals(policy2)) {
+            return RepositoryPolicy.CHECKSUM_POLICY_WARN;
+        }
+        return RepositoryPolicy.CHECKSUM_POLICY_IGNORE;
+    }
+
+    private static final class OptionalChecksumPolicy implements ChecksumPolicy {
+
+        private final TransferResource resource;
+
+        private OptionalChecksumPolicy(TransferResource resource) {
+            this.resource = resource;
+        }
+
+        @Override
+        public boolean onChecksumMatch(String algorithm, int kind) {
+            return true;
+        }
+
+        @Override
+        public void onChecksumMismatch(String algorithm, int kind, ChecksumFailureException exception) throws ChecksumFailureException {
+            throw exception;
+        }
+
+        @Override
+        public void onChecksumError(String algorithm, int kind, ChecksumFailureException exception) {
+            log.warn("onChecksumError -> can't validate the {} checksum of {}{}: {}",
+                    algorithm, resource.getRepositoryUrl(), resource.getResourceName(), exception.getMessage());
+        }
+
+        @Override
+        public void onNoMoreChecksums() {
+            log.debug("onNoMoreChecksums -> no checksums available for {}{}", resource.getRepositoryUrl(), resource.getResourceName());
+        }
+
+        @Override
+        public void onTransferRetry() {
+            // do nothing
+        }
+
+        @Override
+        public boolean onTransferChecksumFailure(ChecksumFailureException exception) {
+            return false;
+        }
+    }
+}
@@ -23,18 +23,23 @@ package com.walmartlabs.concord.dependencymanager;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.Collection;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
-@Ignore
 public class DependencyManagerTest {
 
     @Test(timeout = 30000)
+    @Ignore
     public void test() throws Exception {
         Path tmpDir = Files.createTempDirectory("test");
         URI uriA = new URI("mvn://com.walmartlabs.concord:concord-project-model:0.44.0?scope=runtime");
@@ -44,4 +49,82 @@ public class DependencyManagerTest {
         Collection<DependencyEntity> paths = m.resolve(Arrays.asList(uriA, uriB));
         assertEquals(10, paths.size());
     }
+
+    @Test(timeout = 60000)
+    public void testConcurrentLocalRepository() throws Exception {
+        Path repoDir = Files.createTempDirectory("repo");
+        deploy(repoDir, "a", "b", "c");
+        deploy(repoDir, "b", "c");
+        deploy(repoDir, "c");
+        deploy(repoDir, "d", "a");
+
+        Path localCacheDir = Files.createTempDirectory("m2");
+        List<MavenRepository> repos = Collections.singletonList(new MavenRepository("test", "default", repoDir.toUri().toString(), false));
+
+        // two managers with the same local repository, as if they were running in different JVMs
+        DependencyManager m1 = new DependencyManager(Files.createTempDirectory("cache"), localCacheDir, repos);
+        DependencyManager m2 = new DependencyManager(Files.createTempDirectory("cache"), localCacheDir, repos);
+
+        List<URI> uris = Arrays.asList(
+                new URI("mvn://test:a:1.0"),
+                new URI("mvn://test:d:1.0?transitive=false"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<Collection<DependencyEntity>>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                DependencyManager m = i % 2 == 0 ? m1 : m2;
+                futures.add(executor.submit(() -> m.resolve(uris)));
+            }
+
+            for (Future<Collection<DependencyEntity>> f : futures) {
+                Collection<DependencyEntity> deps = f.get();
+
+                Set<String> names = deps.stream()
+                        .map(d -> d.getArtifact().getArtifactId())
+                        .collect(Collectors.toSet());
+                assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d")), names);
+
+                for (DependencyEntity d : deps) {
+                    assertEquals(d.getPath().toString(), d.getArtifact().getArtifactId(), new String(Files.readAllBytes(d.getPath())));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testChecksumMismatch() throws Exception {
+        Path repoDir = Files.createTempDirectory("repo");
+        deploy(repoDir, "a");
+        Files.write(repoDir.resolve("test/a/1.0/a-1.0.jar.sha1"), "0000000000000000000000000000000000000000".getBytes());
+
+        List<MavenRepository> repos = Collections.singletonList(new MavenRepository("test", "default", repoDir.toUri().toString(), false));
+        DependencyManager m = new DependencyManager(Files.createTempDirectory("cache"), Files.createTempDirectory("m2"), repos);
+
+        try {
+            m.resolve(Collections.singletonList(new URI("mvn://test:a:1.0")));
+            fail("exception expected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static void deploy(Path repoDir, String artifactId, String... dependencies) throws Exception {
+        Path dir = repoDir.resolve("test").resolve(artifactId).resolve("1.0");
+        Files.createDirectories(dir);
+
+        StringBuilder pom = new StringBuilder()
+                .append("<project><modelVersion>4.0.0</modelVersion>")
+                .append("<groupId>test</groupId><artifactId>").append(artifactId).append("</artifactId><version>1.0</version>")
+                .append("<dependencies>");
+        for (String d : dependencies) {
+            pom.append("<dependency><groupId>test</groupId><artifactId>").append(d).append("</artifactId><version>1.0</version></dependency>");
+        }
+        pom.append("</dependencies></project>");
+
+        Files.write(dir.resolve(artifactId + "-1.0.pom"), pom.toString().getBytes());
+        Files.write(dir.resolve(artifactId + "-1.0.jar"), artifactId.getBytes());
+    }
 }
@@ -0,0 +1,237 @@
+package com.walmartlabs.concord.dependencymanager;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class DirectLinkCacheTest {
+
+    private HttpServer server;
+    private final Map<String, String> content = new ConcurrentHashMap<>();
+    private final AtomicInteger downloads = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            String s = content.get(exchange.getRequestURI().getPath());
+            if (s == null) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+
+            String etag = "\"" + Integer.toHexString(s.hashCode()) + "\"";
+            exchange.getResponseHeaders().add("ETag", etag);
+
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            if (!path.endsWith(".sha1") && !path.endsWith(".sha256")) {
+                downloads.incrementAndGet();
+            }
+
+            byte[] ab = s.getBytes();
+            exchange.sendResponseHeaders(200, ab.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(ab);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testContentAddressing() throws Exception {
+        content.put("/a/test.jar", "hello");
+        content.put("/b/test.jar", "hello");
+
+        DirectLinkCache cache = new DirectLinkCache(Files.createTempDirectory("cache"));
+
+        Path a = cache.get(url("/a/test.jar"));
+        Path b = cache.get(url("/b/test.jar"));
+        assertNotEquals(a, b);
+        assertEquals("test.jar", a.getFileName().toString());
+        assertTrue(Files.isSameFile(a, b));
+        assertEquals("hello", new String(Files.readAllBytes(b)));
+
+        // release URLs are not revalidated
+        assertEquals(a, cache.get(url("/a/test.jar")));
+        assertEquals(2, downloads.get());
+        assertEquals(0, notModified.get());
+    }
+
+    @Test
+    public void testSnapshotRevalidation() throws Exception {
+        content.put("/test-1.0-SNAPSHOT.jar", "v1");
+
+        DirectLinkCache cache = new DirectLinkCache(Files.createTempDirectory("cache"));
+
+        Path p = cache.get(url("/test-1.0-SNAPSHOT.jar"));
+        assertEquals("v1", new String(Files.readAllBytes(p)));
+
+        p = cache.get(url("/test-1.0-SNAPSHOT.jar"));
+        assertEquals("v1", new String(Files.readAllBytes(p)));
+        assertEquals(1, downloads.get());
+        assertEquals(1, notModified.get());
+
+        content.put("/test-1.0-SNAPSHOT.jar", "v2");
+
+        p = cache.get(url("/test-1.0-SNAPSHOT.jar"));
+        assertEquals("v2", new String(Files.readAllBytes(p)));
+        assertEquals(2, downloads.get());
+    }
+
+    @Test
+    public void testChecksum() throws Exception {
+        content.put("/good.jar", "hello");
+        content.put("/good.jar.sha1", "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d  good.jar");
+        content.put("/bad.jar", "hello");
+        content.put("/bad.jar.sha1", "0000000000000000000000000000000000000000");
+
+        DirectLinkCache cache = new DirectLinkCache(Files.createTempDirectory("cache"));
+
+        assertEquals("hello", new String(Files.readAllBytes(cache.get(url("/good.jar")))));
+
+        try {
+            cache.get(url("/bad.jar"));
+            fail("exception expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Checksum mismatch"));
+        }
+    }
+
+    @Test
+    public void testChecksumLookup() throws Exception {
+        content.put("/a/test.jar", "hello");
+        content.put("/a/test.jar.sha256", "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824");
+        content.put("/b/test.jar", "hello");
+        content.put("/b/test.jar.sha256", "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824");
+        content.put("/c/test.jar", "hello");
+        content.put("/c/test.jar.sha1", "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d");
+
+        DirectLinkCache cache = new DirectLinkCache(Files.createTempDirectory("cache"));
+
+        Path a = cache.get(url("/a/test.jar"));
+        assertEquals(1, downloads.get());
+
+        // the content is known, no downloads
+        Path b = cache.get(url("/b/test.jar"));
+        Path c = cache.get(url("/c/test.jar"));
+        assertEquals(1, downloads.get());
+
+        assertTrue(Files.isSameFile(a, b));
+        assertTrue(Files.isSameFile(a, c));
+        assertEquals("hello", new String(Files.readAllBytes(c)));
+    }
+
+    @Test
+    public void testChecksumWithQuery() throws Exception {
+        content.put("/test.jar", "hello");
+        content.put("/test.jar.sha1", "0000000000000000000000000000000000000000");
+
+        DirectLinkCache cache = new DirectLinkCache(Files.createTempDirectory("cache"));
+
+        try {
+            cache.get(url("/test.jar?token=abc"));
+            fail("exception expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Checksum mismatch"));
+        }
+
+        assertEquals(URI.create("http://host/a/test.jar.sha1?x=1#y"), DirectLinkCache.appendToPath(URI.create("http://host/a/test.jar?x=1#y"), ".sha1"));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        content.put("/test-1.0-SNAPSHOT.jar", "v1");
+
+        Path baseDir = Files.createTempDirectory("cache");
+        DirectLinkCache cache = new DirectLinkCache(baseDir);
+
+        cache.get(url("/test-1.0-SNAPSHOT.jar"));
+        assertEquals(1, count(baseDir.resolve("blobs")));
+
+        content.put("/test-1.0-SNAPSHOT.jar", "v2");
+
+        Path p = cache.get(url("/test-1.0-SNAPSHOT.jar"));
+        assertEquals("v2", new String(Files.readAllBytes(p)));
+
+        // the previous content is no longer used
+        assertEquals(1, count(baseDir.resolve("blobs")));
+    }
+
+    @Test
+    public void testLocalFile() throws Exception {
+        Path src = Files.createTempFile("test", ".jar");
+        Files.write(src, "v1".getBytes());
+        Files.setLastModifiedTime(src, FileTime.fromMillis(1000000));
+
+        DirectLinkCache cache = new DirectLinkCache(Files.createTempDirectory("cache"));
+
+        Path p = cache.get(src.toUri());
+        assertEquals("v1", new String(Files.readAllBytes(p)));
+
+        Files.write(src, "v2".getBytes());
+        Files.setLastModifiedTime(src, FileTime.fromMillis(2000000));
+
+        p = cache.get(src.toUri());
+        assertEquals("v2", new String(Files.readAllBytes(p)));
+    }
+
+    private static long count(Path dir) throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.count();
+        }
+    }
+
+    private URI url(String path) {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + path);
+    }
+}
@@ -58,10 +58,11 @@ public class AutoScaler {
         }
 
         // the number of processes waiting for an agent in the current pool
+        MapMatcher.Compiled queueSelector = MapMatcher.compile(cfg.getQueueSelector());
         int enqueuedCount = (int) queueEntries.stream()
                 .map(ProcessQueueEntry::getRequirements)
                 .filter(Objects::nonNull)
-                .filter(a -> MapMatcher.matches(a, cfg.getQueueSelector()))
+                .filter(queueSelector::matches)
                 .count();
 
         // count the currently running pods
@@ -28,11 +28,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
-import static com.walmartlabs.concord.policyengine.Utils.matches;
-
 public class DependencyPolicy {
 
     private final PolicyRules<DependencyRule> rules;
+    private final PatternMatcher matcher = new PatternMatcher();
 
     public DependencyPolicy(PolicyRules<DependencyRule> rules) {
         this.rules = rules;
@@ -78,7 +77,7 @@ public class DependencyPolicy {
         }
     }
 
-    private static boolean matchRule(DependencyRule r, DependencyEntity d) {
+    private boolean matchRule(DependencyRule r, DependencyEntity d) {
         if (d.getArtifact() != null) {
             return matchRule(r, d.getArtifact());
         } else {
@@ -86,16 +85,16 @@ public class DependencyPolicy {
         }
     }
 
-    private static boolean matchRule(DependencyRule r, DependencyEntity.Artifact a) {
-        if (r.getScheme() != null && !matches(r.getScheme(), "mvn")) {
+    private boolean matchRule(DependencyRule r, DependencyEntity.Artifact a) {
+        if (r.getScheme() != null && !matcher.matches(r.getScheme(), "mvn")) {
             return false;
         }
 
-        if (r.getGroupId() != null && !matches(r.getGroupId(), a.getGroupId())) {
+        if (r.getGroupId() != null && !matcher.matches(r.getGroupId(), a.getGroupId())) {
             return false;
         }
 
-        if (r.getArtifactId() != null && !matches(r.getArtifactId(), a.getArtifactId())) {
+        if (r.getArtifactId() != null && !matcher.matches(r.getArtifactId(), a.getArtifactId())) {
             return false;
         }
 
@@ -110,8 +109,8 @@ public class DependencyPolicy {
         return true;
     }
 
-    private static boolean matchRule(DependencyRule r, URI directLink) {
-        if (r.getScheme() != null && matches(r.getScheme(), directLink.getScheme())) {
+    private boolean matchRule(DependencyRule r, URI directLink) {
+        if (r.getScheme() != null && matcher.matches(r.getScheme(), directLink.getScheme())) {
             return true;
         }
 
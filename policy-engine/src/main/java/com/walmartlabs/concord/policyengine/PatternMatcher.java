@@ -0,0 +1,125 @@
+package com.walmartlabs.concord.policyengine;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Matches values using the patterns of the policy rules.
+ * <p>
+ * Each policy keeps its own instance: the patterns are compiled once,
+ * on the first use, and are discarded together with the policy. The
+ * patterns come only from the policy's rules, so the number of the
+ * compiled patterns is limited by the rules.
+ */
+final class PatternMatcher {
+
+    private final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+
+    boolean matchAny(List<String> patterns, String value) {
+        for (String p : patterns) {
+            if (matches(p, value)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    boolean matches(String pattern, String value) {
+        return patterns.computeIfAbsent(pattern, k -> Pattern.compile(k, Pattern.CASE_INSENSITIVE))
+                .matcher(value)
+                .matches();
+    }
+
+    boolean matches(Map<String, Object> conditions, Map<String, Object> data) {
+        if (conditions == null || conditions.isEmpty()) {
+            return true;
+        }
+
+        return compareNodes(data, conditions);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean compareNodes(Object data, Object conditions) {
+        if (data == null && conditions == null) {
+            return true;
+        } else if (data == null || conditions == null) {
+            return false;
+        }
+
+        if (conditions instanceof Map && data instanceof Map) {
+            return compareObjectNodes((Map<String, Object>) data, (Map<String, Object>) conditions);
+        } else if (conditions instanceof String && data instanceof UUID) {
+            return matches((String)conditions, data.toString());
+        } else if (conditions instanceof String && data instanceof String) {
+            return matches((String)conditions, (String)data);
+        } else if (conditions instanceof Collection && data instanceof Collection) {
+            return compareArrayNodes((Collection) data, (Collection) conditions);
+        } else if (conditions instanceof Collection) {
+            return matchAny(data, (Collection)conditions);
+        } else {
+            return data.equals(conditions);
+        }
+    }
+
+    private boolean compareObjectNodes(Map<String, Object> data, Map<String, Object> conditions) {
+        for (Map.Entry<String, Object> e : conditions.entrySet()) {
+            Object dataItem = data.get(e.getKey());
+            if (!compareNodes(dataItem, e.getValue())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean compareArrayNodes(Collection<Object> dataElements, Collection<Object> conditionElements) {
+        if (conditionElements.size() > dataElements.size()) {
+            return false;
+        }
+
+        for (Object c : conditionElements) {
+            boolean matched = matchAny(c, dataElements);
+            if (!matched) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean matchAny(Object condition, Collection<Object> nodes) {
+        for (Object n : nodes) {
+            boolean result = compareNodes(n, condition);
+            if (result) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -28,11 +28,10 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
-import static com.walmartlabs.concord.policyengine.Utils.matches;
-
 public class TaskPolicy {
 
     private final PolicyRules<TaskRule> rules;
+    private final PatternMatcher matcher = new PatternMatcher();
 
     public TaskPolicy(PolicyRules<TaskRule> rules) {
         this.rules = rules;
@@ -65,11 +64,11 @@ public class TaskPolicy {
     }
 
     private boolean matchRule(String taskName, String methodName, Object[] params, TaskRule r) {
-        if (!matches(r.getTaskName(), taskName)) {
+        if (!matcher.matches(r.getTaskName(), taskName)) {
             return false;
         }
 
-        if (r.getMethod() != null && !matches(r.getMethod(), methodName)) {
+        if (r.getMethod() != null && !matcher.matches(r.getMethod(), methodName)) {
             return false;
         }
 
@@ -103,7 +102,7 @@ public class TaskPolicy {
     }
 
     @SuppressWarnings("unchecked")
-    private static boolean paramMatches(String[] names, int nameIndex, List<Object> values, Object param, boolean isProtected) {
+    private boolean paramMatches(String[] names, int nameIndex, List<Object> values, Object param, boolean isProtected) {
         if (param == null) {
             return values.contains(null);
         }
@@ -120,7 +119,7 @@ public class TaskPolicy {
             Object v = isProtected ? ctx.getProtectedVariable(name) : ctx.getVariable(name);
             return paramMatches(names, nameIndex, values, v, isProtected);
         } else if (param instanceof String) {
-            return Utils.matchAny(values.stream().map(Object::toString).collect(Collectors.toList()), param.toString());
+            return matcher.matchAny(values.stream().map(Object::toString).collect(Collectors.toList()), param.toString());
         } else {
             for (Object v : values) {
                 if (v != null && v.equals(param)) {
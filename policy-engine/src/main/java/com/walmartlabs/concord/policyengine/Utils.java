@@ -26,7 +26,6 @@ import org.apache.commons.lang3.builder.ToStringStyle;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,86 +35,20 @@ public final class Utils {
 
     private static final Pattern FILE_SIZE_PATTERN = Pattern.compile("([\\d.]+)(.*)");
 
+    /**
+     * Compiles the patterns on each call. The policies use their own
+     * {@link PatternMatcher} instances to reuse the compiled patterns.
+     */
     public static boolean matchAny(List<String> patterns, String value) {
-        for (String p : patterns) {
-            if (matches(p, value)) {
-                return true;
-            }
-        }
-
-        return false;
+        return new PatternMatcher().matchAny(patterns, value);
     }
 
     public static boolean matches(String pattern, String value) {
-        return Pattern.compile(pattern, Pattern.CASE_INSENSITIVE).matcher(value).matches();
+        return new PatternMatcher().matches(pattern, value);
     }
 
     public static boolean matches(Map<String, Object> conditions, Map<String, Object> data) {
-        if (conditions == null || conditions.isEmpty()) {
-            return true;
-        }
-
-        return compareNodes(data, conditions);
-    }
-
-    @SuppressWarnings("unchecked")
-    private static boolean compareNodes(Object data, Object conditions) {
-        if (data == null && conditions == null) {
-            return true;
-        } else if (data == null || conditions == null) {
-            return false;
-        }
-
-        if (conditions instanceof Map && data instanceof Map) {
-            return compareObjectNodes((Map<String, Object>) data, (Map<String, Object>) conditions);
-        } else if (conditions instanceof String && data instanceof UUID) {
-            return matches((String)conditions, data.toString());
-        } else if (conditions instanceof String && data instanceof String) {
-            return matches((String)conditions, (String)data);
-        } else if (conditions instanceof Collection && data instanceof Collection) {
-            return compareArrayNodes((Collection) data, (Collection) conditions);
-        } else if (conditions instanceof Collection) {
-            return matchAny(data, (Collection)conditions);
-        } else {
-            return data.equals(conditions);
-        }
-    }
-
-    private static boolean compareObjectNodes(Map<String, Object> data, Map<String, Object> conditions) {
-        for (Map.Entry<String, Object> e : conditions.entrySet()) {
-            Object dataItem = data.get(e.getKey());
-            if (!compareNodes(dataItem, e.getValue())) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
-    private static boolean compareArrayNodes(Collection<Object> dataElements, Collection<Object> conditionElements) {
-        if (conditionElements.size() > dataElements.size()) {
-            return false;
-        }
-
-        for (Object c : conditionElements) {
-            boolean matched = matchAny(c, dataElements);
-            if (!matched) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
-    private static boolean matchAny(Object condition, Collection<Object> nodes) {
-        for (Object n : nodes) {
-            boolean result = compareNodes(n, condition);
-            if (result) {
-                return true;
-            }
-        }
-
-        return false;
+        return new PatternMatcher().matches(conditions, data);
     }
 
     public static Long parseFileSize(String v) {
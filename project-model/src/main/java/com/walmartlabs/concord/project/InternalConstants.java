@@ -161,6 +161,13 @@ public final class InternalConstants extends Constants {
          */
         public static final String JVM_ARGS_KEY = "jvmArgs";
 
+        /**
+         * JVM system property. If {@code true}, the runner waits for the payload
+         * before loading the process' libraries. Allows pre-forking of JVMs for
+         * processes with their own {@code lib} directory.
+         */
+        public static final String DEFERRED_LIBRARIES_KEY = "concord.deferredLibraries";
+
         private Agent() {
         }
     }
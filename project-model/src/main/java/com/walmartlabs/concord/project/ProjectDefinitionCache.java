@@ -0,0 +1,202 @@
+package com.walmartlabs.concord.project;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import com.walmartlabs.concord.project.model.ProjectDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Cache of loaded project definitions, keyed by a hash of the project's
+ * definition files.
+ * <p>
+ * The definitions are stored in the serialized form and each lookup returns
+ * a new copy, so the callers are free to modify the returned objects.
+ * <p>
+ * The cache is in-memory only: the serialized form is never read from
+ * a source other than the cache itself.
+ */
+public class ProjectDefinitionCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ProjectDefinitionCache.class);
+
+    private final long maxSize;
+
+    // guarded by "this", in access order
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize;
+
+    /**
+     * @param maxSize max total size of the cached definitions (in the serialized form), in bytes
+     */
+    public ProjectDefinitionCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    void put(String key, String hash, List<String> paths, ProjectDefinition pd) {
+        byte[] data;
+        try {
+            data = serialize(pd);
+        } catch (IOException ex) {
+            log.warn("put ['{}'] -> the project definition can't be cached: {}", key, ex.getMessage());
+            return;
+        }
+
+        if (data.length > maxSize) {
+            return;
+        }
+
+        register(key, new Entry(hash, new ArrayList<>(paths), data));
+    }
+
+    private synchronized void register(String key, Entry e) {
+        Entry old = entries.put(key, e);
+        if (old != null) {
+            totalSize -= old.data.length;
+        }
+        totalSize += e.data.length;
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (totalSize > maxSize && it.hasNext()) {
+            totalSize -= it.next().data.length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Calculates the hash of the project file and the YAML files in the
+     * specified directories.
+     */
+    static String hash(Path baseDir, Path projectFile, List<String> paths) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        if (projectFile != null) {
+            update(md, baseDir, projectFile);
+        }
+
+        for (String n : paths) {
+            md.update(n.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+
+            Path p = baseDir.resolve(n);
+            if (!Files.exists(p)) {
+                continue;
+            }
+
+            List<Path> files = new ArrayList<>();
+            Files.walkFileTree(p, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (isYaml(file)) {
+                        files.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+
+            Collections.sort(files);
+
+            for (Path f : files) {
+                update(md, baseDir, f);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static void update(MessageDigest md, Path baseDir, Path file) throws IOException {
+        md.update(baseDir.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+
+        byte[] ab = Files.readAllBytes(file);
+        md.update(String.valueOf(ab.length).getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+        md.update(ab);
+    }
+
+    private static boolean isYaml(Path p) {
+        String n = p.getFileName().toString().toLowerCase();
+        return n.endsWith(".yml") || n.endsWith(".yaml");
+    }
+
+    private static byte[] serialize(ProjectDefinition pd) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+            out.writeObject(pd);
+        }
+        return baos.toByteArray();
+    }
+
+    static final class Entry {
+
+        private final String hash;
+        private final List<String> paths;
+        private final byte[] data;
+
+        private Entry(String hash, List<String> paths, byte[] data) {
+            this.hash = hash;
+            this.paths = paths;
+            this.data = data;
+        }
+
+        String getHash() {
+            return hash;
+        }
+
+        List<String> getPaths() {
+            return paths;
+        }
+
+        /**
+         * @return a new copy of the cached definition or {@code null} if it can't be deserialized
+         */
+        ProjectDefinition getDefinition() {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+                return (ProjectDefinition) in.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                log.warn("getDefinition -> error while deserializing the project definition (will be ignored): {}", e.getMessage());
+                return null;
+            }
+        }
+    }
+}
@@ -46,54 +46,94 @@ public class ProjectLoader {
 
     private final YamlParser parser = new YamlParser();
 
-    public ProjectDefinition loadProject(Path baseDir) throws IOException {
-        Resources r = getResources(baseDir);
-        if (r != null) {
-            return loadProject(baseDir, r);
-        }
+    private final ProjectDefinitionCache cache;
 
-        return loadProject(baseDir,
-                Collections.singletonList(PROJECT_FILES_DIR_NAME),
-                Collections.singletonList(PROFILES_DIR_NAME),
-                Arrays.asList(DEFINITIONS_DIR_NAMES));
+    public ProjectLoader() {
+        this(null);
     }
 
-    private ProjectDefinition loadProject(Path baseDir, Resources resources) throws IOException {
-        return loadProject(baseDir,
-                resources.getProjectFilePaths(),
-                resources.getProfilesPaths(),
-                resources.getDefinitionPaths());
+    /**
+     * @param cache cache of the loaded definitions, can be shared between
+     *              multiple instances of {@link ProjectLoader}
+     */
+    public ProjectLoader(ProjectDefinitionCache cache) {
+        this.cache = cache;
     }
 
-    private ProjectDefinition loadProject(Path baseDir,
-                                          List<String> projectPaths,
-                                          List<String> profilesPaths,
-                                          List<String> definitionPaths) throws IOException {
+    public ProjectDefinition loadProject(Path baseDir) throws IOException {
+        baseDir = baseDir.normalize().toAbsolutePath();
+
+        Path projectFile = null;
+        for (String n : PROJECT_FILE_NAMES) {
+            Path p = assertLocal(baseDir, baseDir.resolve(n));
+            if (Files.exists(p)) {
+                projectFile = p;
+                break;
+            }
+        }
 
+        if (cache == null) {
+            return loadProject(baseDir, projectFile, new ArrayList<>());
+        }
+
+        // the root project file determines where the rest of the definitions are
+        String key = ProjectDefinitionCache.hash(baseDir, projectFile, Collections.emptyList());
+
+        ProjectDefinitionCache.Entry e = cache.get(key);
+        if (e != null && e.getHash().equals(ProjectDefinitionCache.hash(baseDir, projectFile, e.getPaths()))) {
+            ProjectDefinition pd = e.getDefinition();
+            if (pd != null) {
+                return pd;
+            }
+        }
+
+        List<String> paths = new ArrayList<>();
+        ProjectDefinition pd = loadProject(baseDir, projectFile, paths);
+        cache.put(key, ProjectDefinitionCache.hash(baseDir, projectFile, paths), paths, pd);
+        return pd;
+    }
+
+    /**
+     * @param paths receives the list of directories used to load the definition
+     */
+    private ProjectDefinition loadProject(Path baseDir, Path projectFile, List<String> paths) throws IOException {
         ProjectDefinitionBuilder b = new ProjectDefinitionBuilder(parser);
 
-        baseDir = baseDir.normalize().toAbsolutePath();
+        // the root project file is parsed only once, its resources section is required to load the rest
+        ProjectDefinition root = null;
+        if (projectFile != null) {
+            root = b.parseProjectFile(baseDir, projectFile);
+        }
+
+        Resources r = root != null ? root.getResources() : null;
+
+        List<String> projectPaths = Collections.singletonList(PROJECT_FILES_DIR_NAME);
+        List<String> profilesPaths = Collections.singletonList(PROFILES_DIR_NAME);
+        List<String> definitionPaths = Arrays.asList(DEFINITIONS_DIR_NAMES);
+        if (r != null) {
+            projectPaths = r.getProjectFilePaths();
+            profilesPaths = r.getProfilesPaths();
+            definitionPaths = r.getDefinitionPaths();
+        }
 
         if (projectPaths != null) {
             for (String n : projectPaths) {
                 Path p = assertLocal(baseDir, baseDir.resolve(n));
+                paths.add(n);
                 if (Files.exists(p)) {
                     b.addProjects(p);
                 }
             }
         }
 
-        for (String n : PROJECT_FILE_NAMES) {
-            Path p = assertLocal(baseDir, baseDir.resolve(n));
-            if (Files.exists(p)) {
-                b.addProjectFile(baseDir, p);
-                break;
-            }
+        if (root != null) {
+            b.addProjectDefinition(root);
         }
 
         if (definitionPaths != null) {
             for (String n : definitionPaths) {
                 Path p = assertLocal(baseDir, baseDir.resolve(n));
+                paths.add(n);
                 if (Files.exists(p)) {
                     b.addDefinitions(p);
                 }
@@ -103,6 +143,7 @@ public class ProjectLoader {
         if (profilesPaths != null) {
             for (String n : profilesPaths) {
                 Path p = assertLocal(baseDir, baseDir.resolve(n));
+                paths.add(n);
                 if (Files.exists(p)) {
                     b.addProfiles(p);
                 }
@@ -112,22 +153,6 @@ public class ProjectLoader {
         return b.build();
     }
 
-    private Resources getResources(Path baseDir) throws IOException {
-        ProjectDefinitionBuilder b = new ProjectDefinitionBuilder(parser);
-
-        for (String n : PROJECT_FILE_NAMES) {
-            Path p = baseDir.resolve(n);
-            if (Files.exists(p)) {
-                b.addProjectFile(baseDir, p);
-                break;
-            }
-        }
-
-        ProjectDefinition pd = b.build();
-
-        return pd.getResources();
-    }
-
     public ProjectDefinition loadProject(InputStream in) throws IOException {
         ProjectDefinitionBuilder b = new ProjectDefinitionBuilder(parser);
         b.loadDefinitions(in);
@@ -157,6 +182,10 @@ public class ProjectLoader {
         }
 
         public ProjectDefinitionBuilder addProjectFile(Path baseDir, Path file) throws IOException {
+            return addProjectDefinition(parseProjectFile(baseDir, file));
+        }
+
+        public ProjectDefinition parseProjectFile(Path baseDir, Path file) throws IOException {
             YamlProject yml = parser.parseProject(baseDir, file);
             if (yml == null) {
                 throw new IOException("Empty project definition: " + file);
@@ -164,8 +193,10 @@ public class ProjectLoader {
 
             Validator.validate(validatorContext, yml);
 
-            ProjectDefinition pd = YamlProjectConverter.convert(yml);
+            return YamlProjectConverter.convert(yml);
+        }
 
+        public ProjectDefinitionBuilder addProjectDefinition(ProjectDefinition pd) {
             if (projectDefinitions == null) {
                 projectDefinitions = new ArrayList<>();
             }
@@ -23,16 +23,23 @@ package com.walmartlabs.concord.project;
 import com.walmartlabs.concord.project.model.ProjectDefinition;
 import com.walmartlabs.concord.project.yaml.YamlConverterException;
 import com.walmartlabs.concord.project.yaml.YamlParserException;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.IOException;
 import java.net.URI;
-import java.nio.file.Paths;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Map;
 
 import static org.junit.Assert.*;
 
 public class ProjectLoaderTest {
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     @Test
     public void testSimple() throws Exception {
         ProjectLoader loader = new ProjectLoader();
@@ -129,4 +136,51 @@ public class ProjectLoaderTest {
         assertEquals("ttt", ((Map<String, Object>) cfg.get("arguments")).get("abc"));
         assertEquals("234", ((Map<String, Object>) ((Map<String, Object>) cfg.get("arguments")).get("nested")).get("value"));
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCache() throws Exception {
+        Path baseDir = tempFolder.newFolder("project").toPath();
+        copy(Paths.get(ClassLoader.getSystemResource("multiProjectFile").toURI()), baseDir);
+
+        ProjectDefinitionCache cache = new ProjectDefinitionCache(1024 * 1024);
+        ProjectLoader loader = new ProjectLoader(cache);
+
+        ProjectDefinition a = loader.loadProject(baseDir);
+        ProjectDefinition b = loader.loadProject(baseDir);
+
+        // each call returns a copy
+        assertNotSame(a, b);
+        assertEquals(a.getConfiguration(), b.getConfiguration());
+        assertEquals(a.getFlows().keySet(), b.getFlows().keySet());
+
+        b.getConfiguration().put("extra", "value");
+        assertFalse(loader.loadProject(baseDir).getConfiguration().containsKey("extra"));
+
+        // changes in the project files invalidate the cached definition
+        Files.write(baseDir.resolve("concord").resolve("1.yml"), "configuration:\n  arguments:\n    abc: \"zzz\"\n".getBytes());
+        Map<String, Object> args = (Map<String, Object>) loader.loadProject(baseDir).getConfiguration().get("arguments");
+        assertEquals("zzz", args.get("abc"));
+
+        // the cache can be shared between instances
+        ProjectLoader anotherLoader = new ProjectLoader(cache);
+        args = (Map<String, Object>) anotherLoader.loadProject(baseDir).getConfiguration().get("arguments");
+        assertEquals("zzz", args.get("abc"));
+    }
+
+    private static void copy(Path src, Path dst) throws IOException {
+        Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(dst.resolve(src.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, dst.resolve(src.relativize(file).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
 }
@@ -40,6 +40,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
 import static java.nio.file.attribute.PosixFilePermission.OWNER_EXECUTE;
 import static java.nio.file.attribute.PosixFilePermission.OWNER_READ;
@@ -53,6 +54,8 @@ public class GitClient {
 
     private static final int SUCCESS_EXIT_CODE = 0;
 
+    private static final Pattern FULL_COMMIT_ID = Pattern.compile("[0-9a-fA-F]{40}");
+
     private final GitClientConfiguration cfg;
 
     private final List<String> sensitiveData;
@@ -80,23 +83,18 @@ public class GitClient {
     }
 
     public void fetch(String uri, String branch, String commitId, Secret secret, Path dest) {
-        // can use shallow clone only with branch/tag
-        boolean shallow = commitId == null && cfg.shallowClone();
-
-        if (!hasGitRepo(dest)) {
-            cloneCommand(uri, secret, shallow, dest);
+        boolean existing = hasGitRepo(dest);
+        if (!existing) {
+            cloneCommand(uri, dest);
         }
 
         launchCommand(dest, "config", "remote.origin.url", uri);
 
-        List<RefSpec> refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/origin/*"));
-        fetchCommand(uri, refspecs, secret, shallow, dest);
-
         ObjectId rev;
         if (commitId != null) {
-            rev = getCommitRevision(commitId, dest);
+            rev = fetchCommit(uri, commitId, secret, existing, dest);
         } else {
-            rev = getBranchRevision(branch, dest);
+            rev = fetchBranch(uri, branch, secret, dest);
         }
 
         checkoutCommand(rev.name(), dest);
@@ -110,7 +108,61 @@ public class GitClient {
         }
     }
 
-    private void fetchCommand(String url, List<RefSpec> refspecs, Secret secret, boolean shallow, Path dest) {
+    private ObjectId fetchCommit(String uri, String commitId, Secret secret, boolean existing, Path dest) {
+        // commits are immutable, no need to fetch anything if we already have it
+        ObjectId rev = existing ? getHeadRevision(commitId, dest) : null;
+        if (rev != null) {
+            return rev;
+        }
+
+        // fetch only the commit itself. Requires a full commit ID and a server
+        // that allows fetching of reachable commits (most of them do)
+        if (FULL_COMMIT_ID.matcher(commitId).matches()) {
+            try {
+                fetchCommand(uri, Collections.singletonList(new RefSpec(commitId)), secret, cfg.shallowClone(), false, dest);
+
+                rev = getHeadRevision(commitId, dest);
+                if (rev != null) {
+                    return rev;
+                }
+            } catch (RepositoryException | IllegalArgumentException e) {
+                log.warn("fetchCommit ['{}', '{}'] -> can't fetch the commit directly, fetching all branches: {}",
+                        hideSensitiveData(uri), commitId, e.getMessage());
+            }
+        }
+
+        fetchAll(uri, secret, dest);
+        return getCommitRevision(commitId, dest);
+    }
+
+    private ObjectId fetchBranch(String uri, String branch, Secret secret, Path dest) {
+        // fetch only the requested branch or tag if it is specified by its short name
+        if (branch != null && !branch.startsWith("refs/") && !branch.startsWith("origin/") && !branch.startsWith("remotes/")) {
+            String ref = "refs/remotes/origin/" + branch;
+            try {
+                fetchCommand(uri, Collections.singletonList(new RefSpec("+" + branch + ":" + ref)), secret, cfg.shallowClone(), false, dest);
+                return revParse(ref, dest);
+            } catch (RepositoryException | IllegalArgumentException e) {
+                log.warn("fetchBranch ['{}', '{}'] -> can't fetch the branch directly, fetching all branches: {}",
+                        hideSensitiveData(uri), branch, e.getMessage());
+            }
+        }
+
+        fetchAll(uri, secret, dest);
+        return getBranchRevision(branch, dest);
+    }
+
+    private void fetchAll(String uri, Secret secret, Path dest) {
+        // a shallow clone may not contain the required commit in its history
+        if (Files.exists(dest.resolve(".git").resolve("shallow"))) {
+            launchCommandWithCredentials(dest, Arrays.asList("fetch", "--unshallow", processUrl(uri, secret)), secret);
+        }
+
+        List<RefSpec> refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/origin/*"));
+        fetchCommand(uri, refspecs, secret, false, true, dest);
+    }
+
+    private void fetchCommand(String url, List<RefSpec> refspecs, Secret secret, boolean shallow, boolean tags, Path dest) {
         log.info("Fetching upstream changes from '{}'", hideSensitiveData(url));
 
         List<String> args = new ArrayList<>();
@@ -119,7 +171,7 @@ public class GitClient {
             args.add("--depth=1");
         }
 
-        args.add("--tags");
+        args.add(tags ? "--tags" : "--no-tags");
 
         args.add(processUrl(url, secret));
 
@@ -292,26 +344,19 @@ public class GitClient {
         return Files.exists(dest.resolve(".gitmodules"));
     }
 
-    private void cloneCommand(String url, Secret secret, boolean shallow, Path dest) {
-        log.info("Cloning repository '{}' into '{}'", hideSensitiveData(url), dest.toString());
+    private void cloneCommand(String url, Path dest) {
+        log.info("Initializing repository '{}' in '{}'", hideSensitiveData(url), dest.toString());
 
         try {
             if (Files.notExists(dest)) {
                 Files.createDirectories(dest);
             }
 
-            // init
+            // init, the refs are fetched on demand
             launchCommand(dest, "init");
 
-            // fetch
-            List<RefSpec> refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/origin/*"));
-            fetchCommand(url, refspecs, secret, shallow, dest);
-
             launchCommand(dest, "config", "remote.origin.url", url);
-
-            for (RefSpec refSpec : refspecs) {
-                launchCommand(dest, "config", "--add", "remote.origin.fetch", refSpec.toString());
-            }
+            launchCommand(dest, "config", "--add", "remote.origin.fetch", "+refs/heads/*:refs/remotes/origin/*");
         } catch (IOException e) {
             log.error("cloneCommand ['{}'] -> error", dest, e);
             throw new RepositoryException("clone repository error: " + e.getMessage());
@@ -0,0 +1,393 @@
+package com.walmartlabs.concord.repository;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import com.walmartlabs.concord.common.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of exported repositories, keyed by repository and commit ID.
+ * <p>
+ * Concurrent exports of the same repository and ref share a single fetch.
+ * The fetched commit is exported (without the git metadata) into the cache
+ * once and then copied (or hard linked) into the destination directories
+ * without holding the repository lock. Exports of a specific commit ID which
+ * is already in the cache don't fetch the repository at all.
+ * <p>
+ * The total size of the cached exports is limited, the least recently used
+ * exports are removed first. The cache is indexed in memory only.
+ */
+public class RepositoryExportCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RepositoryExportCache.class);
+
+    /**
+     * Name prefix of the export directories. Only the directories with
+     * this prefix are removed on startup.
+     */
+    private static final String EXPORT_DIR_PREFIX = "concord-export-";
+
+    private final Path baseDir;
+    private final long maxSize;
+    private final boolean hardLinks;
+
+    private final ConcurrentMap<String, CompletableFuture<Entry>> fetches = new ConcurrentHashMap<>();
+
+    // guarded by "this", in access order
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize;
+
+    /**
+     * @param baseDir   directory to store the exports. The exports left by
+     *                  the previous run are removed, other files are kept
+     * @param maxSize   max total size of the exports, in bytes
+     * @param hardLinks if {@code true} the files are hard linked into the destination
+     *                  directories (when supported by the filesystem). The destination
+     *                  files must not be modified in place
+     */
+    public RepositoryExportCache(Path baseDir, long maxSize, boolean hardLinks) throws IOException {
+        this.baseDir = baseDir;
+        this.maxSize = maxSize;
+        this.hardLinks = hardLinks;
+
+        // the index is not persisted, remove the exports left by the previous run
+        if (Files.exists(baseDir)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(baseDir, EXPORT_DIR_PREFIX + "*")) {
+                for (Path p : stream) {
+                    if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+                        IOUtils.deleteRecursively(p);
+                    }
+                }
+            }
+        } else {
+            Files.createDirectories(baseDir);
+        }
+    }
+
+    /**
+     * Exports the repository into the specified directory.
+     *
+     * @param key      identifies the repository and the export's parameters (URL,
+     *                 path, credentials, etc). Exports are shared only between
+     *                 the callers with the same key
+     * @param branch   the requested branch or tag
+     * @param commitId the requested commit ID
+     * @param dst      the destination directory
+     * @param fetcher  fetches the repository
+     */
+    public Result export(String key, String branch, String commitId, Path dst, RepositoryFetcher fetcher) throws IOException {
+        if (commitId != null) {
+            Result r = exportCached(entryKey(key, commitId), branch, dst);
+            if (r != null) {
+                return r;
+            }
+        }
+
+        String fetchKey = commitId != null ? entryKey(key, commitId) : key + "#branch:" + branch;
+
+        CompletableFuture<Entry> f = new CompletableFuture<>();
+        CompletableFuture<Entry> inProgress = fetches.putIfAbsent(fetchKey, f);
+        if (inProgress == null) {
+            try {
+                f.complete(fetch(key, fetcher));
+            } catch (Exception e) {
+                f.completeExceptionally(e);
+            } finally {
+                fetches.remove(fetchKey, f);
+            }
+        } else {
+            log.info("export ['{}'] -> waiting for the fetch in progress...", key);
+            f = inProgress;
+        }
+
+        Entry e;
+        try {
+            e = f.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching the repository: " + key, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new RepositoryException("Error while fetching the repository: " + key, cause);
+        }
+
+        if (e != null) {
+            Result r = exportCached(e.key, branch, dst);
+            if (r != null) {
+                return r;
+            }
+        }
+
+        // can't be cached (e.g. no commit ID) or was removed from the cache in the meantime
+        return exportDirect(dst, fetcher);
+    }
+
+    private Entry fetch(String key, RepositoryFetcher fetcher) throws Exception {
+        Entry[] result = new Entry[1];
+
+        fetcher.fetch(repository -> {
+            RepositoryInfo info = repository.info();
+            if (info == null || info.getCommitId() == null) {
+                return;
+            }
+
+            String entryKey = entryKey(key, info.getCommitId());
+            synchronized (this) {
+                Entry e = entries.get(entryKey);
+                if (e != null) {
+                    result[0] = e;
+                    return;
+                }
+            }
+
+            Path dir = Files.createTempDirectory(baseDir, EXPORT_DIR_PREFIX);
+            try {
+                repository.export(dir);
+            } catch (IOException e) {
+                IOUtils.deleteRecursively(dir);
+                throw e;
+            }
+
+            Entry e = new Entry(entryKey, dir, info, repository.branch(), size(dir));
+            if (e.size > maxSize) {
+                log.warn("fetch ['{}', '{}'] -> the export is too big to be cached ({} bytes)", key, info.getCommitId(), e.size);
+                IOUtils.deleteRecursively(dir);
+                return;
+            }
+
+            register(e);
+
+            log.info("fetch ['{}', '{}'] -> cached {} ({} bytes)", key, info.getCommitId(), dir, e.size);
+            result[0] = e;
+        });
+
+        return result[0];
+    }
+
+    private Result exportCached(String entryKey, String branch, Path dst) throws IOException {
+        Entry e = acquire(entryKey);
+        if (e == null) {
+            return null;
+        }
+
+        try {
+            LastModifiedSnapshot snapshot = new LastModifiedSnapshot();
+            copy(e.dir, dst, snapshot);
+
+            return new Result(snapshot, e.info, branch != null ? branch : e.branch);
+        } finally {
+            release(e);
+        }
+    }
+
+    private static Result exportDirect(Path dst, RepositoryFetcher fetcher) throws IOException {
+        Result[] result = new Result[1];
+
+        try {
+            fetcher.fetch(repository -> {
+                Snapshot snapshot = repository.export(dst);
+                result[0] = new Result(snapshot, repository.info(), repository.branch());
+            });
+        } catch (RuntimeException | IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RepositoryException("Error while exporting the repository", e);
+        }
+
+        return result[0];
+    }
+
+    private void copy(Path src, Path dst, LastModifiedSnapshot snapshot) throws IOException {
+        if (!hardLinks) {
+            IOUtils.copy(src, dst, null, snapshot, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+
+        Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(dst.resolve(src.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path target = dst.resolve(src.relativize(file));
+                Files.deleteIfExists(target);
+
+                if (attrs.isSymbolicLink()) {
+                    // the cache contains only the links validated during the export
+                    Files.createSymbolicLink(target, Files.readSymbolicLink(file));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                try {
+                    Files.createLink(target, file);
+                } catch (UnsupportedOperationException | IOException e) {
+                    Files.copy(file, target);
+                }
+
+                snapshot.visit(file, target);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private synchronized Entry acquire(String entryKey) {
+        Entry e = entries.get(entryKey);
+        if (e != null) {
+            e.refs++;
+        }
+        return e;
+    }
+
+    private void release(Entry e) {
+        synchronized (this) {
+            e.refs--;
+        }
+        evict();
+    }
+
+    private void register(Entry e) {
+        synchronized (this) {
+            entries.put(e.key, e);
+            totalSize += e.size;
+        }
+        evict();
+    }
+
+    private void evict() {
+        List<Entry> removed = new ArrayList<>();
+
+        synchronized (this) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (totalSize > maxSize && it.hasNext()) {
+                Entry e = it.next();
+                if (e.refs > 0) {
+                    continue;
+                }
+
+                it.remove();
+                totalSize -= e.size;
+                removed.add(e);
+            }
+        }
+
+        for (Entry e : removed) {
+            try {
+                IOUtils.deleteRecursively(e.dir);
+                log.info("evict -> removed {} ({} bytes)", e.dir, e.size);
+            } catch (IOException ex) {
+                log.warn("evict -> error while removing {}: {}", e.dir, ex.getMessage());
+            }
+        }
+    }
+
+    private static String entryKey(String key, String commitId) {
+        return key + "#" + commitId;
+    }
+
+    private static long size(Path dir) throws IOException {
+        AtomicLong result = new AtomicLong();
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                result.addAndGet(attrs.size());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return result.get();
+    }
+
+    /**
+     * Fetches the repository and passes it to the callback while holding
+     * the repository's lock.
+     */
+    @FunctionalInterface
+    public interface RepositoryFetcher {
+
+        void fetch(RepositoryCallback callback) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface RepositoryCallback {
+
+        void accept(Repository repository) throws IOException;
+    }
+
+    public static final class Result {
+
+        private final Snapshot snapshot;
+        private final RepositoryInfo info;
+        private final String branch;
+
+        private Result(Snapshot snapshot, RepositoryInfo info, String branch) {
+            this.snapshot = snapshot;
+            this.info = info;
+            this.branch = branch;
+        }
+
+        public Snapshot getSnapshot() {
+            return snapshot;
+        }
+
+        public RepositoryInfo getInfo() {
+            return info;
+        }
+
+        public String getBranch() {
+            return branch;
+        }
+    }
+
+    private static final class Entry {
+
+        private final String key;
+        private final Path dir;
+        private final RepositoryInfo info;
+        private final String branch;
+        private final long size;
+
+        private int refs;
+
+        private Entry(String key, Path dir, RepositoryInfo info, String branch, long size) {
+            this.key = key;
+            this.dir = dir;
+            this.info = info;
+            this.branch = branch;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.walmartlabs.concord.repository;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import com.walmartlabs.concord.common.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class RepositoryExportCacheTest {
+
+    private Path baseDir;
+    private String repoUrl;
+    private Path workDir;
+
+    private RepositoryProviders providers;
+    private Path cacheDir;
+    private RepositoryExportCache exportCache;
+
+    @Before
+    public void setUp() throws Exception {
+        baseDir = Files.createTempDirectory("test");
+
+        // a local bare repository with two commits on master, the first one is tagged
+        Path origin = baseDir.resolve("origin.git");
+        git(baseDir, "init", "--bare", origin.toString());
+        repoUrl = origin.toUri().toString();
+
+        workDir = baseDir.resolve("work");
+        git(baseDir, "init", workDir.toString());
+        commit("1");
+        git(workDir, "tag", "v1");
+        commit("2");
+        git(workDir, "push", repoUrl, "HEAD:refs/heads/master", "--tags");
+
+        GitClientConfiguration cfg = GitClientConfiguration.builder()
+                .shallowClone(true)
+                .build();
+
+        providers = new RepositoryProviders(Collections.singletonList(new GitCliRepositoryProvider(cfg)), 60000);
+        cacheDir = baseDir.resolve("cache");
+        exportCache = new RepositoryExportCache(baseDir.resolve("exports"), 1024 * 1024, false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        IOUtils.deleteRecursively(baseDir);
+    }
+
+    @Test
+    public void testFetchRefs() throws Exception {
+        String first = git(workDir, "rev-parse", "v1");
+        String second = git(workDir, "rev-parse", "HEAD");
+
+        // only the requested commit is fetched, shallowly
+        RepositoryExportCache.Result r = export(null, first, new AtomicInteger());
+        assertEquals(first, r.getInfo().getCommitId());
+
+        Path repoDir;
+        try (Stream<Path> s = Files.list(cacheDir)) {
+            repoDir = s.findFirst().orElseThrow(IllegalStateException::new);
+        }
+        assertTrue(Files.exists(repoDir.resolve(".git").resolve("shallow")));
+        assertEquals("", git(repoDir, "tag", "-l"));
+
+        r = export("master", null, new AtomicInteger());
+        assertEquals(second, r.getInfo().getCommitId());
+
+        r = export("v1", null, new AtomicInteger());
+        assertEquals(first, r.getInfo().getCommitId());
+    }
+
+    @Test
+    public void testSharedFetch() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+
+        int n = 10;
+        CyclicBarrier barrier = new CyclicBarrier(n);
+        ExecutorService executor = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<RepositoryExportCache.Result>> results = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                results.add(executor.submit(() -> {
+                    barrier.await();
+                    return export("master", null, fetches);
+                }));
+            }
+
+            for (Future<RepositoryExportCache.Result> f : results) {
+                assertNotNull(f.get(1, TimeUnit.MINUTES).getInfo());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, fetches.get());
+
+        // known commits are exported without fetching
+        String commitId = git(workDir, "rev-parse", "HEAD");
+        export(null, commitId, fetches);
+        assertEquals(1, fetches.get());
+
+        // new commits are fetched
+        commit("3");
+        git(workDir, "push", repoUrl, "HEAD:refs/heads/master");
+
+        RepositoryExportCache.Result r = export("master", null, fetches);
+        assertEquals(2, fetches.get());
+        assertEquals(git(workDir, "rev-parse", "HEAD"), r.getInfo().getCommitId());
+    }
+
+    @Test
+    public void testHardLinks() throws Exception {
+        RepositoryExportCache cache = new RepositoryExportCache(baseDir.resolve("links"), 1024 * 1024, true);
+        AtomicInteger fetches = new AtomicInteger();
+
+        Path a = export(cache, "master", null, fetches);
+        Path b = export(cache, null, git(workDir, "rev-parse", "HEAD"), fetches);
+
+        assertTrue(Files.isSameFile(a.resolve("file.txt"), b.resolve("file.txt")));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        // enough for a single export
+        Path exportDir = baseDir.resolve("small");
+        RepositoryExportCache cache = new RepositoryExportCache(exportDir, 1, false);
+        AtomicInteger fetches = new AtomicInteger();
+
+        String first = git(workDir, "rev-parse", "v1");
+        export(cache, null, first, fetches);
+        assertEquals(1, count(exportDir));
+
+        export(cache, "master", null, fetches);
+        assertEquals(1, count(exportDir));
+        assertEquals(2, fetches.get());
+
+        // the first commit was evicted, the repository must be fetched again
+        export(cache, null, first, fetches);
+        assertEquals(3, fetches.get());
+    }
+
+    @Test
+    public void testCleanup() throws Exception {
+        Path exportDir = baseDir.resolve("exports");
+        export("master", null, new AtomicInteger());
+
+        Path other = Files.createDirectory(exportDir.resolve("other"));
+        Files.write(other.resolve("file.txt"), "hello".getBytes());
+
+        // only the exports are removed on restart
+        new RepositoryExportCache(exportDir, 1024 * 1024, false);
+        try (Stream<Path> s = Files.list(exportDir)) {
+            assertEquals(Collections.singletonList(other), s.collect(Collectors.toList()));
+        }
+        assertTrue(Files.exists(other.resolve("file.txt")));
+    }
+
+    private RepositoryExportCache.Result export(String branch, String commitId, AtomicInteger fetches) throws Exception {
+        Path dst = Files.createTempDirectory(baseDir, "dst");
+        return export(exportCache, branch, commitId, dst, fetches);
+    }
+
+    private Path export(RepositoryExportCache cache, String branch, String commitId, AtomicInteger fetches) throws Exception {
+        Path dst = Files.createTempDirectory(baseDir, "dst");
+        export(cache, branch, commitId, dst, fetches);
+        return dst;
+    }
+
+    private RepositoryExportCache.Result export(RepositoryExportCache cache, String branch, String commitId, Path dst, AtomicInteger fetches) throws Exception {
+        RepositoryExportCache.Result r = cache.export(repoUrl, branch, commitId, dst, callback ->
+                providers.withLock(repoUrl, () -> {
+                    fetches.incrementAndGet();
+
+                    // give the concurrent exports a chance to join
+                    Thread.sleep(500);
+
+                    callback.accept(providers.fetch(repoUrl, branch, commitId, null, null, cacheDir));
+                    return null;
+                }));
+
+        String expected = git(workDir, "show", r.getInfo().getCommitId() + ":file.txt");
+        assertEquals(expected, new String(Files.readAllBytes(dst.resolve("file.txt"))).trim());
+        assertFalse(Files.exists(dst.resolve(".git")));
+
+        return r;
+    }
+
+    private static long count(Path dir) throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.count();
+        }
+    }
+
+    private void commit(String content) throws Exception {
+        Files.write(workDir.resolve("file.txt"), content.getBytes());
+        git(workDir, "add", "file.txt");
+        git(workDir, "-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-m", "commit " + content);
+    }
+
+    private static String git(Path workDir, String... args) throws Exception {
+        List<String> cmd = new ArrayList<>();
+        cmd.add("git");
+        Collections.addAll(cmd, args);
+
+        Process p = new ProcessBuilder(cmd)
+                .directory(workDir.toFile())
+                .redirectErrorStream(true)
+                .start();
+
+        String out = read(p.getInputStream());
+        if (p.waitFor() != 0) {
+            throw new IOException("git error: " + cmd + " -> " + out);
+        }
+        return out.trim();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray());
+    }
+}
@@ -0,0 +1,113 @@
+package com.walmartlabs.concord.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import com.google.inject.Module;
+import org.eclipse.sisu.space.BeanScanning;
+import org.eclipse.sisu.space.SpaceModule;
+import org.eclipse.sisu.space.URLClassSpace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarFile;
+
+/**
+ * Creates the Sisu modules for the process' dependencies.
+ * <p>
+ * JARs with a Sisu index (e.g. created at build time by {@code sisu-maven-plugin}
+ * or by the Sisu annotation processor) are loaded using the index. The rest
+ * of the dependencies are scanned for {@code @Named} classes.
+ */
+public final class DependencySpaces {
+
+    private static final Logger log = LoggerFactory.getLogger(DependencySpaces.class);
+
+    public static final String INDEX_NAME = "META-INF/sisu/javax.inject.Named";
+
+    public static List<Module> create(ClassLoader loader, List<URL> deps) {
+        return create(loader, deps, BeanScanning.CACHE);
+    }
+
+    /**
+     * @param loader   the class loader of the dependencies
+     * @param deps     the dependencies
+     * @param scanning the scanning mode for dependencies without an index
+     */
+    public static List<Module> create(ClassLoader loader, List<URL> deps, BeanScanning scanning) {
+        List<URL> indexed = new ArrayList<>();
+        List<URL> scanned = new ArrayList<>();
+
+        for (URL u : deps) {
+            if (hasIndex(u)) {
+                indexed.add(u);
+            } else {
+                scanned.add(u);
+            }
+        }
+
+        log.debug("create -> indexed: {}, scanned: {}", indexed, scanned);
+
+        List<Module> result = new ArrayList<>();
+        if (!indexed.isEmpty()) {
+            result.add(new SpaceModule(new URLClassSpace(loader, indexed.toArray(new URL[0])), BeanScanning.INDEX));
+        }
+        if (!scanned.isEmpty()) {
+            result.add(new SpaceModule(new URLClassSpace(loader, scanned.toArray(new URL[0])), scanning));
+        }
+        return result;
+    }
+
+    public static boolean hasIndex(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return false;
+        }
+
+        Path p;
+        try {
+            p = Paths.get(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return false;
+        }
+
+        if (Files.isDirectory(p)) {
+            return Files.exists(p.resolve(INDEX_NAME));
+        }
+
+        try (JarFile jar = new JarFile(p.toFile())) {
+            return jar.getEntry(INDEX_NAME) != null;
+        } catch (IOException e) {
+            log.warn("hasIndex ['{}'] -> error while reading the file: {}", url, e.getMessage());
+            return false;
+        }
+    }
+
+    private DependencySpaces() {
+    }
+}
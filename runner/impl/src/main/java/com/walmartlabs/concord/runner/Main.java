@@ -35,6 +35,7 @@ import com.walmartlabs.concord.policyengine.PolicyEngine;
 import com.walmartlabs.concord.project.InternalConstants;
 import com.walmartlabs.concord.project.ProjectLoader;
 import com.walmartlabs.concord.project.model.ProjectDefinition;
+import com.walmartlabs.concord.runner.engine.ElementEventSender;
 import com.walmartlabs.concord.runner.engine.EngineFactory;
 import com.walmartlabs.concord.runner.engine.ProcessErrorProcessor;
 import com.walmartlabs.concord.runner.model.RunnerConfiguration;
@@ -77,13 +78,15 @@ public class Main {
     private final EngineFactory engineFactory;
     private final ProcessHeartbeat heartbeat;
     private final ApiClientFactory apiClientFactory;
+    private final ElementEventSender eventSender;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Inject
-    public Main(EngineFactory engineFactory, ProcessHeartbeat heartbeat, ApiClientFactory apiClientFactory) {
+    public Main(EngineFactory engineFactory, ProcessHeartbeat heartbeat, ApiClientFactory apiClientFactory, ElementEventSender eventSender) {
         this.engineFactory = engineFactory;
         this.heartbeat = heartbeat;
         this.apiClientFactory = apiClientFactory;
+        this.eventSender = eventSender;
     }
 
     public void run(RunnerConfiguration runnerCfg, Path baseDir) throws Exception {
@@ -91,11 +94,7 @@ public class Main {
 
         long t1 = System.currentTimeMillis();
 
-        Path idPath = baseDir.resolve(InternalConstants.Files.INSTANCE_ID_FILE_NAME);
-        while (!Files.exists(idPath)) {
-            // TODO replace with WatchService
-            Thread.sleep(100);
-        }
+        Path idPath = waitForPayload(baseDir);
 
         long t2 = System.currentTimeMillis();
         if (runnerCfg.debug()) {
@@ -129,7 +128,12 @@ public class Main {
             log.info("Ready to start in {}ms", (t3 - t2));
         }
 
-        executeProcess(instanceId.toString(), checkpointManager, baseDir);
+        try {
+            executeProcess(instanceId.toString(), checkpointManager, baseDir);
+        } finally {
+            // send the remaining events before the process finishes, suspends or fails
+            eventSender.stop();
+        }
     }
 
     private void executeProcess(String instanceId, CheckpointManager checkpointManager, Path baseDir) throws ExecutionException {
@@ -426,12 +430,21 @@ public class Main {
             // TODO enable security manager
 
             // load dependencies
-            List<URL> deps = loadDependencyList(runnerCfg);
+            List<URL> deps = new ArrayList<>(loadDependencyList(runnerCfg));
+
+            if (Boolean.getBoolean(InternalConstants.Agent.DEFERRED_LIBRARIES_KEY)) {
+                // pre-forked JVM, the payload and its libraries are not there yet
+                waitForPayload(baseDir);
+            }
+
+            // payload's own libraries are stored in `./lib/` directory in the working directory
+            deps.addAll(loadLibraries(baseDir));
+
             URLClassLoader depsClassLoader = new URLClassLoader(deps.toArray(new URL[0]), Main.class.getClassLoader()); // NOSONAR
             Thread.currentThread().setContextClassLoader(depsClassLoader);
 
             // create the injector to wire up and initialize all dependencies
-            Injector injector = createInjector(runnerCfg, depsClassLoader);
+            Injector injector = createInjector(runnerCfg, depsClassLoader, deps);
 
             Main main = injector.getInstance(Main.class);
 
@@ -533,27 +546,41 @@ public class Main {
                     }
                 }).collect(Collectors.toList());
 
-        // payload's own libraries are stored in `./lib/` directory in the working directory
-        Path baseDir = Paths.get(System.getProperty("user.dir"));
+        return result;
+    }
+
+    private static List<URL> loadLibraries(Path baseDir) throws IOException {
         Path lib = baseDir.resolve(InternalConstants.Files.LIBRARIES_DIR_NAME);
-        if (Files.exists(lib)) {
-            try (Stream<Path> s = Files.list(lib)) {
-                s.forEach(f -> {
-                    if (f.toString().endsWith(".jar")) {
-                        try {
-                            result.add(f.toUri().toURL());
-                        } catch (MalformedURLException e) {
-                            throw new RuntimeException(e);
-                        }
+        if (!Files.exists(lib)) {
+            return Collections.emptyList();
+        }
+
+        List<URL> result = new ArrayList<>();
+        try (Stream<Path> s = Files.list(lib)) {
+            s.forEach(f -> {
+                if (f.toString().endsWith(".jar")) {
+                    try {
+                        result.add(f.toUri().toURL());
+                    } catch (MalformedURLException e) {
+                        throw new RuntimeException(e);
                     }
-                });
-            }
+                }
+            });
         }
 
         return result;
     }
 
-    private static Injector createInjector(RunnerConfiguration runnerCfg, ClassLoader depsClassLoader) {
+    private static Path waitForPayload(Path baseDir) throws InterruptedException {
+        Path idPath = baseDir.resolve(InternalConstants.Files.INSTANCE_ID_FILE_NAME);
+        while (!Files.exists(idPath)) {
+            // TODO replace with WatchService
+            Thread.sleep(100);
+        }
+        return idPath;
+    }
+
+    private static Injector createInjector(RunnerConfiguration runnerCfg, ClassLoader depsClassLoader, List<URL> deps) {
         ClassLoader cl = Main.class.getClassLoader();
 
         Module cfg = new AbstractModule() {
@@ -587,14 +614,16 @@ public class Main {
             }
         };
 
-        Module m = new WireModule(
-                cfg,
-                tasks,
-                taskCallModule,
-                new SpaceModule(new URLClassSpace(cl), BeanScanning.CACHE),
-                new SpaceModule(new URLClassSpace(depsClassLoader), BeanScanning.CACHE));
+        List<Module> modules = new ArrayList<>();
+        modules.add(cfg);
+        modules.add(tasks);
+        modules.add(taskCallModule);
+        // the runner's own JAR is assembled from multiple JARs and doesn't have a complete index
+        modules.add(new SpaceModule(new URLClassSpace(cl), BeanScanning.CACHE));
+        // dependencies are loaded using their indexes, if available
+        modules.addAll(DependencySpaces.create(depsClassLoader, deps));
 
-        return Guice.createInjector(m);
+        return Guice.createInjector(new WireModule(modules));
     }
 
     private static void saveLastError(Path baseDir, Throwable t) {
@@ -0,0 +1,368 @@
+package com.walmartlabs.concord.runner.engine;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.gson.Gson;
+import com.walmartlabs.concord.ApiException;
+import com.walmartlabs.concord.JSON;
+import com.walmartlabs.concord.client.ApiClientConfiguration;
+import com.walmartlabs.concord.client.ApiClientFactory;
+import com.walmartlabs.concord.client.ProcessEventRequest;
+import com.walmartlabs.concord.client.ProcessEventsApi;
+import com.walmartlabs.concord.runner.model.EventConfiguration;
+import com.walmartlabs.concord.runner.model.RunnerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Buffers process events and sends them to the server in batches.
+ * The buffer is flushed when it reaches {@link EventConfiguration#batchSize()},
+ * after {@link EventConfiguration#batchFlushInterval()} and when the runner
+ * stops (see {@link #stop()}).
+ * <p>
+ * If the server is unreachable, the events are kept in the buffer and the
+ * sender backs off. The buffer holds up to {@link EventConfiguration#maxBufferSize()}
+ * events, the oldest events are dropped after that.
+ */
+@Named
+@Singleton
+public class ElementEventSender {
+
+    private static final Logger log = LoggerFactory.getLogger(ElementEventSender.class);
+
+    private static final int MAX_SEND_ATTEMPTS = 3;
+    private static final long API_ERROR_DELAY = 3000;
+    private static final int DEFAULT_MAX_BUFFER_SIZE = 10000;
+
+    /**
+     * Max delay between the flushes after consecutive failures.
+     */
+    private static final long MAX_BACKOFF_DELAY = 60000;
+
+    /**
+     * Same serialization as used by {@link com.walmartlabs.concord.ApiClient}.
+     */
+    private static final Gson gson = new JSON().getGson();
+
+    private final int batchSize;
+    private final long flushInterval;
+    private final int maxBufferSize;
+    private final long retryDelay;
+    private final Transport transport;
+
+    private final Object lock = new Object();
+    private final Object sendLock = new Object();
+    private final List<Item> buffer = new ArrayList<>();
+
+    private Thread worker;
+    private boolean stopped;
+
+    /**
+     * Number of consecutive failed flushes.
+     */
+    private int failures;
+
+    @Inject
+    public ElementEventSender(RunnerConfiguration cfg, ApiClientFactory apiClientFactory) {
+        this(cfg.events().batchSize(), cfg.events().batchFlushInterval(), cfg.events().maxBufferSize(), API_ERROR_DELAY, new ApiTransport(apiClientFactory));
+    }
+
+    ElementEventSender(int batchSize, long flushInterval, Transport transport) {
+        this(batchSize, flushInterval, DEFAULT_MAX_BUFFER_SIZE, API_ERROR_DELAY, transport);
+    }
+
+    ElementEventSender(int batchSize, long flushInterval, int maxBufferSize, long retryDelay, Transport transport) {
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.maxBufferSize = maxBufferSize;
+        this.retryDelay = retryDelay;
+        this.transport = transport;
+    }
+
+    public void send(String instanceId, String sessionToken, ProcessEventRequest req) {
+        // the data can contain references to mutable variables,
+        // take a snapshot to send the values as they were at the time of the event
+        req.setData(snapshot(req.getData()));
+
+        boolean flushNow;
+        synchronized (lock) {
+            buffer.add(new Item(instanceId, sessionToken, req));
+            trimBuffer();
+
+            // the runner is shutting down, no one else will flush the buffer
+            flushNow = stopped;
+
+            if (!stopped && worker == null) {
+                startWorker();
+            }
+
+            if (buffer.size() >= batchSize) {
+                lock.notifyAll();
+            }
+        }
+
+        // send outside of the lock: flush() takes sendLock first
+        // and the network calls shouldn't block the other callers
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends all buffered events.
+     * <p>
+     * Lock order: {@code sendLock}, then {@code lock}. The events are sent
+     * without holding {@code lock}.
+     */
+    public void flush() {
+        synchronized (sendLock) {
+            List<Item> items;
+            synchronized (lock) {
+                if (buffer.isEmpty()) {
+                    return;
+                }
+
+                items = new ArrayList<>(buffer);
+                buffer.clear();
+            }
+
+            boolean keepOnError;
+            synchronized (lock) {
+                keepOnError = !stopped;
+            }
+
+            List<Item> failed = send(items, keepOnError);
+            synchronized (lock) {
+                if (failed.isEmpty()) {
+                    failures = 0;
+                    return;
+                }
+
+                failures++;
+
+                // keep the order of the events
+                buffer.addAll(0, failed);
+                trimBuffer();
+            }
+        }
+    }
+
+    /**
+     * Stops the background worker and sends the remaining events.
+     * Events sent after the worker was stopped are sent immediately.
+     */
+    public void stop() {
+        Thread w;
+        synchronized (lock) {
+            stopped = true;
+            w = worker;
+            lock.notifyAll();
+        }
+
+        if (w != null && w != Thread.currentThread()) {
+            try {
+                w.join(flushInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        flush();
+    }
+
+    private void startWorker() {
+        worker = new Thread(this::run, "element-event-sender");
+        worker.setDaemon(true);
+        worker.start();
+
+        // flush the buffer when the runner exits (e.g. calls System.exit)
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "element-event-sender-shutdown"));
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (lock) {
+                try {
+                    if (failures > 0) {
+                        // the server is unreachable, wait regardless of the buffer's size
+                        long deadline = System.currentTimeMillis() + backoffDelay();
+                        long remaining;
+                        while (!stopped && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                            lock.wait(remaining);
+                        }
+                    } else if (!stopped && buffer.size() < batchSize) {
+                        lock.wait(flushInterval);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                if (stopped) {
+                    return;
+                }
+            }
+
+            flush();
+        }
+    }
+
+    /**
+     * Doubles the flush interval after each consecutive failure,
+     * up to {@link #MAX_BACKOFF_DELAY}. Must be called while holding {@code lock}.
+     */
+    private long backoffDelay() {
+        long delay = flushInterval << Math.min(failures, 16);
+        return Math.min(Math.max(delay, flushInterval), MAX_BACKOFF_DELAY);
+    }
+
+    /**
+     * Drops the oldest events if the buffer is over the limit.
+     * Must be called while holding {@code lock}.
+     */
+    private void trimBuffer() {
+        int n = buffer.size() - maxBufferSize;
+        if (n <= 0) {
+            return;
+        }
+
+        buffer.subList(0, n).clear();
+        log.warn("send -> the event buffer is full, {} oldest event(s) dropped", n);
+    }
+
+    /**
+     * Sends the items, preserving the order.
+     *
+     * @return the items that weren't sent if {@code keepOnError} is {@code true}
+     */
+    private List<Item> send(List<Item> items, boolean keepOnError) {
+        int i = 0;
+        while (i < items.size()) {
+            Item first = items.get(i);
+
+            // the events of the same process are sent together, up to batchSize events per request
+            int j = i + 1;
+            while (j < items.size() && j - i < batchSize && items.get(j).sameProcess(first)) {
+                j++;
+            }
+
+            List<ProcessEventRequest> batch = new ArrayList<>(j - i);
+            for (Item item : items.subList(i, j)) {
+                batch.add(item.req);
+            }
+
+            if (!sendWithRetry(first.instanceId, first.sessionToken, batch)) {
+                if (keepOnError) {
+                    return new ArrayList<>(items.subList(i, items.size()));
+                }
+
+                log.warn("send ['{}'] -> {} event(s) lost", first.instanceId, batch.size());
+            }
+
+            i = j;
+        }
+
+        return Collections.emptyList();
+    }
+
+    private boolean sendWithRetry(String instanceId, String sessionToken, List<ProcessEventRequest> batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transport.send(instanceId, sessionToken, batch);
+                return true;
+            } catch (Exception e) {
+                log.warn("send ['{}'] -> transfer error (attempt {} of {}): {}", instanceId, attempt, MAX_SEND_ATTEMPTS, e.getMessage());
+
+                if (attempt >= MAX_SEND_ATTEMPTS) {
+                    return false;
+                }
+
+                try {
+                    Thread.sleep(retryDelay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+    }
+
+    private static Map<String, Object> snapshot(Map<String, Object> data) {
+        if (data == null) {
+            return null;
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>(data.size());
+        data.forEach((k, v) -> result.put(k, gson.toJsonTree(v)));
+        return result;
+    }
+
+    interface Transport {
+
+        void send(String instanceId, String sessionToken, List<ProcessEventRequest> events) throws ApiException;
+    }
+
+    private static final class ApiTransport implements Transport {
+
+        private final ApiClientFactory apiClientFactory;
+        private final Map<String, ProcessEventsApi> clients = new ConcurrentHashMap<>();
+
+        private ApiTransport(ApiClientFactory apiClientFactory) {
+            this.apiClientFactory = apiClientFactory;
+        }
+
+        @Override
+        public void send(String instanceId, String sessionToken, List<ProcessEventRequest> events) throws ApiException {
+            UUID id = UUID.fromString(instanceId);
+
+            ProcessEventsApi client = clients.computeIfAbsent(instanceId, k -> new ProcessEventsApi(apiClientFactory.create(
+                    ApiClientConfiguration.builder()
+                            .sessionToken(sessionToken)
+                            .txId(id)
+                            .build())));
+
+            client.batchEvent(id, events);
+        }
+    }
+
+    private static final class Item {
+
+        private final String instanceId;
+        private final String sessionToken;
+        private final ProcessEventRequest req;
+
+        private Item(String instanceId, String sessionToken, ProcessEventRequest req) {
+            this.instanceId = instanceId;
+            this.sessionToken = sessionToken;
+            this.req = req;
+        }
+
+        private boolean sameProcess(Item other) {
+            return instanceId.equals(other.instanceId) && Objects.equals(sessionToken, other.sessionToken);
+        }
+    }
+}
@@ -72,15 +72,18 @@ public class EngineFactory {
     private final ApiClientFactory apiClientFactory;
     private final ServiceTaskRegistry taskRegistry;
     private final RunnerConfiguration runnerCfg;
+    private final ElementEventSender eventSender;
 
     @Inject
     public EngineFactory(ApiClientFactory apiClientFactory,
                          ServiceTaskRegistry taskRegistry,
-                         RunnerConfiguration runnerCfg) {
+                         RunnerConfiguration runnerCfg,
+                         ElementEventSender eventSender) {
 
         this.apiClientFactory = apiClientFactory;
         this.taskRegistry = taskRegistry;
         this.runnerCfg = runnerCfg;
+        this.eventSender = eventSender;
     }
 
     @SuppressWarnings("deprecation")
@@ -141,7 +144,7 @@ public class EngineFactory {
         cfg.setWrapAllExceptionsAsBpmnErrors(true);
         cfg.setCopyAllCallActivityOutVariables(true);
 
-        ElementEventProcessor eventProcessor = new ElementEventProcessor(apiClientFactory, adapter.processes());
+        ElementEventProcessor eventProcessor = new ElementEventProcessor(eventSender, adapter.processes());
         ProcessOutVariables outVariables = new ProcessOutVariables(contextFactory);
 
         List<TaskInterceptor> taskInterceptors = new ArrayList<>();
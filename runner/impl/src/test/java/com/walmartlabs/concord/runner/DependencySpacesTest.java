@@ -0,0 +1,101 @@
+package com.walmartlabs.concord.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.walmartlabs.concord.sdk.Context;
+import com.walmartlabs.concord.sdk.Task;
+import org.eclipse.sisu.BeanEntry;
+import org.eclipse.sisu.inject.BeanLocator;
+import org.eclipse.sisu.wire.WireModule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.inject.Named;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.*;
+
+public class DependencySpacesTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testIndex() throws Exception {
+        Path indexed = createJar("indexed.jar", IndexedTask.class.getName());
+        Path plain = createJar("plain.jar", null);
+
+        Path dir = tempFolder.newFolder("dir").toPath();
+        Files.createDirectories(dir.resolve(DependencySpaces.INDEX_NAME).getParent());
+        Files.write(dir.resolve(DependencySpaces.INDEX_NAME), Collections.singletonList(IndexedTask.class.getName()));
+
+        assertTrue(DependencySpaces.hasIndex(indexed.toUri().toURL()));
+        assertFalse(DependencySpaces.hasIndex(plain.toUri().toURL()));
+        assertTrue(DependencySpaces.hasIndex(dir.toUri().toURL()));
+
+        // the task classes are available in the parent class loader, only the listed ones are bound
+        List<URL> deps = Arrays.asList(indexed.toUri().toURL(), plain.toUri().toURL());
+        Injector injector = Guice.createInjector(new WireModule(DependencySpaces.create(getClass().getClassLoader(), deps)));
+
+        Set<String> names = new HashSet<>();
+        for (BeanEntry<Annotation, Task> e : injector.getInstance(BeanLocator.class).locate(Key.get(Task.class))) {
+            names.add(e.getImplementationClass().getName());
+        }
+
+        assertEquals(Collections.singleton(IndexedTask.class.getName()), names);
+    }
+
+    private Path createJar(String name, String indexEntry) throws IOException {
+        Path p = tempFolder.getRoot().toPath().resolve(name);
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(p))) {
+            if (indexEntry != null) {
+                out.putNextEntry(new JarEntry(DependencySpaces.INDEX_NAME));
+                out.write((indexEntry + "\n").getBytes());
+                out.closeEntry();
+            }
+
+            out.putNextEntry(new JarEntry("README"));
+            out.write("test".getBytes());
+            out.closeEntry();
+        }
+        return p;
+    }
+
+    @Named("indexedTask")
+    public static class IndexedTask implements Task {
+
+        @Override
+        public void execute(Context ctx) {
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.walmartlabs.concord.runner.engine;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.ApiException;
+import com.walmartlabs.concord.client.ProcessEventRequest;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ElementEventSenderTest {
+
+    private static final String INSTANCE_ID = UUID.randomUUID().toString();
+
+    @Test(timeout = 10000)
+    public void testBatches() throws Exception {
+        List<List<ProcessEventRequest>> batches = Collections.synchronizedList(new ArrayList<>());
+
+        ElementEventSender sender = new ElementEventSender(3, 60000, (instanceId, sessionToken, events) -> batches.add(new ArrayList<>(events)));
+
+        for (int i = 0; i < 7; i++) {
+            sender.send(INSTANCE_ID, "token", event(i));
+        }
+
+        // two full batches are sent by the worker
+        while (count(batches) < 6) {
+            Thread.sleep(10);
+        }
+
+        // the rest is sent on stop
+        sender.stop();
+        assertEquals(7, count(batches));
+        assertOrdered(batches);
+
+        for (List<ProcessEventRequest> b : batches) {
+            assertTrue(b.size() <= 3);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testFlushInterval() throws Exception {
+        List<List<ProcessEventRequest>> batches = Collections.synchronizedList(new ArrayList<>());
+
+        ElementEventSender sender = new ElementEventSender(100, 50, (instanceId, sessionToken, events) -> batches.add(new ArrayList<>(events)));
+        sender.send(INSTANCE_ID, "token", event(0));
+
+        while (count(batches) < 1) {
+            Thread.sleep(10);
+        }
+
+        sender.stop();
+        assertEquals(1, batches.size());
+    }
+
+    @Test(timeout = 30000)
+    public void testRetry() throws Exception {
+        List<List<ProcessEventRequest>> batches = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger calls = new AtomicInteger();
+
+        ElementEventSender sender = new ElementEventSender(100, 60000, (instanceId, sessionToken, events) -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new ApiException("boom");
+            }
+            batches.add(new ArrayList<>(events));
+        });
+
+        for (int i = 0; i < 5; i++) {
+            sender.send(INSTANCE_ID, "token", event(i));
+        }
+
+        sender.stop();
+        assertEquals(5, count(batches));
+        assertOrdered(batches);
+
+        // sent immediately after stop
+        sender.send(INSTANCE_ID, "token", event(5));
+        assertEquals(6, count(batches));
+    }
+
+    @Test(timeout = 10000)
+    public void testSendDuringFlush() throws Exception {
+        List<List<ProcessEventRequest>> batches = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ElementEventSender sender = new ElementEventSender(100, 60000, (instanceId, sessionToken, events) -> {
+            sending.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            batches.add(new ArrayList<>(events));
+        });
+
+        sender.send(INSTANCE_ID, "token", event(0));
+
+        Thread stopper = new Thread(sender::stop);
+        stopper.start();
+        sending.await();
+
+        // the final flush is in progress, the new event waits for it
+        Thread late = new Thread(() -> sender.send(INSTANCE_ID, "token", event(1)));
+        late.start();
+
+        release.countDown();
+        stopper.join();
+        late.join();
+
+        assertEquals(2, count(batches));
+        assertOrdered(batches);
+    }
+
+    @Test(timeout = 10000)
+    public void testBufferLimit() throws Exception {
+        List<List<ProcessEventRequest>> batches = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean down = new AtomicBoolean(true);
+
+        ElementEventSender sender = new ElementEventSender(10, 10, 20, 1, (instanceId, sessionToken, events) -> {
+            if (down.get()) {
+                throw new ApiException("unreachable");
+            }
+            batches.add(new ArrayList<>(events));
+        });
+
+        for (int i = 0; i < 50; i++) {
+            sender.send(INSTANCE_ID, "token", event(i));
+        }
+
+        // waits for the worker and puts the failed events back into the buffer
+        sender.flush();
+
+        down.set(false);
+        sender.stop();
+
+        // only the newest events are kept
+        int n = count(batches);
+        assertTrue(n > 0 && n <= 20);
+
+        int prev = -1;
+        for (List<ProcessEventRequest> b : batches) {
+            for (ProcessEventRequest r : b) {
+                int i = Integer.parseInt(r.getData().get("n").toString());
+                assertTrue(i > prev);
+                prev = i;
+            }
+        }
+        assertEquals(49, prev);
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        List<ProcessEventRequest> sent = new ArrayList<>();
+
+        ElementEventSender sender = new ElementEventSender(100, 60000, (instanceId, sessionToken, events) -> sent.addAll(events));
+
+        List<String> mutable = new ArrayList<>(Collections.singletonList("a"));
+        ProcessEventRequest req = new ProcessEventRequest();
+        req.setData(Collections.singletonMap("value", mutable));
+
+        sender.send(INSTANCE_ID, "token", req);
+        mutable.add("b");
+
+        sender.stop();
+        assertEquals(1, sent.size());
+        assertEquals("{\"value\":[\"a\"]}", new com.walmartlabs.concord.JSON().serialize(sent.get(0).getData()));
+    }
+
+    private static ProcessEventRequest event(int n) {
+        ProcessEventRequest req = new ProcessEventRequest();
+        req.setEventType("ELEMENT");
+        req.setData(Collections.singletonMap("n", n));
+        return req;
+    }
+
+    private static int count(List<List<ProcessEventRequest>> batches) {
+        synchronized (batches) {
+            return batches.stream().mapToInt(List::size).sum();
+        }
+    }
+
+    private static void assertOrdered(List<List<ProcessEventRequest>> batches) {
+        int expected = 0;
+        for (List<ProcessEventRequest> b : batches) {
+            for (ProcessEventRequest r : b) {
+                assertEquals(String.valueOf(expected++), r.getData().get("n").toString());
+            }
+        }
+    }
+}
@@ -77,6 +77,33 @@ public interface EventConfiguration {
         return Collections.emptyList();
     }
 
+    /**
+     * Number of buffered events which triggers a flush, also the max number
+     * of events sent in a single request. The buffer is also sent when the
+     * flush interval passes or when the process finishes, suspends or fails.
+     */
+    @Value.Default
+    default int batchSize() {
+        return 100;
+    }
+
+    /**
+     * Max number of events kept in the buffer while the server is unreachable.
+     * The oldest events are dropped when the buffer is full.
+     */
+    @Value.Default
+    default int maxBufferSize() {
+        return 10000;
+    }
+
+    /**
+     * Max delay (ms) before buffered events are sent to the server.
+     */
+    @Value.Default
+    default long batchFlushInterval() {
+        return 1000;
+    }
+
     static ImmutableEventConfiguration.Builder builder() {
         return ImmutableEventConfiguration.builder();
     }
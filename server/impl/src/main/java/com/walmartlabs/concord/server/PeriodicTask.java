@@ -30,6 +30,9 @@ public abstract class PeriodicTask implements BackgroundTask {
     private final long interval;
     private final long errorDelay;
 
+    private final Object wakeUpMutex = new Object();
+    private boolean wakeUpRequested;
+
     private Thread worker;
 
     public PeriodicTask(long interval, long errorDelay) {
@@ -58,12 +61,24 @@ public abstract class PeriodicTask implements BackgroundTask {
         log.info("stop -> done: {}", taskName());
     }
 
+    /**
+     * Interrupts the current delay between {@link #performTask()} calls
+     * and runs the task as soon as possible. If the task is currently
+     * running, the next delay is skipped.
+     */
+    public void wakeUp() {
+        synchronized (wakeUpMutex) {
+            wakeUpRequested = true;
+            wakeUpMutex.notifyAll();
+        }
+    }
+
     private void run() {
         while (!Thread.currentThread().isInterrupted()) {
             try {
                 boolean isContinue = performTask();
                 if (!isContinue) {
-                    sleep(interval);
+                    await(interval);
                 }
             } catch (Exception e) {
                 log.warn("run -> task {} error: {}. Will retry in {}ms...", taskName(), e.getMessage(), errorDelay, e);
@@ -78,6 +93,24 @@ public abstract class PeriodicTask implements BackgroundTask {
 
     protected abstract boolean performTask() throws Exception;
 
+    private void await(long ms) {
+        long deadline = System.currentTimeMillis() + ms;
+
+        synchronized (wakeUpMutex) {
+            try {
+                long t = ms;
+                while (!wakeUpRequested && t > 0) {
+                    wakeUpMutex.wait(t);
+                    t = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                wakeUpRequested = false;
+            }
+        }
+    }
+
     protected static void sleep(long ms) {
         try {
             Thread.sleep(ms);
@@ -40,6 +40,7 @@ public class RepositoryConfiguration {
     private static final Logger log = LoggerFactory.getLogger(RepositoryConfiguration.class);
 
     private final Path cacheDir;
+    private final Path snapshotDir;
 
     @Inject
     @Config("repositoryCache.concordFileValidationEnabled")
@@ -50,16 +51,40 @@ public class RepositoryConfiguration {
     private long lockTimeout;
 
     @Inject
-    public RepositoryConfiguration(@Config("repositoryCache.cacheDir") @Nullable String cacheDir) throws IOException {
+    @Config("repositoryCache.snapshotMaxSize")
+    private long snapshotMaxSize;
+
+    @Inject
+    @Config("repositoryCache.snapshotHardLinks")
+    private boolean snapshotHardLinks;
+
+    @Inject
+    public RepositoryConfiguration(@Config("repositoryCache.cacheDir") @Nullable String cacheDir,
+                                   @Config("repositoryCache.snapshotDir") @Nullable String snapshotDir) throws IOException {
 
         this.cacheDir = getPath(cacheDir, "repoCache");
         log.info("init -> using {} to cache repositories", this.cacheDir);
+
+        this.snapshotDir = getPath(snapshotDir, "repoSnapshots");
+        log.info("init -> using {} to cache repository snapshots", this.snapshotDir);
     }
 
     public Path getCacheDir() {
         return cacheDir;
     }
 
+    public Path getSnapshotDir() {
+        return snapshotDir;
+    }
+
+    public long getSnapshotMaxSize() {
+        return snapshotMaxSize;
+    }
+
+    public boolean isSnapshotHardLinks() {
+        return snapshotHardLinks;
+    }
+
     public long getLockTimeout() {
         return lockTimeout;
     }
@@ -20,6 +20,8 @@ package com.walmartlabs.concord.server.events;
  * =====
  */
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.walmartlabs.concord.common.MapMatcher;
 import com.walmartlabs.concord.server.org.triggers.TriggerEntry;
 import org.slf4j.Logger;
@@ -31,9 +33,23 @@ public final class DefaultEventFilter {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultEventFilter.class);
 
+    /**
+     * Compiled trigger conditions. Each event is matched against all triggers
+     * of the event source, this way the conditions are parsed only once.
+     */
+    private static final Cache<Map<String, Object>, MapMatcher.Compiled> matchers = CacheBuilder.newBuilder()
+            .maximumSize(10 * 1024L)
+            .build();
+
     public static boolean filter(Map<String, Object> conditions, TriggerEntry t) {
         try {
-            return MapMatcher.matches(conditions, t.getConditions());
+            Map<String, Object> triggerConditions = t.getConditions();
+            if (triggerConditions == null) {
+                return true;
+            }
+
+            return matchers.get(triggerConditions, () -> MapMatcher.compile(triggerConditions))
+                    .matches(conditions);
         } catch (Exception e) {
             log.warn("filter [{}, {}] -> error while matching events: {}", conditions, t, e.getMessage());
             return false;
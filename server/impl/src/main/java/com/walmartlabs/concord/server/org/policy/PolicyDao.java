@@ -30,6 +30,7 @@ import org.jooq.impl.DSL;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -85,30 +86,62 @@ public class PolicyDao extends AbstractDao {
             return null;
         }
 
-        Result<Record3<String, JSONB, Integer>> rules = tx.withRecursive("children").as(
-                select(POLICIES.POLICY_ID, POLICIES.PARENT_POLICY_ID, POLICIES.POLICY_NAME, POLICIES.RULES, field("1", Integer.class).as("level")).from(POLICIES)
+        Result<Record5<UUID, Integer, String, JSONB, Integer>> rules = tx.withRecursive("children").as(
+                select(POLICIES.POLICY_ID, POLICIES.PARENT_POLICY_ID, POLICIES.POLICY_VERSION, POLICIES.POLICY_NAME, POLICIES.RULES, field("1", Integer.class).as("level")).from(POLICIES)
                         .where(POLICIES.POLICY_ID.eq(entry.id()))
                         .unionAll(
-                                select(POLICIES.POLICY_ID, POLICIES.PARENT_POLICY_ID, POLICIES.POLICY_NAME, POLICIES.RULES, field("children.level + 1", Integer.class).as("level")).from(POLICIES)
+                                select(POLICIES.POLICY_ID, POLICIES.PARENT_POLICY_ID, POLICIES.POLICY_VERSION, POLICIES.POLICY_NAME, POLICIES.RULES, field("children.level + 1", Integer.class).as("level")).from(POLICIES)
                                         .join(name("children"))
                                         .on(POLICIES.POLICY_ID.eq(
                                                 field(name("children", "PARENT_POLICY_ID"), UUID.class)))))
-                .select(POLICIES.as("children").POLICY_NAME, POLICIES.as("children").RULES, field("level", Integer.class))
+                .select(POLICIES.as("children").POLICY_ID, POLICIES.as("children").POLICY_VERSION, POLICIES.as("children").POLICY_NAME, POLICIES.as("children").RULES, field("level", Integer.class))
                 .from(name("children"))
                 .orderBy(field("level").desc())
                 .fetch();
 
         ImmutablePolicyRules.Builder result = ImmutablePolicyRules.builder();
         Map<String, Object> mergedRules = new HashMap<>();
-        for(Record3<String, JSONB, Integer> r : rules) {
-            result.addPolicyNames(r.value1());
-            mergedRules = ConfigurationUtils.deepMerge(mergedRules, objectMapper.fromJSONB(r.value2()));
+        for(Record5<UUID, Integer, String, JSONB, Integer> r : rules) {
+            result.addVersions(PolicyVersion.of(r.value1(), r.value2()));
+            result.addPolicyNames(r.value3());
+            mergedRules = ConfigurationUtils.deepMerge(mergedRules, objectMapper.fromJSONB(r.value4()));
         }
         return result
                 .rules(mergedRules)
                 .build();
     }
 
+    public List<PolicyVersion> getVersions(UUID orgId, UUID projectId, UUID userId) {
+        try (DSLContext tx = DSL.using(cfg)) {
+            return getVersions(tx, orgId, projectId, userId);
+        }
+    }
+
+    /**
+     * Returns the versions of the effective policy and its parents, in the
+     * same order as {@link PolicyRules#versions()}. Doesn't fetch the rules,
+     * so it can be used to check if the previously loaded rules are still valid.
+     */
+    public List<PolicyVersion> getVersions(DSLContext tx, UUID orgId, UUID projectId, UUID userId) {
+        PolicyRule linked = findLinked(tx, orgId, projectId, userId, false);
+        if (linked == null) {
+            return Collections.emptyList();
+        }
+
+        return tx.withRecursive("children").as(
+                select(POLICIES.POLICY_ID, POLICIES.PARENT_POLICY_ID, POLICIES.POLICY_VERSION, field("1", Integer.class).as("level")).from(POLICIES)
+                        .where(POLICIES.POLICY_ID.eq(linked.policyId))
+                        .unionAll(
+                                select(POLICIES.POLICY_ID, POLICIES.PARENT_POLICY_ID, POLICIES.POLICY_VERSION, field("children.level + 1", Integer.class).as("level")).from(POLICIES)
+                                        .join(name("children"))
+                                        .on(POLICIES.POLICY_ID.eq(
+                                                field(name("children", "PARENT_POLICY_ID"), UUID.class)))))
+                .select(POLICIES.as("children").POLICY_ID, POLICIES.as("children").POLICY_VERSION)
+                .from(name("children"))
+                .orderBy(field("level").desc())
+                .fetch(r -> PolicyVersion.of(r.value1(), r.value2()));
+    }
+
     public PolicyEntry getLinked(UUID orgId, UUID projectId, UUID userId) {
         try (DSLContext tx = DSL.using(cfg)) {
             return getLinked(tx, orgId, projectId, userId);
@@ -116,11 +149,20 @@ public class PolicyDao extends AbstractDao {
     }
 
     public PolicyEntry getLinked(DSLContext tx, UUID orgId, UUID projectId, UUID userId) {
+        PolicyRule r = findLinked(tx, orgId, projectId, userId, true);
+        if (r == null) {
+            return null;
+        }
+
+        return toEntry(r);
+    }
+
+    private PolicyRule findLinked(DSLContext tx, UUID orgId, UUID projectId, UUID userId, boolean withRules) {
         SelectOnConditionStep<Record7<UUID, UUID, String, JSONB, UUID, UUID, UUID>> q =
                 tx.select(POLICIES.POLICY_ID,
                         POLICIES.PARENT_POLICY_ID,
                         POLICIES.POLICY_NAME,
-                        POLICIES.RULES,
+                        withRules ? POLICIES.RULES : inline(null, POLICIES.RULES),
                         POLICY_LINKS.ORG_ID,
                         POLICY_LINKS.PROJECT_ID,
                         POLICY_LINKS.USER_ID)
@@ -152,7 +194,7 @@ public class PolicyDao extends AbstractDao {
 
         q.where(c);
 
-        return findPolicyEntry(q.fetch(this::toRule));
+        return findPolicyRule(q.fetch(this::toRule));
     }
 
     public UUID insert(String name, UUID parentId, Map<String, Object> rules) {
@@ -169,6 +211,7 @@ public class PolicyDao extends AbstractDao {
                 .set(POLICIES.POLICY_NAME, name)
                 .set(POLICIES.RULES, objectMapper.toJSONB(rules))
                 .set(POLICIES.PARENT_POLICY_ID, parentId)
+                .set(POLICIES.POLICY_VERSION, POLICIES.POLICY_VERSION.plus(1))
                 .where(POLICIES.POLICY_ID.eq(policyId))
                 .execute());
     }
@@ -216,25 +259,25 @@ public class PolicyDao extends AbstractDao {
         }
     }
 
-    private PolicyEntry findPolicyEntry(List<PolicyRule> rules) {
+    private PolicyRule findPolicyRule(List<PolicyRule> rules) {
         PolicyRule userRule = findUserLevelRule(rules);
         if (userRule != null) {
-            return toEntry(userRule);
+            return userRule;
         }
 
         PolicyRule prjRule = rules.stream().filter(r -> r.prjId != null).findFirst().orElse(null);
         if (prjRule != null) {
-            return toEntry(prjRule);
+            return prjRule;
         }
 
         PolicyRule orgRule = rules.stream().filter(r -> r.orgId != null && r.prjId == null).findFirst().orElse(null);
         if (orgRule != null) {
-            return toEntry(orgRule);
+            return orgRule;
         }
 
         PolicyRule systemRule = rules.stream().filter(r -> r.orgId == null && r.prjId == null).findFirst().orElse(null);
         if (systemRule != null) {
-            return toEntry(systemRule);
+            return systemRule;
         }
 
         return null;
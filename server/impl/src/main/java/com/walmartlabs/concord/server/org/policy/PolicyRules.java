@@ -31,5 +31,10 @@ public interface PolicyRules extends Serializable {
 
     List<String> policyNames();
 
+    /**
+     * Versions of the effective policy and its parents.
+     */
+    List<PolicyVersion> versions();
+
     Map<String, Object> rules();
 }
@@ -0,0 +1,45 @@
+package com.walmartlabs.concord.server.org.policy;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import org.immutables.value.Value;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * ID and version of a policy. The version is incremented on every update.
+ */
+@Value.Immutable
+public interface PolicyVersion extends Serializable {
+
+    UUID id();
+
+    int version();
+
+    static PolicyVersion of(UUID id, int version) {
+        return ImmutablePolicyVersion.builder()
+                .id(id)
+                .version(version)
+                .build();
+    }
+}
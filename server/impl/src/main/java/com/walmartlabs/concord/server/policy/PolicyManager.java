@@ -20,45 +20,78 @@ package com.walmartlabs.concord.server.policy;
  * =====
  */
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.walmartlabs.concord.policyengine.CheckResult;
 import com.walmartlabs.concord.policyengine.EntityRule;
 import com.walmartlabs.concord.policyengine.PolicyEngine;
 import com.walmartlabs.concord.server.org.policy.PolicyDao;
 import com.walmartlabs.concord.server.org.policy.PolicyRules;
+import com.walmartlabs.concord.server.org.policy.PolicyVersion;
 import com.walmartlabs.concord.server.security.UserPrincipal;
 import com.walmartlabs.concord.server.user.UserEntry;
 import com.walmartlabs.concord.server.user.UserInfoProvider;
 import com.walmartlabs.concord.server.user.UserManager;
+import org.jooq.DSLContext;
 import org.sonatype.siesta.ValidationErrorsException;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Named
 @Singleton
 public class PolicyManager {
 
+    private static final int ENGINE_CACHE_SIZE = 1000;
+
     private final PolicyDao policyDao;
     private final UserManager userManager;
 
+    /**
+     * Policy engines keyed by the versions of the policies they were created from.
+     * Updating a policy increments its version, so the stale entries are never
+     * used again (on any server node) and eventually evicted.
+     */
+    private final Cache<List<PolicyVersion>, PolicyEngine> engines;
+
     @Inject
     public PolicyManager(PolicyDao policyDao, UserManager userManager) {
         this.policyDao = policyDao;
         this.userManager = userManager;
+        this.engines = CacheBuilder.newBuilder()
+                .maximumSize(ENGINE_CACHE_SIZE)
+                .expireAfterAccess(1, TimeUnit.HOURS)
+                .build();
     }
 
     public PolicyEngine get(UUID orgId, UUID projectId, UUID userId) {
-        PolicyRules r = policyDao.getRules(orgId, projectId, userId);
-        if (r == null) {
-            return null;
+        return get(policyDao.getVersions(orgId, projectId, userId),
+                () -> policyDao.getRules(orgId, projectId, userId));
+    }
+
+    public PolicyEngine get(DSLContext tx, UUID orgId, UUID projectId, UUID userId) {
+        return get(policyDao.getVersions(tx, orgId, projectId, userId),
+                () -> policyDao.getRules(tx, orgId, projectId, userId));
+    }
+
+    /**
+     * Returns a (cached) policy engine for the specified rules.
+     */
+    public PolicyEngine get(PolicyRules r) {
+        if (r.versions().isEmpty()) {
+            return new PolicyEngine(r.rules());
         }
 
-        return new PolicyEngine(r.rules());
+        try {
+            return engines.get(r.versions(), () -> new PolicyEngine(r.rules()));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
     }
 
     public void checkEntity(UUID orgId, UUID projectId,
@@ -82,6 +115,24 @@ public class PolicyManager {
         }
     }
 
+    private PolicyEngine get(List<PolicyVersion> versions, Supplier<PolicyRules> rules) {
+        if (versions.isEmpty()) {
+            return null;
+        }
+
+        PolicyEngine pe = engines.getIfPresent(versions);
+        if (pe != null) {
+            return pe;
+        }
+
+        PolicyRules r = rules.get();
+        if (r == null) {
+            return null;
+        }
+
+        return get(r);
+    }
+
     private Map<String, Object> getOwnerAttrs(UserEntry owner) {
         if (owner == null) {
             return Collections.emptyMap();
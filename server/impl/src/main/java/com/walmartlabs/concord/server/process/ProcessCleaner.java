@@ -25,10 +25,14 @@ import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.server.cfg.ProcessStateConfiguration;
 import com.walmartlabs.concord.server.sdk.ProcessStatus;
 import com.walmartlabs.concord.server.sdk.ScheduledTask;
+import com.walmartlabs.concord.server.jooq.tables.ProcessDataPartitions;
 import org.jooq.Configuration;
+import org.jooq.DSLContext;
 import org.jooq.Record1;
 import org.jooq.SelectConditionStep;
 import org.jooq.SelectJoinStep;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,14 +40,20 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_EVENT_STATS;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessCheckpoints.PROCESS_CHECKPOINTS;
+import static com.walmartlabs.concord.server.jooq.tables.ProcessDataPartitions.PROCESS_DATA_PARTITIONS;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessEvents.PROCESS_EVENTS;
+import static com.walmartlabs.concord.server.jooq.tables.ProcessLogData.PROCESS_LOG_DATA;
+import static com.walmartlabs.concord.server.jooq.tables.ProcessLogSizes.PROCESS_LOG_SIZES;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessLogs.PROCESS_LOGS;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessState.PROCESS_STATE;
+import static com.walmartlabs.concord.server.jooq.tables.ProcessStateBlobs.PROCESS_STATE_BLOBS;
 import static org.jooq.impl.DSL.*;
 
 @Named("process-cleaner")
@@ -75,19 +85,90 @@ public class ProcessCleaner implements ScheduledTask {
     @Override
     public void performTask() {
         Timestamp cutoff = new Timestamp(System.currentTimeMillis() - cfg.getMaxStateAge());
+        cleanerDao.dropOldPartitions(cutoff, cfg);
         cleanerDao.deleteOldState(cutoff, cfg);
         cleanerDao.deleteOrphans(cfg);
+        cleanerDao.deleteUnusedBlobs(cutoff, cfg);
         cleanerDao.deleteOldEventStats(cfg);
     }
 
     @Named
     private static class CleanerDao extends AbstractDao {
 
+        private static final String SET_LOCK_TIMEOUT_SQL = "set local lock_timeout = '10s'";
+
         @Inject
         protected CleanerDao(@MainDB Configuration cfg) {
             super(cfg);
         }
 
+        /**
+         * Drops the partitions of the per-process tables (see {@link ProcessPartitionManager})
+         * which contain only the data of processes eligible for cleanup.
+         * The remaining rows (e.g. the data of still running processes) are removed
+         * by {@link #deleteOldState(Timestamp, ProcessStateConfiguration)} and {@link #deleteOrphans(ProcessStateConfiguration)}.
+         */
+        void dropOldPartitions(Timestamp cutoff, ProcessStateConfiguration jobCfg) {
+            List<String> tables = new ArrayList<>();
+            if (jobCfg.isEventsCleanup()) {
+                tables.add("PROCESS_EVENTS");
+            }
+            if (jobCfg.isLogsCleanup()) {
+                tables.add("PROCESS_LOG_DATA");
+            }
+            if (jobCfg.isStateCleanup()) {
+                tables.add("PROCESS_STATE");
+            }
+            if (jobCfg.isCheckpointCleanup()) {
+                tables.add("PROCESS_CHECKPOINTS");
+            }
+
+            if (tables.isEmpty()) {
+                return;
+            }
+
+            long t1 = System.currentTimeMillis();
+
+            ProcessDataPartitions p = PROCESS_DATA_PARTITIONS.as("p");
+            List<String> partitions;
+            try (DSLContext tx = DSL.using(cfg)) {
+                partitions = tx.select(p.PARTITION_NAME)
+                        .from(p)
+                        .where(p.TABLE_NAME.in(tables)
+                                .and(p.RANGE_TO.lessOrEqual(cutoff))
+                                .andNotExists(selectOne()
+                                        .from(PROCESS_QUEUE)
+                                        .where(PROCESS_QUEUE.CREATED_AT.lessThan(p.RANGE_TO)
+                                                .and(p.RANGE_FROM.isNull().or(PROCESS_QUEUE.CREATED_AT.greaterOrEqual(p.RANGE_FROM)))
+                                                .and(PROCESS_QUEUE.LAST_UPDATED_AT.greaterOrEqual(cutoff)
+                                                        .or(PROCESS_QUEUE.CURRENT_STATUS.in(EXCLUDE_STATUSES))))))
+                        .orderBy(p.RANGE_TO)
+                        .fetch(p.PARTITION_NAME);
+            }
+
+            int dropped = 0;
+            for (String partition : partitions) {
+                try {
+                    tx(tx -> {
+                        // dropping a partition requires an exclusive lock on the whole table
+                        // don't wait for it for too long, the partition will be dropped on the next run
+                        tx.execute(SET_LOCK_TIMEOUT_SQL);
+
+                        tx.dropTable(name(partition)).execute();
+                        tx.deleteFrom(PROCESS_DATA_PARTITIONS)
+                                .where(PROCESS_DATA_PARTITIONS.PARTITION_NAME.eq(partition))
+                                .execute();
+                    });
+                    dropped++;
+                } catch (DataAccessException e) {
+                    log.warn("dropOldPartitions -> can't drop {}: {}", partition, e.getMessage());
+                }
+            }
+
+            long t2 = System.currentTimeMillis();
+            log.info("dropOldPartitions -> dropped {} partition(s) older than {}, took {}ms", dropped, cutoff, (t2 - t1));
+        }
+
         void deleteOldState(Timestamp cutoff, ProcessStateConfiguration jobCfg) {
             long t1 = System.currentTimeMillis();
 
@@ -123,6 +204,12 @@ public class ProcessCleaner implements ScheduledTask {
                     logEntries = tx.deleteFrom(PROCESS_LOGS)
                             .where(PROCESS_LOGS.INSTANCE_ID.in(ids))
                             .execute();
+                    logEntries += tx.deleteFrom(PROCESS_LOG_DATA)
+                            .where(PROCESS_LOG_DATA.INSTANCE_ID.in(ids))
+                            .execute();
+                    tx.deleteFrom(PROCESS_LOG_SIZES)
+                            .where(PROCESS_LOG_SIZES.INSTANCE_ID.in(ids))
+                            .execute();
                 }
 
                 int checkpoints = 0;
@@ -140,6 +227,32 @@ public class ProcessCleaner implements ScheduledTask {
             log.info("deleteOldState -> took {}ms", (t2 - t1));
         }
 
+        /**
+         * Removes the process state blobs which are not referenced by any process
+         * and weren't used since the cutoff.
+         */
+        void deleteUnusedBlobs(Timestamp cutoff, ProcessStateConfiguration jobCfg) {
+            if (!jobCfg.isStateCleanup()) {
+                return;
+            }
+
+            long t1 = System.currentTimeMillis();
+
+            tx(tx -> {
+                int blobs = tx.deleteFrom(PROCESS_STATE_BLOBS)
+                        .where(PROCESS_STATE_BLOBS.LAST_USED_AT.lessThan(cutoff)
+                                .andNotExists(selectOne()
+                                        .from(PROCESS_STATE)
+                                        .where(PROCESS_STATE.ITEM_HASH.eq(PROCESS_STATE_BLOBS.BLOB_HASH))))
+                        .execute();
+
+                log.info("deleteUnusedBlobs -> removed {} blob(s)", blobs);
+            });
+
+            long t2 = System.currentTimeMillis();
+            log.info("deleteUnusedBlobs -> took {}ms", (t2 - t1));
+        }
+
         void deleteOldEventStats(ProcessStateConfiguration jobCfg) {
             if (!jobCfg.isEventStatsCleanup()) {
                 return;
@@ -187,6 +300,12 @@ public class ProcessCleaner implements ScheduledTask {
                     logEntries = tx.deleteFrom(PROCESS_LOGS)
                             .where(PROCESS_LOGS.INSTANCE_ID.notIn(alive))
                             .execute();
+                    logEntries += tx.deleteFrom(PROCESS_LOG_DATA)
+                            .where(PROCESS_LOG_DATA.INSTANCE_ID.notIn(alive))
+                            .execute();
+                    tx.deleteFrom(PROCESS_LOG_SIZES)
+                            .where(PROCESS_LOG_SIZES.INSTANCE_ID.notIn(alive))
+                            .execute();
                 }
 
                 int checkpoints = 0;
@@ -0,0 +1,193 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.server.sdk.ScheduledTask;
+import org.jooq.Configuration;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.walmartlabs.concord.server.jooq.Routines.processDataCreatePartition;
+import static com.walmartlabs.concord.server.jooq.tables.ProcessDataPartitions.PROCESS_DATA_PARTITIONS;
+import static org.jooq.impl.DSL.selectOne;
+
+/**
+ * Creates daily partitions of the per-process data tables ahead of time.
+ * Old partitions are removed by {@link ProcessCleaner}.
+ * <p>
+ * PostgreSQL 10 doesn't support DEFAULT partitions, so new processes call
+ * {@link #ensurePartitions(Timestamp)} to create the missing partition on demand
+ * (e.g. in case of a clock skew or if the task didn't run in time).
+ */
+@Named("process-partitions")
+@Singleton
+public class ProcessPartitionManager implements ScheduledTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessPartitionManager.class);
+
+    public static final List<String> PARTITIONED_TABLES = Arrays.asList(
+            "PROCESS_EVENTS",
+            "PROCESS_LOG_DATA",
+            "PROCESS_STATE",
+            "PROCESS_CHECKPOINTS");
+
+    /**
+     * Number of days to create the partitions for.
+     */
+    private static final int DAYS_AHEAD = 7;
+
+    private final PartitionDao dao;
+
+    /**
+     * Days known to have partitions in all {@link #PARTITIONED_TABLES}.
+     */
+    private final Set<LocalDate> knownDays = ConcurrentHashMap.newKeySet();
+
+    @Inject
+    public ProcessPartitionManager(PartitionDao dao) {
+        this.dao = dao;
+    }
+
+    @Override
+    public long getIntervalInSec() {
+        return 3600;
+    }
+
+    @Override
+    public void performTask() {
+        LocalDate today = LocalDate.now();
+
+        Timestamp from = Timestamp.valueOf(today.atStartOfDay());
+        Timestamp until = Timestamp.valueOf(today.plusDays(DAYS_AHEAD + 1).atStartOfDay());
+        for (String table : PARTITIONED_TABLES) {
+            int count = dao.createPartitions(table, from, until);
+            if (count > 0) {
+                log.info("performTask -> created {} partition(s) of {}", count, table);
+            }
+        }
+
+        // old partitions can be dropped by ProcessCleaner, check them again if needed
+        knownDays.removeIf(d -> d.isBefore(today));
+    }
+
+    /**
+     * Makes sure that all per-process tables have a partition for
+     * the specified process creation date.
+     */
+    public void ensurePartitions(Timestamp createdAt) {
+        LocalDate day = createdAt.toLocalDateTime().toLocalDate();
+        if (knownDays.contains(day)) {
+            return;
+        }
+
+        Timestamp from = Timestamp.valueOf(day.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+        for (String table : PARTITIONED_TABLES) {
+            if (dao.ensurePartition(table, from, to)) {
+                log.warn("ensurePartitions ['{}'] -> created a missing partition of {}", day, table);
+            }
+        }
+
+        knownDays.add(day);
+    }
+
+    @Named
+    public static final class PartitionDao extends AbstractDao {
+
+        @Inject
+        public PartitionDao(@MainDB Configuration cfg) {
+            super(cfg);
+        }
+
+        /**
+         * Creates the missing daily partitions for the specified range.
+         */
+        public int createPartitions(String table, Timestamp from, Timestamp until) {
+            return txResult(tx -> {
+                lockPartitions(tx);
+
+                if (!tx.fetchExists(selectOne().from(PROCESS_DATA_PARTITIONS).where(PROCESS_DATA_PARTITIONS.TABLE_NAME.eq(table)))) {
+                    throw new IllegalStateException("Table is not partitioned: " + table);
+                }
+
+                int count = 0;
+                LocalDateTime t = from.toLocalDateTime();
+                while (t.isBefore(until.toLocalDateTime())) {
+                    Timestamp a = Timestamp.valueOf(t);
+                    Timestamp b = Timestamp.valueOf(t.plusDays(1));
+                    if (!partitionExists(tx, table, a, b)) {
+                        processDataCreatePartition(tx.configuration(), table, a, b);
+                        count++;
+                    }
+                    t = t.plusDays(1);
+                }
+                return count;
+            });
+        }
+
+        /**
+         * Creates a partition for the specified range, unless the range is
+         * already covered by an existing partition.
+         *
+         * @return {@code true} if a new partition was created
+         */
+        public boolean ensurePartition(String table, Timestamp from, Timestamp to) {
+            try (DSLContext tx = DSL.using(cfg)) {
+                if (partitionExists(tx, table, from, to)) {
+                    return false;
+                }
+            }
+
+            return createPartitions(table, from, to) > 0;
+        }
+
+        /**
+         * Serializes the partition creation between the server nodes.
+         */
+        private static void lockPartitions(DSLContext tx) {
+            tx.execute("lock table PROCESS_DATA_PARTITIONS in share row exclusive mode");
+        }
+
+        private static boolean partitionExists(DSLContext tx, String table, Timestamp from, Timestamp to) {
+            return tx.fetchExists(selectOne()
+                    .from(PROCESS_DATA_PARTITIONS)
+                    .where(PROCESS_DATA_PARTITIONS.TABLE_NAME.eq(table)
+                            .and(PROCESS_DATA_PARTITIONS.RANGE_FROM.isNull()
+                                    .or(PROCESS_DATA_PARTITIONS.RANGE_FROM.lessOrEqual(from)))
+                            .and(PROCESS_DATA_PARTITIONS.RANGE_TO.greaterOrEqual(to))));
+        }
+    }
+}
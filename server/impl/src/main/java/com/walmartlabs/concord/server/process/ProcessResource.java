@@ -28,6 +28,8 @@ import com.walmartlabs.concord.project.InternalConstants;
 import com.walmartlabs.concord.sdk.Constants;
 import com.walmartlabs.concord.server.IsoDateParam;
 import com.walmartlabs.concord.server.MultipartUtils;
+import com.walmartlabs.concord.server.cfg.ProcessLogConfiguration;
+import com.walmartlabs.concord.server.cfg.ProcessQueueConfiguration;
 import com.walmartlabs.concord.server.cfg.SecretStoreConfiguration;
 import com.walmartlabs.concord.server.sdk.metrics.InjectCounter;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
@@ -39,11 +41,14 @@ import com.walmartlabs.concord.server.process.PayloadManager.EntryPoint;
 import com.walmartlabs.concord.server.process.ProcessEntry.ProcessStatusHistoryEntry;
 import com.walmartlabs.concord.server.process.ProcessEntry.ProcessWaitHistoryEntry;
 import com.walmartlabs.concord.server.process.ProcessManager.ProcessResult;
+import com.walmartlabs.concord.server.process.logs.LogManager;
+import com.walmartlabs.concord.server.process.logs.LogTailManager;
 import com.walmartlabs.concord.server.process.logs.ProcessLogsDao;
 import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
 import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
 import com.walmartlabs.concord.server.process.pipelines.processors.RequestInfoProcessor;
 import com.walmartlabs.concord.server.process.queue.AbstractWaitCondition;
+import com.walmartlabs.concord.server.process.queue.ProcessCompletionWatcher;
 import com.walmartlabs.concord.server.process.queue.ProcessFilter;
 import com.walmartlabs.concord.server.process.queue.ProcessKeyCache;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
@@ -68,10 +73,16 @@ import org.sonatype.siesta.ValidationErrorsException;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.ConnectionCallback;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.*;
 import javax.ws.rs.core.Response.Status;
 import java.io.*;
@@ -79,7 +90,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import static com.walmartlabs.concord.server.process.state.ProcessStateManager.path;
 import static com.walmartlabs.concord.server.process.state.ProcessStateManager.zipTo;
@@ -95,6 +108,9 @@ public class ProcessResource implements Resource {
     private final ProcessManager processManager;
     private final ProcessQueueDao queueDao;
     private final ProcessLogsDao logsDao;
+    private final LogManager logManager;
+    private final LogTailManager logTailManager;
+    private final ProcessCompletionWatcher completionWatcher;
     private final PayloadManager payloadManager;
     private final ProcessStateManager stateManager;
     private final SecretStoreConfiguration secretStoreCfg;
@@ -102,6 +118,8 @@ public class ProcessResource implements Resource {
     private final ProcessKeyCache processKeyCache;
     private final ObjectMapper objectMapper;
     private final ProjectAccessManager projectAccessManager;
+    private final ProcessLogConfiguration logCfg;
+    private final ProcessQueueConfiguration queueCfg;
 
     @InjectCounter
     private final Counter logBytesAppended;
@@ -112,6 +130,9 @@ public class ProcessResource implements Resource {
     public ProcessResource(ProcessManager processManager,
                            ProcessQueueDao queueDao,
                            ProcessLogsDao logsDao,
+                           LogManager logManager,
+                           LogTailManager logTailManager,
+                           ProcessCompletionWatcher completionWatcher,
                            PayloadManager payloadManager,
                            ProcessStateManager stateManager,
                            SecretStoreConfiguration secretStoreCfg,
@@ -119,12 +140,17 @@ public class ProcessResource implements Resource {
                            ProjectAccessManager projectAccessManager,
                            ProcessKeyCache processKeyCache,
                            ObjectMapper objectMapper,
+                           ProcessLogConfiguration logCfg,
+                           ProcessQueueConfiguration queueCfg,
                            Counter logBytesAppended,
                            ProcessResourceV2 v2) {
 
         this.processManager = processManager;
         this.queueDao = queueDao;
         this.logsDao = logsDao;
+        this.logManager = logManager;
+        this.logTailManager = logTailManager;
+        this.completionWatcher = completionWatcher;
         this.payloadManager = payloadManager;
         this.stateManager = stateManager;
         this.secretStoreCfg = secretStoreCfg;
@@ -132,6 +158,8 @@ public class ProcessResource implements Resource {
         this.projectAccessManager = projectAccessManager;
         this.processKeyCache = processKeyCache;
         this.objectMapper = objectMapper;
+        this.logCfg = logCfg;
+        this.queueCfg = queueCfg;
         this.logBytesAppended = logBytesAppended;
 
         this.v2 = v2;
@@ -465,50 +493,86 @@ public class ProcessResource implements Resource {
 
     /**
      * Waits for completion of a process.
+     * <p>
+     * The request is resumed when the process reaches a final status,
+     * the DB isn't polled while waiting. See {@link ProcessCompletionWatcher}.
+     * <p>
+     * The wait time is limited by {@code queue.maxWaitForCompletionTimeout}
+     * regardless of the requested timeout.
      *
      * @param instanceId
      * @param timeout
-     * @return
+     * @param request
+     * @param asyncResponse
      */
     @GET
-    @ApiOperation("Wait for a process to finish")
+    @ApiOperation(value = "Wait for a process to finish", response = ProcessEntry.class)
     @Produces(MediaType.APPLICATION_JSON)
     @javax.ws.rs.Path("/{id}/waitForCompletion")
-    public ProcessEntry waitForCompletion(@ApiParam @PathParam("id") UUID instanceId,
-                                          @ApiParam @QueryParam("timeout") @DefaultValue("-1") long timeout) {
+    public void waitForCompletion(@ApiParam @PathParam("id") UUID instanceId,
+                                  @ApiParam @QueryParam("timeout") @DefaultValue("-1") long timeout,
+                                  @Context HttpServletRequest request,
+                                  @Suspended AsyncResponse asyncResponse) {
 
         log.info("waitForCompletion ['{}', {}] -> waiting...", instanceId, timeout);
 
-        long t1 = System.currentTimeMillis();
+        ProcessEntry r = get(instanceId);
+        if (ProcessCompletionWatcher.FINAL_STATUSES.contains(r.status())) {
+            asyncResponse.resume(r);
+            return;
+        }
 
-        ProcessEntry r;
-        while (true) {
-            r = get(instanceId);
+        // abandoned requests must not wait forever
+        long maxTimeout = queueCfg.getMaxWaitForCompletionTimeout();
+        long effectiveTimeout = timeout > 0 && timeout < maxTimeout ? timeout : maxTimeout;
 
-            ProcessStatus s = r.status();
-            if (s == ProcessStatus.FINISHED ||
-                    s == ProcessStatus.FAILED ||
-                    s == ProcessStatus.CANCELLED ||
-                    s == ProcessStatus.TIMED_OUT) {
-                return r;
+        CompletableFuture<ProcessStatus> f = completionWatcher.watch(instanceId, effectiveTimeout);
+
+        // stop watching if the request ends first (e.g. the client disconnects)
+        asyncResponse.register((ConnectionCallback) ar -> f.cancel(false));
+        asyncResponse.register((CompletionCallback) e -> f.cancel(false));
+        // not every JAX-RS implementation calls the callbacks on I/O errors, listen for the servlet events too
+        request.getAsyncContext().addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                f.cancel(false);
             }
 
-            if (timeout > 0) {
-                long t2 = System.currentTimeMillis();
-                if (t2 - t1 >= timeout) {
-                    log.warn("waitForCompletion ['{}', {}] -> timeout, last status: {}", instanceId, timeout, s);
-                    throw new ConcordApplicationException(Response.status(Status.REQUEST_TIMEOUT).entity(r).build());
-                }
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                f.cancel(false);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                f.cancel(false);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                // do nothing
+            }
+        });
+
+        f.whenComplete((status, e) -> {
+            if (f.isCancelled()) {
+                return;
             }
 
             try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) { // NOSONAR
-                throw new ConcordApplicationException(Response.status(Status.INTERNAL_SERVER_ERROR)
-                        .entity("Request was interrputed")
-                        .build());
+                ProcessEntry entry = get(instanceId);
+
+                ProcessStatus s = entry.status();
+                if (!ProcessCompletionWatcher.FINAL_STATUSES.contains(s)) {
+                    log.warn("waitForCompletion ['{}', {}] -> timeout, last status: {}", instanceId, timeout, s);
+                    throw new ConcordApplicationException(Response.status(Status.REQUEST_TIMEOUT).entity(entry).build());
+                }
+
+                asyncResponse.resume(entry);
+            } catch (Exception ex) {
+                asyncResponse.resume(ex);
             }
-        }
+        });
     }
 
     /**
@@ -787,8 +851,8 @@ public class ProcessResource implements Resource {
 
         ProcessKey processKey = assertKey(instanceId);
 
-        Integer start = null;
-        Integer end = null;
+        Long start = null;
+        Long end = null;
 
         if (range != null && !range.trim().isEmpty()) {
             if (!range.startsWith("bytes=")) {
@@ -798,14 +862,14 @@ public class ProcessResource implements Resource {
             String[] as = range.substring("bytes=".length()).split("-");
             if (as.length > 0) {
                 try {
-                    start = Integer.parseInt(as[0]);
+                    start = Long.parseLong(as[0]);
                 } catch (NumberFormatException ignored) {
                 }
             }
 
             if (as.length > 1) {
                 try {
-                    end = Integer.parseInt(as[1]);
+                    end = Long.parseLong(as[1]);
                 } catch (NumberFormatException ignored) {
                 }
             }
@@ -816,18 +880,18 @@ public class ProcessResource implements Resource {
         // TODO check if the instance actually exists
 
         if (data.isEmpty()) {
-            int actualStart = start != null ? start : 0;
-            int actualEnd = end != null ? end : actualStart;
+            long actualStart = start != null ? start : 0;
+            long actualEnd = end != null ? end : actualStart;
             return Response.ok()
                     .header("Content-Range", "bytes " + actualStart + "-" + actualEnd + "/" + l.getSize())
                     .build();
         }
 
         ProcessLogChunk first = data.get(0);
-        int actualStart = first.getStart();
+        long actualStart = first.getStart();
 
         ProcessLogChunk last = data.get(data.size() - 1);
-        int actualEnd = last.getStart() + last.getData().length;
+        long actualEnd = last.getStart() + last.getData().length;
 
         StreamingOutput out = output -> {
             for (ProcessLogChunk e : data) {
@@ -841,21 +905,82 @@ public class ProcessResource implements Resource {
     }
 
     /**
-     * Appends a process' log.
+     * Streams a process' log as server-sent events. Each event's data is
+     * a base64-encoded chunk of the log, the event's ID is the log offset
+     * which can be used to resume the stream.
+     * <p>
+     * The request is suspended and the events are written asynchronously
+     * by {@link LogTailManager}.
+     *
+     * @param instanceId
+     * @param offset
+     * @param lastEventId
+     * @param request
+     * @param asyncResponse
+     */
+    @GET
+    @ApiOperation(value = "Stream the log")
+    @javax.ws.rs.Path("/{id}/log/tail")
+    @Produces("text/event-stream")
+    public void tailLog(@ApiParam @PathParam("id") UUID instanceId,
+                        @ApiParam @QueryParam("offset") Long offset,
+                        @HeaderParam("Last-Event-ID") String lastEventId,
+                        @Context HttpServletRequest request,
+                        @Suspended AsyncResponse asyncResponse) throws IOException {
+
+        ProcessKey processKey = assertKey(instanceId);
+
+        long start = 0;
+        if (offset != null) {
+            start = offset;
+        } else if (lastEventId != null && !lastEventId.trim().isEmpty()) {
+            try {
+                start = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                throw new ConcordApplicationException("Invalid Last-Event-ID header: " + lastEventId, Status.BAD_REQUEST);
+            }
+        }
+
+        if (start < 0) {
+            throw new ConcordApplicationException("Invalid offset: " + start, Status.BAD_REQUEST);
+        }
+
+        // the request is already in the async mode, the response is written
+        // directly, bypassing the AsyncResponse
+        logTailManager.tail(processKey, start, request.getAsyncContext());
+    }
+
+    /**
+     * Appends a process' log. The data can be compressed using gzip
+     * ({@code Content-Encoding: gzip}). Compressed data larger than
+     * {@code process.logMaxAppendSize} after decompression is rejected
+     * with 413.
      *
      * @param instanceId
+     * @param contentEncoding
      * @param data
      */
     @POST
     @javax.ws.rs.Path("{id}/log")
     @Consumes(MediaType.APPLICATION_OCTET_STREAM)
     @WithTimer
-    public void appendLog(@PathParam("id") UUID instanceId, InputStream data) {
+    public void appendLog(@PathParam("id") UUID instanceId,
+                          @HeaderParam(HttpHeaders.CONTENT_ENCODING) String contentEncoding,
+                          InputStream data) {
+
         ProcessKey processKey = processKeyCache.get(instanceId);
 
-        try {
-            byte[] ab = ByteStreams.toByteArray(data);
-            logsDao.append(processKey, ab);
+        boolean compressed = "gzip".equalsIgnoreCase(contentEncoding);
+        long maxSize = logCfg.getMaxAppendSize();
+
+        try (InputStream in = compressed ? ByteStreams.limit(new GZIPInputStream(data), maxSize + 1) : data) {
+            byte[] ab = ByteStreams.toByteArray(in);
+            if (compressed && ab.length > maxSize) {
+                log.warn("appendLog ['{}'] -> the decompressed data exceeds {} bytes, rejected", instanceId, maxSize);
+                throw new ConcordApplicationException("The decompressed log data exceeds " + maxSize + " bytes", Status.REQUEST_ENTITY_TOO_LARGE);
+            }
+
+            logManager.log(processKey, ab);
 
             logBytesAppended.inc(ab.length);
         } catch (IOException e) {
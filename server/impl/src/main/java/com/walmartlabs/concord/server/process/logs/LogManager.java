@@ -38,10 +38,12 @@ public class LogManager {
     private static final Logger log = LoggerFactory.getLogger(LogManager.class);
 
     private final ProcessLogsDao logsDao;
+    private final LogTailManager tailManager;
 
     @Inject
-    public LogManager(ProcessLogsDao logsDao) {
+    public LogManager(ProcessLogsDao logsDao, LogTailManager tailManager) {
         this.logsDao = logsDao;
+        this.tailManager = tailManager;
     }
 
     public void info(ProcessKey processKey, String log, Object... args) {
@@ -61,7 +63,8 @@ public class LogManager {
     }
 
     public void log(ProcessKey processKey, byte[] msg) {
-        logsDao.append(processKey, msg);
+        long offset = logsDao.append(processKey, msg);
+        tailManager.onAppend(processKey, offset, msg);
     }
 
     private void log(ProcessKey processKey, LogLevel level, String msg, Object... args) {
@@ -0,0 +1,598 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.walmartlabs.concord.server.cfg.ProcessLogConfiguration;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams process logs to the clients as
+ * <a href="https://www.w3.org/TR/eventsource/">server-sent events</a>.
+ * <p>
+ * Data appended on this server node is delivered to the clients as soon as
+ * it is stored. Data appended on other server nodes and the process status are
+ * checked by a single poller which feeds all clients of the process. If a client
+ * falls behind, the missing data is read from the DB.
+ * <p>
+ * The clients don't hold a request thread while waiting for the data: the
+ * events are written by a small pool of writer threads using non-blocking
+ * I/O, a slow client doesn't delay the others.
+ */
+@Named
+@Singleton
+public class LogTailManager {
+
+    private static final Logger log = LoggerFactory.getLogger(LogTailManager.class);
+
+    private static final Set<ProcessStatus> FINAL_STATUSES = ImmutableSet.of(
+            ProcessStatus.FINISHED,
+            ProcessStatus.FAILED,
+            ProcessStatus.CANCELLED,
+            ProcessStatus.TIMED_OUT);
+
+    /**
+     * Max number of bytes fetched from the DB at once.
+     */
+    private static final long READ_WINDOW = 1024 * 1024;
+
+    /**
+     * Max number of process IDs in a single status query.
+     */
+    private static final int POLL_BATCH_SIZE = 1000;
+
+    /**
+     * Number of threads writing the events to the clients.
+     */
+    private static final int WRITER_THREADS = 4;
+
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ProcessLogsDao logsDao;
+    private final ProcessQueueDao queueDao;
+    private final ProcessLogConfiguration cfg;
+    private final ExecutorService writer;
+
+    private final Map<UUID, Tail> tails = new ConcurrentHashMap<>();
+
+    @Inject
+    public LogTailManager(ProcessLogsDao logsDao, ProcessQueueDao queueDao, ProcessLogConfiguration cfg) {
+        this.logsDao = logsDao;
+        this.queueDao = queueDao;
+        this.cfg = cfg;
+
+        AtomicInteger writerCount = new AtomicInteger();
+        this.writer = Executors.newFixedThreadPool(WRITER_THREADS, r -> {
+            Thread t = new Thread(r, "log-tail-writer-" + writerCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "log-tail-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(this::poll, cfg.getTailPollInterval(), cfg.getTailPollInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Delivers the appended data to the clients connected to this server node.
+     *
+     * @param offset the offset of the data in the process log
+     */
+    public void onAppend(ProcessKey processKey, long offset, byte[] data) {
+        Tail t = tails.get(processKey.getInstanceId());
+        if (t == null) {
+            return;
+        }
+
+        offer(t, new ProcessLogChunk(offset, data));
+    }
+
+    /**
+     * Streams the process log starting from the specified offset as
+     * server-sent events. Each event contains the log data encoded using base64
+     * and, as the event ID, the offset of the next byte. The offset can be used
+     * to resume the stream.
+     * <p>
+     * Returns immediately, the events are written asynchronously. The request
+     * is completed when the process reaches a final status or the client
+     * disconnects.
+     *
+     * @param ctx the context of the client's request, must be started already
+     */
+    public void tail(ProcessKey processKey, long offset, AsyncContext ctx) throws IOException {
+        // heartbeats keep the connection alive, the stream ends when the process finishes
+        ctx.setTimeout(0);
+
+        HttpServletResponse resp = (HttpServletResponse) ctx.getResponse();
+        resp.setContentType("text/event-stream");
+        resp.setHeader("Cache-Control", "no-cache");
+
+        // subscribe before reading the existing data, otherwise
+        // the chunks appended in between can be missed
+        Subscription s = subscribe(processKey, offset, ctx, resp.getOutputStream());
+
+        ctx.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                close(s);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                close(s);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                close(s);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                // do nothing
+            }
+        });
+
+        // the container calls onWritePossible right away, the existing data is read then
+        s.out.setWriteListener(new WriteListener() {
+            @Override
+            public void onWritePossible() {
+                schedule(s);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                log.debug("tail ['{}'] -> client error: {}", processKey, t.getMessage());
+                close(s);
+            }
+        });
+    }
+
+    /**
+     * Checks the statuses of all tailed processes and reads the data appended
+     * on other server nodes. Called periodically by the poller thread.
+     */
+    private void poll() {
+        try {
+            for (List<UUID> batch : Iterables.partition(new ArrayList<>(tails.keySet()), POLL_BATCH_SIZE)) {
+                Map<UUID, ProcessStatus> statuses = queueDao.getStatuses(batch);
+
+                for (UUID id : batch) {
+                    Tail t = tails.get(id);
+                    if (t == null) {
+                        continue;
+                    }
+
+                    ProcessStatus status = statuses.get(id);
+                    poll(t);
+
+                    if (status == null || FINAL_STATUSES.contains(status)) {
+                        t.finish(status);
+                    }
+
+                    // wakes up the idle clients to send the heartbeats
+                    // and the clients of the finished processes to end the stream
+                    for (Subscription s : t.subscriptions) {
+                        s.heartbeat();
+                        schedule(s);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("poll -> error: {}", e.getMessage());
+        }
+    }
+
+    private void poll(Tail t) {
+        long pos = t.pos.get();
+        if (pos < 0) {
+            // no subscriber has finished its initial read yet
+            return;
+        }
+
+        while (true) {
+            ProcessLog l = logsDao.get(t.processKey, pos, pos + READ_WINDOW);
+
+            long next = pos;
+            for (ProcessLogChunk chunk : l.getChunks()) {
+                next = Math.max(next, chunk.getStart() + chunk.getData().length);
+                offer(t, chunk);
+            }
+
+            if (next == pos) {
+                return;
+            }
+
+            pos = next;
+        }
+    }
+
+    private void offer(Tail t, ProcessLogChunk chunk) {
+        t.advance(chunk.getStart() + chunk.getData().length);
+
+        for (Subscription s : t.subscriptions) {
+            s.offer(chunk);
+            schedule(s);
+        }
+    }
+
+    /**
+     * Runs {@link #drain(Subscription)} on one of the writer threads. Only one
+     * thread at the time works on a subscription, if the subscription is
+     * already running it is drained again after the current run.
+     */
+    private void schedule(Subscription s) {
+        synchronized (s) {
+            if (s.closed) {
+                return;
+            }
+
+            if (s.running) {
+                s.rerun = true;
+                return;
+            }
+
+            s.running = true;
+        }
+
+        writer.execute(() -> run(s));
+    }
+
+    private void run(Subscription s) {
+        while (true) {
+            try {
+                drain(s);
+            } catch (Exception e) {
+                log.debug("tail ['{}'] -> client error: {}", s.tail.processKey, e.getMessage());
+                close(s);
+                return;
+            }
+
+            synchronized (s) {
+                if (!s.rerun || s.closed) {
+                    s.running = false;
+                    return;
+                }
+
+                s.rerun = false;
+            }
+        }
+    }
+
+    /**
+     * Writes the events while the client can accept them without blocking.
+     * Returns when there's nothing to write or when the client isn't ready,
+     * in the latter case the container calls {@link WriteListener#onWritePossible()}
+     * once the client is ready again.
+     */
+    private void drain(Subscription s) throws IOException {
+        while (s.out.isReady()) {
+            if (s.ended) {
+                s.ctx.complete();
+                return;
+            }
+
+            ProcessLogChunk chunk = next(s);
+            if (chunk != null) {
+                byte[] event = event(s.pos, chunk);
+                if (event != null) {
+                    s.out.write(event);
+                    s.pos = chunk.getStart() + chunk.getData().length;
+                    s.flush = true;
+
+                    // the client isn't idle, no need for a heartbeat
+                    s.takeHeartbeat();
+                }
+                continue;
+            }
+
+            if (s.tail.finished) {
+                if (!s.finalRead) {
+                    // the data appended right before the process finished
+                    s.finalRead = true;
+                    s.behind = true;
+                    continue;
+                }
+
+                s.out.write(endEvent(s.tail.finalStatus));
+                s.ended = true;
+                continue;
+            }
+
+            if (s.takeHeartbeat()) {
+                s.out.write(HEARTBEAT);
+                s.flush = true;
+                continue;
+            }
+
+            if (s.flush) {
+                s.flush = false;
+                s.out.flush();
+                continue;
+            }
+
+            return;
+        }
+    }
+
+    /**
+     * Returns the next chunk to send or {@code null} if the client has
+     * received all available data. Reads the data from the DB if the client
+     * has fallen behind.
+     */
+    private ProcessLogChunk next(Subscription s) {
+        while (true) {
+            ProcessLogChunk chunk = s.backlog.poll();
+            if (chunk != null) {
+                return chunk;
+            }
+
+            if (s.behind) {
+                if (!read(s)) {
+                    // caught up, the rest comes from the queue
+                    s.behind = false;
+                    s.tail.advance(s.pos);
+                }
+                continue;
+            }
+
+            if (s.takeDropped()) {
+                // the queued chunks are read from the DB along with the dropped ones
+                s.behind = true;
+                continue;
+            }
+
+            chunk = s.poll();
+            if (chunk == null) {
+                return null;
+            }
+
+            if (chunk.getStart() > s.pos) {
+                // some chunks were dropped
+                s.behind = true;
+                continue;
+            }
+
+            return chunk;
+        }
+    }
+
+    /**
+     * Reads the next window of the process log into the subscription's backlog.
+     *
+     * @return {@code false} if there's no new data
+     */
+    private boolean read(Subscription s) {
+        ProcessLog l = logsDao.get(s.tail.processKey, s.pos, s.pos + READ_WINDOW);
+
+        boolean found = false;
+        for (ProcessLogChunk chunk : l.getChunks()) {
+            if (chunk.getStart() + chunk.getData().length > s.pos) {
+                s.backlog.add(chunk);
+                found = true;
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Encodes the part of the chunk after {@code pos}. The data is sent as is,
+     * encoded using base64: log chunks can split multibyte characters and
+     * contain CR characters which can't be sent in server-sent events.
+     *
+     * @return the event or {@code null} if the chunk has no data after {@code pos}
+     */
+    private static byte[] event(long pos, ProcessLogChunk chunk) {
+        byte[] data = chunk.getData();
+        long end = chunk.getStart() + data.length;
+        if (end <= pos) {
+            return null;
+        }
+
+        int from = (int) (pos - chunk.getStart());
+        ByteBuffer encoded = Base64.getEncoder().encode(ByteBuffer.wrap(data, from, data.length - from));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.remaining() + 32);
+        byte[] header = ("id: " + end + "\ndata: ").getBytes(StandardCharsets.UTF_8);
+        out.write(header, 0, header.length);
+        out.write(encoded.array(), encoded.arrayOffset() + encoded.position(), encoded.remaining());
+        out.write('\n');
+        out.write('\n');
+        return out.toByteArray();
+    }
+
+    private static byte[] endEvent(ProcessStatus status) {
+        String s = "event: end\ndata: " + (status != null ? status : "") + "\n\n";
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Subscription subscribe(ProcessKey processKey, long offset, AsyncContext ctx, ServletOutputStream out) {
+        Subscription[] result = new Subscription[1];
+        tails.compute(processKey.getInstanceId(), (k, v) -> {
+            if (v == null) {
+                v = new Tail(processKey);
+            }
+            result[0] = new Subscription(v, offset, cfg.getTailQueueSize(), ctx, out);
+            v.subscriptions.add(result[0]);
+            return v;
+        });
+        return result[0];
+    }
+
+    private void close(Subscription s) {
+        synchronized (s) {
+            if (s.closed) {
+                return;
+            }
+            s.closed = true;
+        }
+
+        tails.computeIfPresent(s.tail.processKey.getInstanceId(), (k, v) -> {
+            v.subscriptions.remove(s);
+            return v.subscriptions.isEmpty() ? null : v;
+        });
+
+        try {
+            s.ctx.complete();
+        } catch (IllegalStateException e) {
+            // already completed
+        }
+
+        log.debug("tail ['{}'] -> done", s.tail.processKey);
+    }
+
+    /**
+     * All subscriptions of a single process.
+     */
+    private static final class Tail {
+
+        private final ProcessKey processKey;
+        private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+        /**
+         * Offset of the next byte to be offered to the subscribers.
+         */
+        private final AtomicLong pos = new AtomicLong(-1);
+
+        private volatile boolean finished;
+        private volatile ProcessStatus finalStatus;
+
+        private Tail(ProcessKey processKey) {
+            this.processKey = processKey;
+        }
+
+        private void advance(long offset) {
+            pos.accumulateAndGet(offset, Math::max);
+        }
+
+        private void finish(ProcessStatus status) {
+            this.finalStatus = status;
+            this.finished = true;
+        }
+    }
+
+    /**
+     * A single client. The fields without synchronization are used only
+     * by the writer thread which is currently running the subscription.
+     */
+    private static final class Subscription {
+
+        private final Tail tail;
+        private final int queueSize;
+        private final AsyncContext ctx;
+        private final ServletOutputStream out;
+
+        // guarded by "this"
+        private final Deque<ProcessLogChunk> queue = new ArrayDeque<>();
+        private boolean dropped;
+        private boolean heartbeat;
+        private boolean running;
+        private boolean rerun;
+        private boolean closed;
+
+        /**
+         * Offset of the next byte to be sent to the client.
+         */
+        private long pos;
+
+        /**
+         * The data read from the DB, sent before the queued chunks.
+         */
+        private final Deque<ProcessLogChunk> backlog = new ArrayDeque<>();
+
+        private boolean behind = true;
+        private boolean finalRead;
+        private boolean flush;
+        private boolean ended;
+
+        private Subscription(Tail tail, long pos, int queueSize, AsyncContext ctx, ServletOutputStream out) {
+            this.tail = tail;
+            this.pos = pos;
+            this.queueSize = queueSize;
+            this.ctx = ctx;
+            this.out = out;
+        }
+
+        private synchronized void offer(ProcessLogChunk chunk) {
+            if (queue.size() >= queueSize) {
+                // the chunk is dropped and later read from the DB
+                dropped = true;
+                return;
+            }
+
+            queue.add(chunk);
+        }
+
+        private synchronized ProcessLogChunk poll() {
+            return queue.poll();
+        }
+
+        private synchronized boolean takeDropped() {
+            boolean result = dropped;
+            if (dropped) {
+                dropped = false;
+                queue.clear();
+            }
+            return result;
+        }
+
+        private synchronized void heartbeat() {
+            heartbeat = true;
+        }
+
+        private synchronized boolean takeHeartbeat() {
+            boolean result = heartbeat;
+            heartbeat = false;
+            return result;
+        }
+    }
+}
@@ -22,68 +22,268 @@ package com.walmartlabs.concord.server.process.logs;
 
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.server.cfg.ProcessLogConfiguration;
+import com.walmartlabs.concord.server.jooq.tables.records.ProcessLogSizesRecord;
 import com.walmartlabs.concord.server.process.ProcessKey;
-import org.jooq.Configuration;
-import org.jooq.DSLContext;
-import org.jooq.Record2;
+import org.jooq.*;
 import org.jooq.impl.DSL;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.Serializable;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
 import static com.walmartlabs.concord.server.jooq.Routines.processLogLastNBytes2;
-import static com.walmartlabs.concord.server.jooq.Routines.processLogNextRange2;
-import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOGS;
-import static com.walmartlabs.concord.server.jooq.Tables.V_PROCESS_LOGS_SIZE;
+import static com.walmartlabs.concord.server.jooq.Tables.*;
 import static org.jooq.impl.DSL.*;
 
+/**
+ * Process logs are stored as a sequence of segments in {@code PROCESS_LOG_DATA}.
+ * Each append is inserted as a small segment at the offset taken from
+ * the process' {@code PROCESS_LOG_SIZES} counter. Once enough data is
+ * accumulated, the "open" small segments are rolled into a single segment.
+ * Original chunk boundaries are preserved in {@code CHUNK_OFFSETS}, so
+ * the ranges returned by {@link #get(ProcessKey, Long, Long)} are the same
+ * as if each append was stored separately.
+ * <p>
+ * Logs created before the segmented storage was introduced remain in
+ * {@code PROCESS_LOGS} and are moved on the first append.
+ */
 @Named
 public class ProcessLogsDao extends AbstractDao {
 
+    private static final String ROLL_SEGMENTS_SQL = "with s as (" +
+            " delete from PROCESS_LOG_DATA" +
+            " where INSTANCE_ID = ? and INSTANCE_CREATED_AT = ? and SEGMENT_START >= ?" +
+            " returning SEGMENT_START, SEGMENT_END, SEGMENT_DATA)" +
+            " insert into PROCESS_LOG_DATA (INSTANCE_ID, INSTANCE_CREATED_AT, SEGMENT_START, SEGMENT_END, SEGMENT_DATA, CHUNK_OFFSETS)" +
+            " select ?, ?, min(SEGMENT_START), max(SEGMENT_END)," +
+            " string_agg(SEGMENT_DATA, ''::bytea order by SEGMENT_START)," +
+            " array_agg((SEGMENT_START - ?)::int order by SEGMENT_START)" +
+            " from s having count(*) > 0";
+
+    private static final String MOVE_LEGACY_CHUNKS_SQL = "insert into PROCESS_LOG_DATA (INSTANCE_ID, INSTANCE_CREATED_AT, SEGMENT_START, SEGMENT_END, SEGMENT_DATA, CHUNK_OFFSETS)" +
+            " select INSTANCE_ID, INSTANCE_CREATED_AT, lower(CHUNK_RANGE), upper(CHUNK_RANGE), CHUNK_DATA, array[0]" +
+            " from PROCESS_LOGS" +
+            " where INSTANCE_ID = ? and INSTANCE_CREATED_AT = ?";
+
+    private static final Integer[] SINGLE_CHUNK = {0};
+
+    private final ProcessLogConfiguration logCfg;
+
     @Inject
-    public ProcessLogsDao(@MainDB Configuration cfg) {
+    public ProcessLogsDao(@MainDB Configuration cfg, ProcessLogConfiguration logCfg) {
         super(cfg);
+        this.logCfg = logCfg;
     }
 
-    public void append(ProcessKey processKey, byte[] data) {
+    /**
+     * Appends the data to the process log.
+     *
+     * @return the offset of the appended data
+     */
+    public long append(ProcessKey processKey, byte[] data) {
         UUID instanceId = processKey.getInstanceId();
         Timestamp createdAt = processKey.getCreatedAt();
 
-        tx(tx -> tx.insertInto(PROCESS_LOGS)
-                .columns(PROCESS_LOGS.INSTANCE_ID,
-                        PROCESS_LOGS.INSTANCE_CREATED_AT,
-                        PROCESS_LOGS.CHUNK_RANGE,
-                        PROCESS_LOGS.CHUNK_DATA)
-                .values(value(instanceId),
-                        value(createdAt),
-                        processLogNextRange2(instanceId, createdAt, data.length),
-                        value(data))
-                .execute());
+        return txResult(tx -> {
+            ProcessLogSizesRecord r = nextSize(tx, instanceId, createdAt, data.length);
+            if (r == null) {
+                initSize(tx, instanceId, createdAt);
+                r = nextSize(tx, instanceId, createdAt, data.length);
+            }
+
+            long size = r.getLogSize();
+            long openSegmentStart = r.getOpenSegmentStart();
+
+            tx.insertInto(PROCESS_LOG_DATA)
+                    .columns(PROCESS_LOG_DATA.INSTANCE_ID,
+                            PROCESS_LOG_DATA.INSTANCE_CREATED_AT,
+                            PROCESS_LOG_DATA.SEGMENT_START,
+                            PROCESS_LOG_DATA.SEGMENT_END,
+                            PROCESS_LOG_DATA.SEGMENT_DATA,
+                            PROCESS_LOG_DATA.CHUNK_OFFSETS)
+                    .values(instanceId, createdAt, size - data.length, size, data, SINGLE_CHUNK)
+                    .execute();
+
+            if (size - openSegmentStart >= logCfg.getSegmentSize()) {
+                rollSegments(tx, instanceId, createdAt, openSegmentStart, size);
+            }
+
+            return size - data.length;
+        });
     }
 
-    public ProcessLog get(ProcessKey processKey, Integer start, Integer end) {
+    public ProcessLog get(ProcessKey processKey, Long start, Long end) {
         UUID instanceId = processKey.getInstanceId();
         Timestamp createdAt = processKey.getCreatedAt();
 
         try (DSLContext tx = DSL.using(cfg)) {
-            List<ProcessLogChunk> chunks = getChunks(tx, processKey, start, end);
+            Long size = tx.select(PROCESS_LOG_SIZES.LOG_SIZE)
+                    .from(PROCESS_LOG_SIZES)
+                    .where(PROCESS_LOG_SIZES.INSTANCE_ID.eq(instanceId)
+                            .and(PROCESS_LOG_SIZES.INSTANCE_CREATED_AT.eq(createdAt)))
+                    .fetchOne(PROCESS_LOG_SIZES.LOG_SIZE);
+
+            if (size == null) {
+                return getLegacy(tx, processKey, start, end);
+            }
+
+            long lo;
+            long hi;
+            if (start == null && end == null) {
+                // entire file
+                lo = 0;
+                hi = Long.MAX_VALUE;
+            } else if (start != null) {
+                // [start, end)
+                lo = start;
+                hi = end != null ? end : Long.MAX_VALUE;
+            } else {
+                // [size - end, size)
+                lo = size - end;
+                hi = size;
+            }
+
+            if (lo >= hi) {
+                return new ProcessLog(size, new ArrayList<>());
+            }
 
-            int size = tx.select(V_PROCESS_LOGS_SIZE.SIZE)
-                    .from(V_PROCESS_LOGS_SIZE)
-                    .where(V_PROCESS_LOGS_SIZE.INSTANCE_ID.eq(instanceId)
-                            .and(V_PROCESS_LOGS_SIZE.INSTANCE_CREATED_AT.eq(createdAt)))
-                    .fetchOptional(V_PROCESS_LOGS_SIZE.SIZE)
-                    .orElse(0);
+            List<ProcessLogChunk> chunks = new ArrayList<>();
+            tx.select(PROCESS_LOG_DATA.SEGMENT_START, PROCESS_LOG_DATA.SEGMENT_DATA, PROCESS_LOG_DATA.CHUNK_OFFSETS)
+                    .from(PROCESS_LOG_DATA)
+                    .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
+                            .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt))
+                            .and(PROCESS_LOG_DATA.SEGMENT_START.lessThan(hi))
+                            .and(PROCESS_LOG_DATA.SEGMENT_END.greaterThan(lo)))
+                    .orderBy(PROCESS_LOG_DATA.SEGMENT_START)
+                    .fetch()
+                    .forEach(r -> {
+                        ProcessLogChunk c = slice(r.value1(), r.value2(), r.value3(), lo, hi);
+                        if (c != null) {
+                            chunks.add(c);
+                        }
+                    });
 
             return new ProcessLog(size, chunks);
         }
     }
 
-    private List<ProcessLogChunk> getChunks(DSLContext tx, ProcessKey processKey, Integer start, Integer end) {
+    private static ProcessLogSizesRecord nextSize(DSLContext tx, UUID instanceId, Timestamp createdAt, int length) {
+        return tx.update(PROCESS_LOG_SIZES)
+                .set(PROCESS_LOG_SIZES.LOG_SIZE, PROCESS_LOG_SIZES.LOG_SIZE.plus(length))
+                .where(PROCESS_LOG_SIZES.INSTANCE_ID.eq(instanceId)
+                        .and(PROCESS_LOG_SIZES.INSTANCE_CREATED_AT.eq(createdAt)))
+                .returning(PROCESS_LOG_SIZES.LOG_SIZE, PROCESS_LOG_SIZES.OPEN_SEGMENT_START)
+                .fetchOne();
+    }
+
+    /**
+     * Creates the log size counter of a process. If the process has any
+     * data in the legacy {@code PROCESS_LOGS} table, the data is moved
+     * into {@code PROCESS_LOG_DATA}.
+     */
+    private static void initSize(DSLContext tx, UUID instanceId, Timestamp createdAt) {
+        int inserted = tx.insertInto(PROCESS_LOG_SIZES)
+                .columns(PROCESS_LOG_SIZES.INSTANCE_ID,
+                        PROCESS_LOG_SIZES.INSTANCE_CREATED_AT,
+                        PROCESS_LOG_SIZES.LOG_SIZE,
+                        PROCESS_LOG_SIZES.OPEN_SEGMENT_START)
+                .values(instanceId, createdAt, 0L, 0L)
+                .onConflictDoNothing()
+                .execute();
+
+        if (inserted == 0) {
+            // created by a concurrent append
+            return;
+        }
+
+        int moved = tx.execute(MOVE_LEGACY_CHUNKS_SQL, instanceId, createdAt);
+        if (moved == 0) {
+            return;
+        }
+
+        tx.deleteFrom(PROCESS_LOGS)
+                .where(PROCESS_LOGS.INSTANCE_ID.eq(instanceId)
+                        .and(PROCESS_LOGS.INSTANCE_CREATED_AT.eq(createdAt)))
+                .execute();
+
+        Field<Long> legacySize = tx.select(coalesce(max(PROCESS_LOG_DATA.SEGMENT_END), 0L))
+                .from(PROCESS_LOG_DATA)
+                .where(PROCESS_LOG_DATA.INSTANCE_ID.eq(instanceId)
+                        .and(PROCESS_LOG_DATA.INSTANCE_CREATED_AT.eq(createdAt)))
+                .asField();
+
+        tx.update(PROCESS_LOG_SIZES)
+                .set(PROCESS_LOG_SIZES.LOG_SIZE, legacySize)
+                .set(PROCESS_LOG_SIZES.OPEN_SEGMENT_START, legacySize)
+                .where(PROCESS_LOG_SIZES.INSTANCE_ID.eq(instanceId)
+                        .and(PROCESS_LOG_SIZES.INSTANCE_CREATED_AT.eq(createdAt)))
+                .execute();
+    }
+
+    private static void rollSegments(DSLContext tx, UUID instanceId, Timestamp createdAt, long openSegmentStart, long size) {
+        tx.execute(ROLL_SEGMENTS_SQL, instanceId, createdAt, openSegmentStart, instanceId, createdAt, openSegmentStart);
+
+        tx.update(PROCESS_LOG_SIZES)
+                .set(PROCESS_LOG_SIZES.OPEN_SEGMENT_START, size)
+                .where(PROCESS_LOG_SIZES.INSTANCE_ID.eq(instanceId)
+                        .and(PROCESS_LOG_SIZES.INSTANCE_CREATED_AT.eq(createdAt)))
+                .execute();
+    }
+
+    /**
+     * Returns the part of the segment which consists of the segment's
+     * chunks overlapping with the specified range.
+     */
+    private static ProcessLogChunk slice(long segmentStart, byte[] data, Integer[] offsets, long lo, long hi) {
+        int from = -1;
+        int to = -1;
+
+        for (int i = 0; i < offsets.length; i++) {
+            long chunkStart = segmentStart + offsets[i];
+            long chunkEnd = segmentStart + (i + 1 < offsets.length ? offsets[i + 1] : data.length);
+
+            if (chunkStart < hi && chunkEnd > lo) {
+                if (from < 0) {
+                    from = offsets[i];
+                }
+                to = (int) (chunkEnd - segmentStart);
+            }
+        }
+
+        if (from < 0) {
+            return null;
+        }
+
+        if (from == 0 && to == data.length) {
+            return new ProcessLogChunk(segmentStart, data);
+        }
+
+        return new ProcessLogChunk(segmentStart + from, Arrays.copyOfRange(data, from, to));
+    }
+
+    private static ProcessLog getLegacy(DSLContext tx, ProcessKey processKey, Long start, Long end) {
+        UUID instanceId = processKey.getInstanceId();
+        Timestamp createdAt = processKey.getCreatedAt();
+
+        List<ProcessLogChunk> chunks = getLegacyChunks(tx, processKey, toInt(start), toInt(end));
+
+        int size = tx.select(V_PROCESS_LOGS_SIZE.SIZE)
+                .from(V_PROCESS_LOGS_SIZE)
+                .where(V_PROCESS_LOGS_SIZE.INSTANCE_ID.eq(instanceId)
+                        .and(V_PROCESS_LOGS_SIZE.INSTANCE_CREATED_AT.eq(createdAt)))
+                .fetchOptional(V_PROCESS_LOGS_SIZE.SIZE)
+                .orElse(0);
+
+        return new ProcessLog(size, chunks);
+    }
+
+    private static List<ProcessLogChunk> getLegacyChunks(DSLContext tx, ProcessKey processKey, Integer start, Integer end) {
         UUID instanceId = processKey.getInstanceId();
         Timestamp createdAt = processKey.getCreatedAt();
 
@@ -123,21 +323,29 @@ public class ProcessLogsDao extends AbstractDao {
         }
     }
 
+    private static Integer toInt(Long l) {
+        if (l == null) {
+            return null;
+        }
+        // legacy logs are limited by the int4range type
+        return (int) Math.min(l, Integer.MAX_VALUE);
+    }
+
     private static ProcessLogChunk toChunk(Record2<Object, byte[]> r) {
         return new ProcessLogChunk((Integer) r.value1(), r.value2());
     }
 
     public static final class ProcessLogChunk implements Serializable {
 
-        private final int start;
+        private final long start;
         private final byte[] data;
 
-        public ProcessLogChunk(int start, byte[] data) { // NOSONAR
+        public ProcessLogChunk(long start, byte[] data) { // NOSONAR
             this.start = start;
             this.data = data;
         }
 
-        public int getStart() {
+        public long getStart() {
             return start;
         }
 
@@ -148,15 +356,15 @@ public class ProcessLogsDao extends AbstractDao {
 
     public static final class ProcessLog implements Serializable {
 
-        private final int size;
+        private final long size;
         private final List<ProcessLogChunk> chunks;
 
-        public ProcessLog(int size, List<ProcessLogChunk> chunks) {
+        public ProcessLog(long size, List<ProcessLogChunk> chunks) {
             this.size = size;
             this.chunks = chunks;
         }
 
-        public int getSize() {
+        public long getSize() {
             return size;
         }
 
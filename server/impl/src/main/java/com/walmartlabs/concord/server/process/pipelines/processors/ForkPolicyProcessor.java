@@ -23,9 +23,9 @@ package com.walmartlabs.concord.server.process.pipelines.processors;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.policyengine.CheckResult;
 import com.walmartlabs.concord.policyengine.ForkDepthRule;
-import com.walmartlabs.concord.policyengine.PolicyEngine;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import com.walmartlabs.concord.server.org.policy.PolicyRules;
+import com.walmartlabs.concord.server.policy.PolicyManager;
 import com.walmartlabs.concord.server.process.Payload;
 import com.walmartlabs.concord.server.process.ProcessException;
 import com.walmartlabs.concord.server.process.ProcessKey;
@@ -53,11 +53,13 @@ public class ForkPolicyProcessor implements PayloadProcessor {
 
     private final LogManager logManager;
     private final ForkDepthDao forkDepthDao;
+    private final PolicyManager policyManager;
 
     @Inject
-    public ForkPolicyProcessor(LogManager logManager, ForkDepthDao forkDepthDao) {
+    public ForkPolicyProcessor(LogManager logManager, ForkDepthDao forkDepthDao, PolicyManager policyManager) {
         this.logManager = logManager;
         this.forkDepthDao = forkDepthDao;
+        this.policyManager = policyManager;
     }
 
     @Override
@@ -74,7 +76,7 @@ public class ForkPolicyProcessor implements PayloadProcessor {
 
         CheckResult<ForkDepthRule, Integer> result;
         try {
-            result = new PolicyEngine(policy.rules())
+            result = policyManager.get(policy)
                     .getForkDepthPolicy()
                     .check(() -> forkDepthDao.getDepth(parentInstanceId));
         } catch (Exception e) {
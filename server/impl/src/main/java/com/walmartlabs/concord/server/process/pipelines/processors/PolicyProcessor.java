@@ -20,7 +20,9 @@ package com.walmartlabs.concord.server.process.pipelines.processors;
  * =====
  */
 
+import com.walmartlabs.concord.policyengine.PolicyEngine;
 import com.walmartlabs.concord.server.org.policy.PolicyRules;
+import com.walmartlabs.concord.server.policy.PolicyManager;
 import com.walmartlabs.concord.server.process.Payload;
 import com.walmartlabs.concord.server.process.ProcessException;
 import com.walmartlabs.concord.server.process.ProcessKey;
@@ -29,7 +31,6 @@ import com.walmartlabs.concord.server.process.pipelines.processors.policy.Policy
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -39,11 +40,13 @@ import java.util.Set;
 public class PolicyProcessor implements PayloadProcessor {
 
     private final LogManager logManager;
+    private final PolicyManager policyManager;
     private final Set<PolicyApplier> appliers;
 
     @Inject
-    public PolicyProcessor(LogManager logManager, Set<PolicyApplier> appliers) {
+    public PolicyProcessor(LogManager logManager, PolicyManager policyManager, Set<PolicyApplier> appliers) {
         this.logManager = logManager;
+        this.policyManager = policyManager;
         this.appliers = appliers;
     }
 
@@ -57,12 +60,13 @@ public class PolicyProcessor implements PayloadProcessor {
         }
 
         logManager.info(processKey, "Applying policies...");
-        Map<String, Object> rules = policy.rules();
 
         try {
+            PolicyEngine pe = policyManager.get(policy);
+
             // TODO merge check results
             for (PolicyApplier a : appliers) {
-                a.apply(payload, rules);
+                a.apply(payload, pe);
             }
         } catch (ProcessException e) {
             throw e;
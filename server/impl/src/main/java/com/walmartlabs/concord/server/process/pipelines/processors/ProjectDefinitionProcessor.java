@@ -20,14 +20,17 @@ package com.walmartlabs.concord.server.process.pipelines.processors;
  * =====
  */
 
+import com.walmartlabs.concord.project.ProjectDefinitionCache;
 import com.walmartlabs.concord.project.ProjectLoader;
 import com.walmartlabs.concord.project.model.ProjectDefinition;
+import com.walmartlabs.concord.server.cfg.ProjectLoaderConfiguration;
 import com.walmartlabs.concord.server.process.Payload;
 import com.walmartlabs.concord.server.process.ProcessException;
 import com.walmartlabs.concord.server.process.ProcessKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.IOException;
@@ -39,7 +42,12 @@ public class ProjectDefinitionProcessor implements PayloadProcessor {
 
     private static final Logger log = LoggerFactory.getLogger(ProjectDefinitionProcessor.class);
 
-    private final ProjectLoader loader = new ProjectLoader();
+    private final ProjectLoader loader;
+
+    @Inject
+    public ProjectDefinitionProcessor(ProjectLoaderConfiguration cfg) {
+        this.loader = new ProjectLoader(new ProjectDefinitionCache(cfg.getDefinitionCacheSize()));
+    }
 
     @Override
     public Payload process(Chain chain, Payload payload) {
@@ -23,10 +23,10 @@ package com.walmartlabs.concord.server.process.pipelines.processors;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.policyengine.CheckResult;
-import com.walmartlabs.concord.policyengine.PolicyEngine;
 import com.walmartlabs.concord.server.ExtraStatus;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import com.walmartlabs.concord.server.org.policy.PolicyRules;
+import com.walmartlabs.concord.server.policy.PolicyManager;
 import com.walmartlabs.concord.server.process.Payload;
 import com.walmartlabs.concord.server.process.ProcessException;
 import com.walmartlabs.concord.server.process.ProcessKey;
@@ -56,10 +56,12 @@ public class QueuePolicyProcessor implements PayloadProcessor {
     private static final String DEFAULT_POLICY_MESSAGE = "Maximum number of {0} processes exceeded: current {1}, limit {2}";
 
     private final QueueMetricsDao dao;
+    private final PolicyManager policyManager;
 
     @Inject
-    public QueuePolicyProcessor(QueueMetricsDao dao) {
+    public QueuePolicyProcessor(QueueMetricsDao dao, PolicyManager policyManager) {
         this.dao = dao;
+        this.policyManager = policyManager;
     }
 
     @Override
@@ -76,7 +78,7 @@ public class QueuePolicyProcessor implements PayloadProcessor {
 
         CheckResult<ProcessRule, Integer> result;
         try {
-            result = new PolicyEngine(policy.rules())
+            result = policyManager.get(policy)
                     .getQueueProcessPolicy()
                     .check(statuses -> dao.metrics(orgId, prjId, statuses));
         } catch (Exception e) {
@@ -20,13 +20,13 @@ package com.walmartlabs.concord.server.process.pipelines.processors.policy;
  * =====
  */
 
+import com.walmartlabs.concord.policyengine.PolicyEngine;
 import com.walmartlabs.concord.server.process.Payload;
 
-import java.util.Map;
 
 public interface PolicyApplier {
 
-    void apply(Payload payload, Map<String, Object> policy) throws Exception;
+    void apply(Payload payload, PolicyEngine policy) throws Exception;
 
     static String appendMsg(String msg, String s) {
         if (s == null) {
@@ -0,0 +1,180 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Notifies the callers when processes reach a final status.
+ * <p>
+ * Doesn't poll the DB: the statuses of all watched processes are checked
+ * (with a single query) only when {@link ProcessQueueListener} reports
+ * that some process reached a final status. The notifications are sent by
+ * the DB, so the changes made by any server node are taken into account.
+ * <p>
+ * The futures are completed on a separate thread pool, the callers can
+ * do blocking calls (e.g. DB queries) in their callbacks without delaying
+ * the checks.
+ */
+@Named
+@Singleton
+public class ProcessCompletionWatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessCompletionWatcher.class);
+
+    public static final Set<ProcessStatus> FINAL_STATUSES = ImmutableSet.of(
+            ProcessStatus.FINISHED,
+            ProcessStatus.FAILED,
+            ProcessStatus.CANCELLED,
+            ProcessStatus.TIMED_OUT);
+
+    /**
+     * Max number of process IDs in a single status query.
+     */
+    private static final int CHECK_BATCH_SIZE = 1000;
+
+    private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * Number of threads used to complete the futures.
+     */
+    private static final int RESUME_THREADS = 4;
+
+    private final ProcessQueueDao queueDao;
+
+    private final Map<UUID, List<CompletableFuture<ProcessStatus>>> watchers = new ConcurrentHashMap<>();
+    private final AtomicBoolean checkScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService executor;
+    private final ExecutorService resumeExecutor;
+
+    @Inject
+    public ProcessCompletionWatcher(ProcessQueueDao queueDao, ProcessQueueListener queueListener) {
+        this.queueDao = queueDao;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "process-completion-watcher");
+            t.setDaemon(true);
+            return t;
+        });
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.resumeExecutor = Executors.newFixedThreadPool(RESUME_THREADS, r -> {
+            Thread t = new Thread(r, "process-completion-resume-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        queueListener.addListener(status -> {
+            if (FINAL_STATUSES.contains(status)) {
+                scheduleCheck();
+            }
+        });
+    }
+
+    /**
+     * Returns a future which is completed when the process reaches a final status
+     * or when the process is removed from the queue. In the latter case the future's
+     * value is {@code null}. The future is also completed with {@code null} if the
+     * process doesn't finish in the specified time. Cancel the future to stop
+     * watching (e.g. when the caller goes away).
+     *
+     * @param timeout timeout in ms, values &lt;= 0 mean no timeout
+     */
+    public CompletableFuture<ProcessStatus> watch(UUID instanceId, long timeout) {
+        CompletableFuture<ProcessStatus> f = new CompletableFuture<>();
+
+        watchers.compute(instanceId, (k, v) -> {
+            List<CompletableFuture<ProcessStatus>> l = v != null ? v : new CopyOnWriteArrayList<>();
+            l.add(f);
+            return l;
+        });
+
+        f.whenComplete((s, e) -> watchers.computeIfPresent(instanceId, (k, v) -> {
+            v.remove(f);
+            return v.isEmpty() ? null : v;
+        }));
+
+        if (timeout > 0) {
+            ScheduledFuture<?> t = executor.schedule(() -> complete(f, null), timeout, TimeUnit.MILLISECONDS);
+            f.whenComplete((s, e) -> t.cancel(false));
+        }
+
+        // the process might've finished before we started watching it
+        scheduleCheck();
+
+        return f;
+    }
+
+    private void scheduleCheck() {
+        if (checkScheduled.compareAndSet(false, true)) {
+            executor.execute(this::check);
+        }
+    }
+
+    private void check() {
+        // reset the flag first, the changes made during the check will trigger another one
+        checkScheduled.set(false);
+
+        Set<UUID> ids = new HashSet<>(watchers.keySet());
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        for (List<UUID> batch : Iterables.partition(ids, CHECK_BATCH_SIZE)) {
+            Map<UUID, ProcessStatus> statuses;
+            try {
+                statuses = queueDao.getStatuses(batch);
+            } catch (Exception e) {
+                log.warn("check -> error while fetching the process statuses: {}. Will retry in {}ms...", e.getMessage(), ERROR_DELAY);
+                executor.schedule(this::scheduleCheck, ERROR_DELAY, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            for (UUID id : batch) {
+                ProcessStatus s = statuses.get(id);
+                if (s != null && !FINAL_STATUSES.contains(s)) {
+                    continue;
+                }
+
+                List<CompletableFuture<ProcessStatus>> l = watchers.get(id);
+                if (l != null) {
+                    l.forEach(f -> complete(f, s));
+                }
+            }
+        }
+    }
+
+    private void complete(CompletableFuture<ProcessStatus> f, ProcessStatus status) {
+        // run the callbacks outside of the watcher's thread
+        resumeExecutor.execute(() -> f.complete(status));
+    }
+}
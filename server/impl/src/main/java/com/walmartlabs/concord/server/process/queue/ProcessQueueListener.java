@@ -0,0 +1,164 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.db.DatabaseConfiguration;
+import com.walmartlabs.concord.db.MainDB;
+import com.walmartlabs.concord.server.BackgroundTask;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives PostgreSQL notifications about process status changes.
+ * The notifications are sent by the {@code PROCESS_QUEUE_NOTIFY} trigger,
+ * so the listeners are called for changes made by any server node. Only
+ * {@code ENQUEUED} and the final statuses are reported.
+ * <p>
+ * Uses a dedicated DB connection: LISTEN requires a long-living session
+ * which shouldn't occupy a slot in the connection pool.
+ */
+@Named
+@Singleton
+public class ProcessQueueListener implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessQueueListener.class);
+
+    public static final String CHANNEL_NAME = "concord_process_queue";
+
+    private static final int POLL_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(10);
+    private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(10);
+
+    private final DatabaseConfiguration cfg;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private Thread worker;
+
+    @Inject
+    public ProcessQueueListener(@MainDB DatabaseConfiguration cfg) {
+        this.cfg = cfg;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void start() {
+        this.worker = new Thread(this::run, "process-queue-listener");
+        this.worker.start();
+        log.info("start -> done");
+    }
+
+    @Override
+    public void stop() {
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+        log.info("stop -> done");
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try (Connection conn = DriverManager.getConnection(cfg.url(), cfg.username(), cfg.password())) {
+                conn.setAutoCommit(true);
+
+                try (Statement st = conn.createStatement()) {
+                    st.execute("LISTEN " + CHANNEL_NAME);
+                }
+
+                log.info("run -> listening for '{}' notifications...", CHANNEL_NAME);
+
+                // some notifications might've been missed while we were (re)connecting
+                fireAll();
+
+                PGConnection pgConn = conn.unwrap(PGConnection.class);
+                while (!Thread.currentThread().isInterrupted()) {
+                    PGNotification[] notifications = pgConn.getNotifications(POLL_TIMEOUT);
+                    if (notifications == null) {
+                        continue;
+                    }
+
+                    for (PGNotification n : notifications) {
+                        fire(n.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                log.warn("run -> error: {}. Will retry in {}ms...", e.getMessage(), ERROR_DELAY);
+                sleep(ERROR_DELAY);
+            }
+        }
+    }
+
+    private void fire(String payload) {
+        ProcessStatus status;
+        try {
+            status = ProcessStatus.valueOf(payload);
+        } catch (IllegalArgumentException e) {
+            log.warn("fire -> invalid notification payload: '{}'", payload);
+            return;
+        }
+
+        for (Listener l : listeners) {
+            try {
+                l.onStatusChange(status);
+            } catch (Exception e) {
+                log.warn("fire ['{}'] -> listener error", status, e);
+            }
+        }
+    }
+
+    private void fireAll() {
+        for (ProcessStatus s : ProcessStatus.values()) {
+            fire(s.name());
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public interface Listener {
+
+        /**
+         * Called when at least one process was moved into the specified status.
+         */
+        void onStatusChange(ProcessStatus status);
+    }
+}
@@ -42,15 +42,18 @@ public class ProcessQueueManager {
 
     private final ProcessQueueDao queueDao;
     private final ProcessEventDao eventDao;
+    private final ProcessPartitionManager partitionManager;
     private final ConcordObjectMapper objectMapper;
 
     @Inject
     public ProcessQueueManager(ProcessQueueDao queueDao,
                                ProcessEventDao eventDao,
+                               ProcessPartitionManager partitionManager,
                                ConcordObjectMapper objectMapper) {
 
         this.queueDao = queueDao;
         this.eventDao = eventDao;
+        this.partitionManager = partitionManager;
         this.objectMapper = objectMapper;
     }
 
@@ -68,6 +71,9 @@ public class ProcessQueueManager {
         Map<String, Object> meta = getMeta(cfg);
         TriggeredByEntry triggeredBy = payload.getHeader(Payload.TRIGGERED_BY);
 
+        // all per-process data uses the process' creation date as the partition key
+        partitionManager.ensurePartitions(processKey.getCreatedAt());
+
         queueDao.tx(tx -> {
             queueDao.insert(tx, processKey, status, kind, parentInstanceId, projectId, repoId, initiatorId, meta, triggeredBy);
             eventDao.insertStatusHistory(tx, processKey, status, Collections.emptyMap());
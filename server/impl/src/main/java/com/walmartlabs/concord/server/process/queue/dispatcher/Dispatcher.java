@@ -27,6 +27,7 @@ import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.db.MainDB;
 import com.walmartlabs.concord.server.ConcordObjectMapper;
 import com.walmartlabs.concord.server.PeriodicTask;
+import com.walmartlabs.concord.server.cfg.DispatcherConfiguration;
 import com.walmartlabs.concord.server.jooq.tables.ProcessQueue;
 import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import com.walmartlabs.concord.server.org.OrganizationDao;
@@ -36,6 +37,7 @@ import com.walmartlabs.concord.server.process.ProcessKey;
 import com.walmartlabs.concord.server.process.logs.LogManager;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueEntry;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueListener;
 import com.walmartlabs.concord.server.queueclient.message.Imports;
 import com.walmartlabs.concord.server.queueclient.message.MessageType;
 import com.walmartlabs.concord.server.queueclient.message.ProcessRequest;
@@ -63,6 +65,14 @@ import static org.jooq.impl.DSL.*;
 
 /**
  * Dispatches processes to agents.
+ * <p>
+ * In addition to the regular polling, the dispatcher is woken up when
+ * an agent sends a new {@link ProcessRequest} or when a process is moved
+ * into the {@link ProcessStatus#ENQUEUED} status (on any of the server nodes).
+ * <p>
+ * Multiple server nodes can dispatch processes at the same time: the queue
+ * is split into lock shards by organization ID, each shard is processed by
+ * one node at the time.
  */
 @Named
 @Singleton
@@ -70,9 +80,7 @@ public class Dispatcher extends PeriodicTask {
 
     private static final Logger log = LoggerFactory.getLogger(Dispatcher.class);
 
-    private static final long POLL_DELAY = TimeUnit.SECONDS.toMillis(1);
     private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(30);
-    private static final int BATCH_SIZE = 10;
 
     private final DispatcherDao dao;
     private final WebSocketChannelManager channelManager;
@@ -82,10 +90,15 @@ public class Dispatcher extends PeriodicTask {
     private final ProcessQueueDao queueDao;
     private final Set<Filter> filters;
     private final Histogram uniqueProjectsHistogram;
+    private final Histogram scannedHistogram;
+    private final int batchSize;
+    private final int lockShards;
 
     @Inject
-    public Dispatcher(DispatcherDao dao,
+    public Dispatcher(DispatcherConfiguration cfg,
+                      DispatcherDao dao,
                       WebSocketChannelManager channelManager,
+                      ProcessQueueListener queueListener,
                       LogManager logManager,
                       OrganizationDao organizationDao,
                       RepositoryDao repositoryDao,
@@ -93,8 +106,10 @@ public class Dispatcher extends PeriodicTask {
                       Set<Filter> filters,
                       MetricRegistry metricRegistry) {
 
-        super(POLL_DELAY, ERROR_DELAY);
+        super(cfg.getPollDelay(), ERROR_DELAY);
 
+        this.batchSize = cfg.getBatchSize();
+        this.lockShards = cfg.getLockShards();
         this.dao = dao;
         this.channelManager = channelManager;
         this.logManager = logManager;
@@ -103,6 +118,20 @@ public class Dispatcher extends PeriodicTask {
         this.queueDao = queueDao;
         this.filters = filters;
         this.uniqueProjectsHistogram = metricRegistry.histogram("process-queue-dispatcher-unique-projects");
+        // the number of candidates skipped before fetching the next batch
+        this.scannedHistogram = metricRegistry.histogram("process-queue-dispatcher-offset");
+
+        channelManager.addRequestListener(requestType -> {
+            if (requestType == MessageType.PROCESS_REQUEST) {
+                wakeUp();
+            }
+        });
+
+        queueListener.addListener(status -> {
+            if (status == ProcessStatus.ENQUEUED) {
+                wakeUp();
+            }
+        });
     }
 
     @Override
@@ -110,137 +139,140 @@ public class Dispatcher extends PeriodicTask {
         // TODO the WebSocketChannelManager business can be replaced with an async jax-rs endpoint and an "inbox" queue
 
         // grab the requests w/o responses
-        Map<WebSocketChannel, ProcessRequest> requests = this.channelManager.getRequests(MessageType.PROCESS_REQUEST);
+        // agents can send multiple requests at once (one for each free worker)
+        Map<WebSocketChannel, List<ProcessRequest>> requests = this.channelManager.getAllRequests(MessageType.PROCESS_REQUEST);
         if (requests.isEmpty()) {
             return false;
         }
 
-        List<Request> l = requests.entrySet().stream()
-                .map(e -> new Request(e.getKey(), e.getValue()))
-                .collect(Collectors.toList());
-
-        dispatch(l);
+        List<Request> l = interleave(requests);
 
-        return false;
+        // if something was dispatched, try again right away: the remaining requests
+        // might be matched with the processes enqueued while we were busy
+        return dispatch(l) > 0;
     }
 
-    private void dispatch(List<Request> requests) {
+    private int dispatch(List<Request> requests) {
         // we need it modifiable
         List<Request> inbox = new ArrayList<>(requests);
 
         // run everything in a single transaction
-        dao.tx(tx -> {
-            int offset = 0;
-            Set<UUID> projectsToSkip = new HashSet<>();
+        return dao.txResult(tx -> {
+            int dispatched = 0;
+
+            // the last candidate fetched from the queue, the next batch starts after it
+            ProcessKey cursor = null;
+            int scanned = 0;
+
+            // lock shards acquired (true) or held by someone else (false) in the current transaction
+            Map<Integer, Boolean> shards = new HashMap<>();
 
-            while (true) {
+            while (!inbox.isEmpty()) {
                 // fetch the next few ENQUEUED processes from the DB
-                List<ProcessQueueEntry> candidates = new ArrayList<>(dao.next(tx, offset, BATCH_SIZE));
-                if (candidates.isEmpty() || inbox.isEmpty()) {
-                    // no potential candidates or no requests left to process
+                List<ProcessQueueEntry> candidates = dao.next(tx, cursor, batchSize);
+                if (candidates.isEmpty()) {
+                    // no potential candidates left
                     break;
                 }
 
-                uniqueProjectsHistogram.update(countUniqueProjects(candidates));
+                scannedHistogram.update(scanned);
+                scanned += candidates.size();
+                cursor = candidates.get(candidates.size() - 1).key();
 
-                // filter out the candidates that shouldn't be dispatched at the moment
-                for (Iterator<ProcessQueueEntry> it = candidates.iterator(); it.hasNext(); ) {
-                    ProcessQueueEntry e = it.next();
+                uniqueProjectsHistogram.update(countUniqueProjects(candidates));
 
-                    // currently there are no filters applicable to standalone (i.e. without a project) processes
-                    if (e.projectId() == null) {
-                        continue;
+                for (ProcessQueueEntry candidate : candidates) {
+                    if (inbox.isEmpty()) {
+                        break;
                     }
 
-                    // see below
-                    if (projectsToSkip.contains(e.projectId())) {
-                        it.remove();
+                    // find an agent which can run the candidate
+                    // the filters are applied only to the candidates that can be dispatched right now
+                    Request req = findRequest(inbox, candidate);
+                    if (req == null) {
                         continue;
                     }
 
-                    // TODO sharded locks?
-                    boolean locked = dao.tryLock(tx);
-                    if (!locked || !pass(tx, e)) {
-                        // the candidate didn't pass the filter or can't lock the queue
-                        // skip to the next candidate (of a different project)
-                        it.remove();
+                    // currently there are no filters applicable to standalone (i.e. without a project) processes
+                    if (candidate.projectId() != null) {
+                        // the filters check the state of the whole organization (e.g. "max concurrent processes
+                        // per org"), so the candidates of the same organization must be processed by one server
+                        // node at the time
+                        int shard = lockShard(candidate, lockShards);
+                        boolean locked = shards.computeIfAbsent(shard, k -> dao.tryLock(tx, k));
+                        if (!locked || !pass(tx, candidate)) {
+                            // the candidate didn't pass the filter or can't lock its shard
+                            continue;
+                        }
                     }
 
-                    // only one process per project can be dispatched at the time, currently the filters are not
-                    // designed to run multiple times per dispatch "tick"
-
-                    // TODO
-                    // this can be improved if filters accepted a list of candidates and returned a list of
-                    // those who passed. However, statistically each batch of candidates contains unique project IDs
-                    // so "multi-entry" filters are less effective and just complicate things
-                    // in the future we might need to consider batching up candidates by project IDs and using sharded
-                    // locks
-                    projectsToSkip.add(e.projectId());
-                }
-
-                List<Match> matches = match(inbox, candidates);
-                if (matches.isEmpty()) {
-                    // no matches, try fetching the next N records
-                    offset += BATCH_SIZE;
-                    continue;
-                }
-
-                for (Match m : matches) {
-                    ProcessQueueEntry candidate = m.response;
-
                     // mark the process as STARTING and send it to the agent
+                    // the filters are using the same transaction, so the next candidates (including the candidates
+                    // of the same project) are checked with the previously dispatched processes taken into account
                     // TODO ProcessQueueDao#updateStatus should be moved to ProcessManager because it does two things (updates the record and inserts a status history entry)
                     queueDao.updateStatus(tx, candidate.key(), ProcessStatus.STARTING);
 
-                    sendResponse(m);
+                    sendResponse(new Match(req, candidate));
 
-                    inbox.remove(m.request);
+                    inbox.remove(req);
+                    dispatched++;
                 }
             }
+
+            return dispatched;
         });
     }
 
-    private List<Match> match(List<Request> requests, List<ProcessQueueEntry> candidates) {
-        List<Match> results = new ArrayList<>();
-
-        for (Request req : requests) {
-            ProcessQueueEntry candidate = findCandidate(req.request, candidates);
-            if (candidate == null) {
-                continue;
+    /**
+     * Orders the requests so that each channel gets its turn: the first request
+     * of each channel goes first, then the second, etc. Prevents agents with
+     * many free workers from taking all the matching processes.
+     */
+    private static List<Request> interleave(Map<WebSocketChannel, List<ProcessRequest>> requests) {
+        List<Request> result = new ArrayList<>();
+
+        for (int i = 0; ; i++) {
+            boolean found = false;
+
+            for (Map.Entry<WebSocketChannel, List<ProcessRequest>> e : requests.entrySet()) {
+                List<ProcessRequest> l = e.getValue();
+                if (i < l.size()) {
+                    result.add(new Request(e.getKey(), l.get(i)));
+                    found = true;
+                }
             }
 
-            // the process can be matched only once, remove the match from the list of candidates
-            candidates.remove(candidate);
-
-            results.add(new Match(req, candidate));
+            if (!found) {
+                return result;
+            }
         }
-
-        return results;
     }
 
     @SuppressWarnings("unchecked")
-    private ProcessQueueEntry findCandidate(ProcessRequest req, List<ProcessQueueEntry> candidates) {
-        if (candidates.isEmpty()) {
-            return null;
+    private static Request findRequest(List<Request> requests, ProcessQueueEntry candidate) {
+        Map<String, Object> requirements = candidate.requirements();
+        if (requirements == null) {
+            requirements = Collections.emptyMap();
         }
 
-        Map<String, Object> capabilities = req.getCapabilities();
-
-        for (ProcessQueueEntry c : candidates) {
-            Map<String, Object> requirements = c.requirements();
-            if (requirements == null) {
-                requirements = Collections.emptyMap();
-            }
+        Map<String, Object> m = (Map<String, Object>) requirements.getOrDefault("agent", Collections.emptyMap());
+        MapMatcher.Compiled matcher = MapMatcher.compile(m);
 
-            Map<String, Object> m = (Map<String, Object>) requirements.getOrDefault("agent", Collections.emptyMap());
-            if (MapMatcher.matches(capabilities, m)) {
-                return c;
+        for (Request req : requests) {
+            Map<String, Object> capabilities = req.request.getCapabilities();
+            if (matcher.matches(capabilities)) {
+                return req;
             }
         }
 
         return null;
     }
 
+    static int lockShard(ProcessQueueEntry e, int lockShards) {
+        UUID id = e.orgId() != null ? e.orgId() : e.projectId();
+        return Math.floorMod(id.hashCode(), lockShards);
+    }
+
     private boolean pass(DSLContext tx, ProcessQueueEntry e) {
         for (Filter f : filters) {
             if (!f.apply(tx, e)) {
@@ -301,30 +333,34 @@ public class Dispatcher extends PeriodicTask {
     @Named
     public static class DispatcherDao extends AbstractDao {
 
-        private static final long LOCK_KEY = 1552468327245L;
+        private static final int LOCK_NAMESPACE = 1552468327;
 
         private final ConcordObjectMapper objectMapper;
-        private final Histogram offsetHistogram;
 
         @Inject
         public DispatcherDao(@MainDB Configuration cfg,
-                             ConcordObjectMapper objectMapper,
-                             MetricRegistry metricRegistry) {
+                             ConcordObjectMapper objectMapper) {
 
             super(cfg);
             this.objectMapper = objectMapper;
-            this.offsetHistogram = metricRegistry.histogram("process-queue-dispatcher-offset");
         }
 
         @Override
-        public void tx(Tx t) {
-            super.tx(t);
+        public <T> T txResult(TxResult<T> t) {
+            return super.txResult(t);
         }
 
+        /**
+         * Returns the next {@code limit} ENQUEUED processes, ordered by their creation date.
+         * Uses keyset pagination: the result starts after the specified {@code after} key,
+         * so the cost of fetching the next batch doesn't depend on the number of the
+         * previously skipped entries. The query matches the {@code IDX_PROC_Q_DISPATCH} index.
+         *
+         * @param after the key of the last entry of the previous batch or {@code null}
+         *              to start from the beginning of the queue
+         */
         @WithTimer
-        public List<ProcessQueueEntry> next(DSLContext tx, int offset, int limit) {
-            offsetHistogram.update(offset);
-
+        public List<ProcessQueueEntry> next(DSLContext tx, ProcessKey after, int limit) {
             ProcessQueue q = PROCESS_QUEUE.as("q");
 
             Field<UUID> orgIdField = select(PROJECTS.ORG_ID).from(PROJECTS).where(PROJECTS.PROJECT_ID.eq(q.PROJECT_ID)).asField();
@@ -346,13 +382,18 @@ public class Dispatcher extends PeriodicTask {
                             q.EXCLUSIVE)
                             .from(q);
 
-            s.where(q.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString())
+            // the status value is inlined to allow the use of the partial index
+            Condition c = q.CURRENT_STATUS.eq(inline(ProcessStatus.ENQUEUED.toString()))
+                    .and(q.WAIT_CONDITIONS.isNull())
                     .and(or(q.START_AT.isNull(),
-                            q.START_AT.le(currentTimestamp())))
-                    .and(q.WAIT_CONDITIONS.isNull()));
+                            q.START_AT.le(currentTimestamp())));
+
+            if (after != null) {
+                c = c.and(row(q.CREATED_AT, q.INSTANCE_ID).gt(after.getCreatedAt(), after.getInstanceId()));
+            }
 
-            return s.orderBy(q.CREATED_AT)
-                    .offset(offset)
+            return s.where(c)
+                    .orderBy(q.CREATED_AT, q.INSTANCE_ID)
                     .limit(limit)
                     .forUpdate()
                     .of(q)
@@ -373,13 +414,18 @@ public class Dispatcher extends PeriodicTask {
                             .build());
         }
 
-        public boolean tryLock(DSLContext tx) {
-            String sql = "{ ? = call pg_try_advisory_xact_lock(?) }";
+        /**
+         * Tries to lock the specified shard of the queue. The lock is released
+         * when the transaction ends.
+         */
+        public boolean tryLock(DSLContext tx, int shard) {
+            String sql = "{ ? = call pg_try_advisory_xact_lock(?, ?) }";
 
             return tx.connectionResult(conn -> {
                 try (CallableStatement cs = conn.prepareCall(sql)) {
                     cs.registerOutParameter(1, Types.BOOLEAN);
-                    cs.setLong(2, LOCK_KEY);
+                    cs.setInt(2, LOCK_NAMESPACE);
+                    cs.setInt(3, shard);
                     cs.execute();
                     return cs.getBoolean(1);
                 }
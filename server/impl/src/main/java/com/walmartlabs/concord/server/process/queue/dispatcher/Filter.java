@@ -25,5 +25,13 @@ import org.jooq.DSLContext;
 
 public interface Filter {
 
+    /**
+     * Checks if the specified process can be dispatched.
+     * <p>
+     * Multiple processes of the same project can be dispatched in a single
+     * transaction. The previously dispatched processes are already marked as
+     * {@code STARTING} in the same transaction, so the filters must query the
+     * DB using the provided {@code tx} to take them into account.
+     */
     boolean apply(DSLContext tx, ProcessQueueEntry e);
 }
@@ -30,27 +30,37 @@ import com.walmartlabs.concord.server.sdk.metrics.WithTimer;
 import com.walmartlabs.concord.server.org.secret.SecretUtils;
 import com.walmartlabs.concord.server.process.PartialProcessKey;
 import com.walmartlabs.concord.server.process.ProcessKey;
+import org.apache.commons.compress.archivers.zip.AsiExtraField;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.jooq.Condition;
 import org.jooq.Configuration;
 import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record2;
+import org.jooq.Table;
 import org.jooq.impl.DSL;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Timestamp;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
 import java.util.*;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -58,6 +68,9 @@ import java.util.stream.Stream;
 
 import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessState.PROCESS_STATE;
+import static com.walmartlabs.concord.server.jooq.tables.ProcessStateBlobs.PROCESS_STATE_BLOBS;
+import static org.jooq.impl.DSL.coalesce;
+import static org.jooq.impl.DSL.currentTimestamp;
 
 @Named
 @Singleton
@@ -66,15 +79,57 @@ public class ProcessStateManager extends AbstractDao {
     private static final Logger log = LoggerFactory.getLogger(ProcessStateManager.class);
 
     private static final String PATH_SEPARATOR = "/";
-    private static final int INSERT_BATCH_SIZE = 10;
+
+    /**
+     * Max number of files imported in a single batch.
+     */
+    private static final int IMPORT_BATCH_SIZE = 1000;
+
+    /**
+     * Max total size of new blobs sent in a single JDBC batch.
+     */
+    private static final long BLOB_BATCH_MAX_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Max total size of files fetched at once when exporting the whole state.
+     * Keeps the server from buffering all files in memory before the first
+     * byte of the export is sent. A single larger file is fetched alone.
+     */
+    private static final long EXPORT_PAGE_MAX_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Max number of files fetched at once when exporting the whole state.
+     */
+    private static final int EXPORT_PAGE_MAX_ROWS = 1000;
+
+    private static final String COPY_STATE_SQL = "copy PROCESS_STATE " +
+            "(INSTANCE_ID, INSTANCE_CREATED_AT, ITEM_PATH, UNIX_MODE, ITEM_DATA, IS_ENCRYPTED, ITEM_HASH) " +
+            "from stdin";
+
+    /**
+     * How often {@code PROCESS_STATE_BLOBS.LAST_USED_AT} is updated when
+     * an existing blob is reused. Must be significantly shorter than the max
+     * age of the state data, see {@code ProcessCleaner}.
+     */
+    private static final long BLOB_TOUCH_INTERVAL = 60 * 60 * 1000;
+
+    /**
+     * Non-encrypted files are stored in {@code PROCESS_STATE_BLOBS}, encrypted
+     * files and the data stored before the blobs were introduced are
+     * kept in {@code PROCESS_STATE.ITEM_DATA}.
+     */
+    private static final Table<?> STATE_WITH_DATA = PROCESS_STATE.leftJoin(PROCESS_STATE_BLOBS)
+            .on(PROCESS_STATE_BLOBS.BLOB_HASH.eq(PROCESS_STATE.ITEM_HASH));
+
+    private static final Field<byte[]> STATE_DATA = coalesce(PROCESS_STATE.ITEM_DATA, PROCESS_STATE_BLOBS.BLOB_DATA);
 
     private final SecretStoreConfiguration secretCfg;
     private final Set<String> secureFiles = new HashSet<>();
 
     @Inject
-    protected ProcessStateManager(@MainDB Configuration cfg,
-                                  SecretStoreConfiguration secretCfg,
-                                  ProcessStateConfiguration stateCfg) {
+    public ProcessStateManager(@MainDB Configuration cfg,
+                               SecretStoreConfiguration secretCfg,
+                               ProcessStateConfiguration stateCfg) {
         super(cfg);
         this.secretCfg = secretCfg;
 
@@ -96,8 +151,8 @@ public class ProcessStateManager extends AbstractDao {
     }
 
     private <T> Optional<T> get(DSLContext tx, ProcessKey processKey, String path, Function<InputStream, Optional<T>> converter) {
-        String sql = tx.select(PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
-                .from(PROCESS_STATE)
+        String sql = tx.select(PROCESS_STATE.IS_ENCRYPTED, STATE_DATA)
+                .from(STATE_WITH_DATA)
                 .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null)
                         .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((Timestamp) null))
                         .and(PROCESS_STATE.ITEM_PATH.eq((String) null)))
@@ -129,8 +184,8 @@ public class ProcessStateManager extends AbstractDao {
      */
     public <T> List<T> forEach(ProcessKey processKey, String path, Function<InputStream, Optional<T>> converter) {
         try (DSLContext tx = DSL.using(cfg)) {
-            String sql = tx.select(PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
-                    .from(PROCESS_STATE)
+            String sql = tx.select(PROCESS_STATE.IS_ENCRYPTED, STATE_DATA)
+                    .from(STATE_WITH_DATA)
                     .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null)
                             .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((Timestamp) null))
                             .and(PROCESS_STATE.ITEM_PATH.startsWith((String) null)))
@@ -272,13 +327,27 @@ public class ProcessStateManager extends AbstractDao {
 
     private void insert(DSLContext tx, UUID instanceId, Timestamp instanceCreatedAt, String path, byte[] in) {
         boolean needEncrypt = secureFiles.contains(path);
-        byte[] data = in;
         if (needEncrypt) {
-            data = encrypt(in);
+            tx.insertInto(PROCESS_STATE)
+                    .columns(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT, PROCESS_STATE.ITEM_PATH, PROCESS_STATE.ITEM_DATA, PROCESS_STATE.IS_ENCRYPTED)
+                    .values(instanceId, instanceCreatedAt, path, encrypt(in), true)
+                    .execute();
+            return;
         }
+
+        byte[] hash = hash(in);
+
+        tx.insertInto(PROCESS_STATE_BLOBS)
+                .columns(PROCESS_STATE_BLOBS.BLOB_HASH, PROCESS_STATE_BLOBS.BLOB_DATA)
+                .values(hash, in)
+                .onConflict(PROCESS_STATE_BLOBS.BLOB_HASH)
+                .doUpdate()
+                .set(PROCESS_STATE_BLOBS.LAST_USED_AT, currentTimestamp())
+                .execute();
+
         tx.insertInto(PROCESS_STATE)
-                .columns(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT, PROCESS_STATE.ITEM_PATH, PROCESS_STATE.ITEM_DATA, PROCESS_STATE.IS_ENCRYPTED)
-                .values(instanceId, instanceCreatedAt, path, data, needEncrypt)
+                .columns(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT, PROCESS_STATE.ITEM_PATH, PROCESS_STATE.ITEM_HASH, PROCESS_STATE.IS_ENCRYPTED)
+                .values(instanceId, instanceCreatedAt, path, hash, false)
                 .execute();
     }
 
@@ -342,13 +411,10 @@ public class ProcessStateManager extends AbstractDao {
                     int unixMode = Posix.unixMode(permissions);
                     boolean needsEncryption = secureFiles.contains(n);
 
-                    tx.deleteFrom(PROCESS_STATE).where(PROCESS_STATE.INSTANCE_ID.eq(instanceId)
-                            .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(instanceCreatedAt))
-                            .and(PROCESS_STATE.ITEM_PATH.eq(n)))
-                            .execute();
+                    byte[] hash = needsEncryption ? null : hash(file);
 
-                    batch.add(new BatchItem(n, file, unixMode, needsEncryption));
-                    if (batch.size() >= INSERT_BATCH_SIZE) {
+                    batch.add(new BatchItem(n, file, attrs.size(), unixMode, needsEncryption, hash));
+                    if (batch.size() >= IMPORT_BATCH_SIZE) {
                         insert(tx, instanceId, instanceCreatedAt, batch);
                         batch.clear();
                     }
@@ -365,41 +431,160 @@ public class ProcessStateManager extends AbstractDao {
         }
     }
 
-    private void insert(DSLContext tx, UUID instanceId, Timestamp instanceCreatedAt, Collection<BatchItem> batch) {
-        String sql = tx.insertInto(PROCESS_STATE)
-                .columns(PROCESS_STATE.INSTANCE_ID, PROCESS_STATE.INSTANCE_CREATED_AT, PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.ITEM_DATA, PROCESS_STATE.IS_ENCRYPTED)
-                .values((UUID) null, null, null, null, null, null)
+    private void insert(DSLContext tx, UUID instanceId, Timestamp instanceCreatedAt, List<BatchItem> batch) throws IOException {
+        // replace the existing items
+        List<String> paths = new ArrayList<>(batch.size());
+        for (BatchItem item : batch) {
+            paths.add(item.itemPath);
+        }
+
+        tx.deleteFrom(PROCESS_STATE)
+                .where(PROCESS_STATE.INSTANCE_ID.eq(instanceId)
+                        .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(instanceCreatedAt))
+                        .and(PROCESS_STATE.ITEM_PATH.in(paths)))
+                .execute();
+
+        // upload only the blobs which are not in the DB yet
+        Set<ByteBuffer> existingBlobs = touchBlobs(tx, batch);
+
+        Map<ByteBuffer, BatchItem> newBlobs = new LinkedHashMap<>();
+        for (BatchItem item : batch) {
+            if (item.hash == null) {
+                continue;
+            }
+
+            ByteBuffer k = ByteBuffer.wrap(item.hash);
+            if (!existingBlobs.contains(k)) {
+                newBlobs.putIfAbsent(k, item);
+            }
+        }
+
+        List<BatchItem> blobBatch = new ArrayList<>();
+        long blobBatchSize = 0;
+        for (BatchItem item : newBlobs.values()) {
+            blobBatch.add(item);
+            blobBatchSize += item.size;
+
+            if (blobBatchSize >= BLOB_BATCH_MAX_BYTES) {
+                insertBlobs(tx, blobBatch);
+                blobBatch.clear();
+                blobBatchSize = 0;
+            }
+        }
+
+        if (!blobBatch.isEmpty()) {
+            insertBlobs(tx, blobBatch);
+        }
+
+        copyItems(tx, instanceId, instanceCreatedAt, batch);
+    }
+
+    /**
+     * Inserts the batch's items into {@code PROCESS_STATE} using {@code COPY}.
+     * The data of non-encrypted items must be already in {@code PROCESS_STATE_BLOBS}.
+     * <p>
+     * The rows are streamed to the DB as they are written, only one encrypted
+     * file at a time is kept in memory.
+     */
+    private void copyItems(DSLContext tx, UUID instanceId, Timestamp instanceCreatedAt, List<BatchItem> batch) {
+        tx.connection(conn -> {
+            CopyIn copyIn = conn.unwrap(PGConnection.class)
+                    .getCopyAPI()
+                    .copyIn(COPY_STATE_SQL);
+
+            try {
+                CopyWriter w = new CopyWriter(copyIn);
+                for (BatchItem item : batch) {
+                    byte[] data = null;
+                    if (item.needsEncryption) {
+                        data = encrypt(Files.readAllBytes(item.path));
+                    }
+
+                    w.value(instanceId.toString())
+                            .value(instanceCreatedAt.toString())
+                            .value(item.itemPath)
+                            .value(String.valueOf(item.unixMode))
+                            .value(data)
+                            .value(item.needsEncryption ? "t" : "f")
+                            .value(item.hash)
+                            .endRow();
+                }
+
+                w.finish();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the hashes of the batch's blobs which are already in the DB.
+     * Blobs which weren't used recently are marked as used, so they won't
+     * be removed by {@code ProcessCleaner} while the batch is imported.
+     */
+    private static Set<ByteBuffer> touchBlobs(DSLContext tx, Collection<BatchItem> batch) {
+        List<byte[]> hashes = new ArrayList<>();
+        for (BatchItem item : batch) {
+            if (item.hash != null) {
+                hashes.add(item.hash);
+            }
+        }
+
+        if (hashes.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Timestamp touchCutoff = new Timestamp(System.currentTimeMillis() - BLOB_TOUCH_INTERVAL);
+
+        Set<ByteBuffer> result = new HashSet<>();
+        List<byte[]> stale = new ArrayList<>();
+
+        tx.select(PROCESS_STATE_BLOBS.BLOB_HASH, PROCESS_STATE_BLOBS.LAST_USED_AT)
+                .from(PROCESS_STATE_BLOBS)
+                .where(PROCESS_STATE_BLOBS.BLOB_HASH.in(hashes))
+                .forEach(r -> {
+                    if (r.value2().before(touchCutoff)) {
+                        stale.add(r.value1());
+                    } else {
+                        result.add(ByteBuffer.wrap(r.value1()));
+                    }
+                });
+
+        if (!stale.isEmpty()) {
+            // the blobs removed concurrently won't be returned and will be uploaded again
+            tx.update(PROCESS_STATE_BLOBS)
+                    .set(PROCESS_STATE_BLOBS.LAST_USED_AT, currentTimestamp())
+                    .where(PROCESS_STATE_BLOBS.BLOB_HASH.in(stale))
+                    .returning(PROCESS_STATE_BLOBS.BLOB_HASH)
+                    .fetch()
+                    .forEach(r -> result.add(ByteBuffer.wrap(r.getBlobHash())));
+        }
+
+        return result;
+    }
+
+    private static void insertBlobs(DSLContext tx, Collection<BatchItem> items) {
+        String sql = tx.insertInto(PROCESS_STATE_BLOBS)
+                .columns(PROCESS_STATE_BLOBS.BLOB_HASH, PROCESS_STATE_BLOBS.BLOB_DATA)
+                .values((byte[]) null, null)
+                .onConflictDoNothing()
                 .getSQL();
 
         List<InputStream> streams = new LinkedList<>();
         try {
             tx.connection(conn -> {
                 try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    for (BatchItem item : batch) {
-                        // INSTANCE_ID
-                        ps.setObject(1, instanceId);
-
-                        // INSTANCE_CREATED_AT
-                        ps.setTimestamp(2, instanceCreatedAt);
-
-                        // ITEM_PATH
-                        ps.setString(3, item.itemPath);
-
-                        // UNIX_MODE
-                        ps.setInt(4, item.unixMode);
+                    for (BatchItem item : items) {
+                        // BLOB_HASH
+                        ps.setBytes(1, item.hash);
 
                         InputStream in = Files.newInputStream(item.path);
                         streams.add(in); // keep the streams open until the batch is committed
 
-                        if (item.needsEncryption) {
-                            in = encrypt(in);
-                        }
-
-                        // ITEM_DATA
-                        ps.setBinaryStream(5, in);
-
-                        // IS_ENCRYPTED
-                        ps.setBoolean(6, item.needsEncryption);
+                        // BLOB_DATA
+                        ps.setBinaryStream(2, in);
 
                         ps.addBatch();
                     }
@@ -416,39 +601,85 @@ public class ProcessStateManager extends AbstractDao {
 
     /**
      * Exports all data of a process instance.
+     * <p>
+     * The data is fetched in pages of up to {@link #EXPORT_PAGE_MAX_BYTES}
+     * ordered by {@code ITEM_PATH} (keyset pagination, no open cursors).
+     * All pages are fetched in a single read-only {@code REPEATABLE READ}
+     * transaction, so the export is a consistent snapshot even if the state
+     * is modified concurrently.
      */
     public boolean export(ProcessKey processKey, ItemConsumer consumer) {
-        try (DSLContext tx = DSL.using(cfg)) {
-            String sql = tx
-                    .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
-                    .from(PROCESS_STATE)
-                    .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null).and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((Timestamp) null)))
-                    .getSQL();
+        return txResult(tx -> {
+            // all pages must see the same snapshot of the state
+            tx.execute("set transaction isolation level repeatable read, read only");
 
-            return tx.connectionResult(conn -> {
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setObject(1, processKey.getInstanceId());
-                    ps.setTimestamp(2, processKey.getCreatedAt());
+            boolean found = false;
 
-                    boolean found = false;
-                    try (ResultSet rs = ps.executeQuery()) {
-                        while (rs.next()) {
-                            found = true;
+            String lastPath = null;
+            while (true) {
+                String pageEnd = nextExportPageEnd(tx, processKey, lastPath);
+                if (pageEnd == null) {
+                    return found;
+                }
 
-                            String n = rs.getString(1);
-                            int unixMode = rs.getInt(2);
-                            boolean encrypted = rs.getBoolean(3);
-                            try (InputStream in = rs.getBinaryStream(4);
-                                 InputStream processed = encrypted ? decrypt(in) : in) {
-                                consumer.accept(n, unixMode, processed);
-                            }
-                        }
-                    }
+                for (ExportItem i : fetchExportPage(tx, processKey, lastPath, pageEnd)) {
+                    found = true;
 
-                    return found;
+                    try (InputStream in = new ByteArrayInputStream(i.data);
+                         InputStream processed = i.encrypted ? decrypt(in) : in) {
+                        consumer.accept(i.path, i.unixMode, processed);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
                 }
-            });
+
+                lastPath = pageEnd;
+            }
+        });
+    }
+
+    /**
+     * Returns the path of the last file of the next export page or {@code null}
+     * if there are no more files. Only the sizes of the files are fetched.
+     */
+    private static String nextExportPageEnd(DSLContext tx, ProcessKey processKey, String lastPath) {
+        Field<Long> size = DSL.field("octet_length({0})", Long.class, STATE_DATA);
+
+        List<Record2<String, Long>> rows = tx.select(PROCESS_STATE.ITEM_PATH, size)
+                .from(STATE_WITH_DATA)
+                .where(exportPageCondition(processKey, lastPath))
+                .orderBy(PROCESS_STATE.ITEM_PATH)
+                .limit(EXPORT_PAGE_MAX_ROWS)
+                .fetch();
+
+        String pageEnd = null;
+        long total = 0;
+        for (Record2<String, Long> r : rows) {
+            long n = r.value2() != null ? r.value2() : 0;
+            if (pageEnd != null && total + n > EXPORT_PAGE_MAX_BYTES) {
+                break;
+            }
+
+            total += n;
+            pageEnd = r.value1();
         }
+
+        return pageEnd;
+    }
+
+    private static List<ExportItem> fetchExportPage(DSLContext tx, ProcessKey processKey, String lastPath, String pageEnd) {
+        return tx.select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, STATE_DATA)
+                .from(STATE_WITH_DATA)
+                .where(exportPageCondition(processKey, lastPath)
+                        .and(PROCESS_STATE.ITEM_PATH.le(pageEnd)))
+                .orderBy(PROCESS_STATE.ITEM_PATH)
+                .fetch(r -> new ExportItem(r.value1(), r.value2(), r.value3(), r.value4()));
+    }
+
+    private static Condition exportPageCondition(ProcessKey processKey, String lastPath) {
+        return PROCESS_STATE.INSTANCE_ID.eq(processKey.getInstanceId())
+                .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()))
+                .and(lastPath != null ? PROCESS_STATE.ITEM_PATH.gt(lastPath) : DSL.noCondition());
     }
 
     /**
@@ -459,8 +690,8 @@ public class ProcessStateManager extends AbstractDao {
 
         try (DSLContext tx = DSL.using(cfg)) {
             String sql = tx
-                    .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
-                    .from(PROCESS_STATE)
+                    .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, STATE_DATA)
+                    .from(STATE_WITH_DATA)
                     .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null)
                             .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((Timestamp) null))
                             .and(PROCESS_STATE.ITEM_PATH.startsWith((String) null)))
@@ -505,6 +736,30 @@ public class ProcessStateManager extends AbstractDao {
         return SecretUtils.encrypt(in, secretCfg.getServerPwd(), secretCfg.getSecretStoreSalt());
     }
 
+    private static byte[] hash(byte[] data) {
+        MessageDigest md = sha256();
+        return md.digest(data);
+    }
+
+    private static byte[] hash(Path file) throws IOException {
+        MessageDigest md = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), md)) {
+            byte[] ab = new byte[8192];
+            while (in.read(ab) >= 0) {
+                // just read the data
+            }
+        }
+        return md.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private static String fixPath(String p) {
         if (p == null) {
             return null;
@@ -666,6 +921,15 @@ public class ProcessStateManager extends AbstractDao {
             ZipArchiveEntry entry = new ZipArchiveEntry(name);
             entry.setUnixMode(unixMode);
 
+            // allow the archive to be extracted while it is still being received:
+            // DEFLATED entries can be read sequentially (STORED entries with
+            // data descriptors can't) and the unix mode is duplicated in the local
+            // header (the "external attributes" are only in the central directory)
+            entry.setMethod(ZipArchiveEntry.DEFLATED);
+            AsiExtraField asi = new AsiExtraField();
+            asi.setMode(unixMode);
+            entry.addExtraField(asi);
+
             try {
                 dst.putArchiveEntry(entry);
                 IOUtils.copy(src, dst);
@@ -694,18 +958,151 @@ public class ProcessStateManager extends AbstractDao {
         }
     }
 
+    private static final class ExportItem {
+
+        private final String path;
+        private final int unixMode;
+        private final boolean encrypted;
+        private final byte[] data;
+
+        private ExportItem(String path, int unixMode, boolean encrypted, byte[] data) {
+            this.path = path;
+            this.unixMode = unixMode;
+            this.encrypted = encrypted;
+            this.data = data;
+        }
+    }
+
     private static final class BatchItem {
 
         private final String itemPath;
         private final Path path;
+        private final long size;
         private final int unixMode;
         private final boolean needsEncryption;
+        private final byte[] hash;
 
-        private BatchItem(String itemPath, Path path, int unixMode, boolean needsEncryption) {
+        private BatchItem(String itemPath, Path path, long size, int unixMode, boolean needsEncryption, byte[] hash) { // NOSONAR
             this.itemPath = itemPath;
             this.path = path;
+            this.size = size;
             this.unixMode = unixMode;
             this.needsEncryption = needsEncryption;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Writes rows in the {@code COPY ... FROM STDIN} text format.
+     * The data is sent to the DB in chunks of {@link #BUFFER_SIZE} bytes.
+     */
+    private static final class CopyWriter {
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] NULL = "\\N".getBytes(StandardCharsets.US_ASCII);
+
+        // bytea in the hex format, the backslash must be escaped
+        private static final byte[] HEX_PREFIX = "\\\\x".getBytes(StandardCharsets.US_ASCII);
+
+        private final CopyIn copyIn;
+        private final byte[] buf = new byte[BUFFER_SIZE];
+        private int len;
+        private boolean firstValue = true;
+
+        private CopyWriter(CopyIn copyIn) {
+            this.copyIn = copyIn;
+        }
+
+        public CopyWriter value(String s) throws SQLException {
+            separator();
+
+            if (s == null) {
+                write(NULL);
+                return this;
+            }
+
+            StringBuilder sb = new StringBuilder(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    case '\t':
+                        sb.append("\\t");
+                        break;
+                    case '\n':
+                        sb.append("\\n");
+                        break;
+                    case '\r':
+                        sb.append("\\r");
+                        break;
+                    default:
+                        sb.append(c);
+                }
+            }
+
+            write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return this;
+        }
+
+        public CopyWriter value(byte[] ab) throws SQLException {
+            separator();
+
+            if (ab == null) {
+                write(NULL);
+                return this;
+            }
+
+            write(HEX_PREFIX);
+            for (byte b : ab) {
+                write(HEX[(b >> 4) & 0xF]);
+                write(HEX[b & 0xF]);
+            }
+
+            return this;
+        }
+
+        public void endRow() throws SQLException {
+            write((byte) '\n');
+            firstValue = true;
+        }
+
+        /**
+         * Sends the remaining data and completes the {@code COPY}.
+         */
+        public void finish() throws SQLException {
+            flush();
+            copyIn.endCopy();
+        }
+
+        private void separator() throws SQLException {
+            if (!firstValue) {
+                write((byte) '\t');
+            }
+            firstValue = false;
+        }
+
+        private void write(byte[] ab) throws SQLException {
+            for (byte b : ab) {
+                write(b);
+            }
+        }
+
+        private void write(byte b) throws SQLException {
+            if (len == buf.length) {
+                flush();
+            }
+            buf[len++] = b;
+        }
+
+        private void flush() throws SQLException {
+            if (len > 0) {
+                copyIn.writeToCopy(buf, 0, len);
+                len = 0;
+            }
         }
     }
 }
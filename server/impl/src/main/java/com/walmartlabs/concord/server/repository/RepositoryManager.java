@@ -54,13 +54,14 @@ public class RepositoryManager {
     private final RepositoryProviders providers;
     private final ProjectDao projectDao;
     private final SecretManager secretManager;
+    private final RepositoryExportCache exportCache;
     private RepositoryConfiguration repoCfg;
 
     @Inject
     public RepositoryManager(GitConfiguration gitCfg,
                              RepositoryConfiguration repoCfg,
                              ProjectDao projectDao,
-                             SecretManager secretManager) {
+                             SecretManager secretManager) throws IOException {
 
         GitClientConfiguration gitCliCfg = GitClientConfiguration.builder()
                 .oauthToken(gitCfg.getOauthToken())
@@ -77,6 +78,7 @@ public class RepositoryManager {
         this.secretManager = secretManager;
         this.projectDao = projectDao;
         this.repoCfg = repoCfg;
+        this.exportCache = new RepositoryExportCache(repoCfg.getSnapshotDir(), repoCfg.getSnapshotMaxSize(), repoCfg.isSnapshotHardLinks());
     }
 
     public void testConnection(UUID orgId, UUID projectId, String uri, String branch, String commitId, String path, String secretName) {
@@ -118,6 +120,21 @@ public class RepositoryManager {
         return providers.fetch(repository.getUrl(), repository.getBranch(), repository.getCommitId(), repository.getPath(), secret, repoCfg.getCacheDir());
     }
 
+    /**
+     * Exports the repository into the specified directory. The exported
+     * commits are cached, see {@link RepositoryExportCache}.
+     */
+    public RepositoryExportCache.Result export(UUID projectId, RepositoryEntry repository, Path dst) throws IOException {
+        // snapshots are not shared between projects, each project uses its own credentials
+        String key = repository.getId() + "/" + repository.getUrl() + "/" + repository.getPath();
+
+        return exportCache.export(key, repository.getBranch(), repository.getCommitId(), dst, callback ->
+                withLock(repository.getUrl(), () -> {
+                    callback.accept(fetch(projectId, repository));
+                    return null;
+                }));
+    }
+
     public <T> T withLock(String repoUrl, Callable<T> f) {
         return providers.withLock(repoUrl, f);
     }
@@ -28,9 +28,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 public class WebSocketChannel {
 
@@ -104,6 +107,16 @@ public class WebSocketChannel {
                 .findAny().orElse(null);
     }
 
+    /**
+     * Returns all requests of the specified type, ordered by their correlation IDs.
+     */
+    public List<Message> getRequests(MessageType requestType) {
+        return requests.values().stream()
+                .filter(m -> m.getMessageType() == requestType)
+                .sorted(Comparator.comparingLong(Message::getCorrelationId))
+                .collect(Collectors.toList());
+    }
+
     public void close() {
         if (!session.isOpen()) {
             return;
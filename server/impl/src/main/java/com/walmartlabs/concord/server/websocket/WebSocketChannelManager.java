@@ -28,9 +28,11 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Named
 @Singleton
@@ -39,6 +41,7 @@ public class WebSocketChannelManager {
     private static final Logger log = LoggerFactory.getLogger(WebSocketChannelManager.class);
 
     private final Map<UUID, WebSocketChannel> channels = new ConcurrentHashMap<>();
+    private final List<RequestListener> listeners = new CopyOnWriteArrayList<>();
 
     private volatile boolean isShutdown;
 
@@ -73,6 +76,16 @@ public class WebSocketChannelManager {
         }
 
         channel.onRequest(message);
+
+        listeners.forEach(l -> l.onRequest(message.getMessageType()));
+    }
+
+    /**
+     * Registers a listener which is called every time a new request
+     * is received from any of the channels.
+     */
+    public void addRequestListener(RequestListener listener) {
+        listeners.add(listener);
     }
 
     /**
@@ -110,6 +123,22 @@ public class WebSocketChannelManager {
         return result;
     }
 
+    /**
+     * Returns all requests of the specified type. Unlike {@link #getRequests(MessageType)},
+     * includes all requests of each channel, not just one.
+     */
+    @SuppressWarnings("unchecked")
+    public <E> Map<WebSocketChannel, List<E>> getAllRequests(MessageType requestType) {
+        Map<WebSocketChannel, List<E>> result = new HashMap<>();
+        channels.forEach((channelId, channel) -> {
+            List<Message> l = channel.getRequests(requestType);
+            if (!l.isEmpty()) {
+                result.put(channel, (List<E>) l);
+            }
+        });
+        return result;
+    }
+
     public void add(UUID channelId, WebSocketChannel channel) {
         channels.put(channelId, channel);
     }
@@ -117,4 +146,9 @@ public class WebSocketChannelManager {
     public int connectedClientsCount() {
         return channels.size();
     }
+
+    public interface RequestListener {
+
+        void onRequest(MessageType requestType);
+    }
 }
@@ -27,7 +27,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.PatternSyntaxException;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -51,7 +53,7 @@ public class MapMatcherTest {
         conditions.put("e", true);
         conditions.put("f", Arrays.asList("1", "2"));
 
-        boolean result = MapMatcher.matches(event, conditions);
+        boolean result = matches(event, conditions);
         assertTrue(result);
     }
 
@@ -67,7 +69,7 @@ public class MapMatcherTest {
 
         Map<String, Object> conditions = new HashMap<>();
 
-        boolean result = MapMatcher.matches(event, conditions);
+        boolean result = matches(event, conditions);
         assertTrue(result);
     }
 
@@ -84,7 +86,7 @@ public class MapMatcherTest {
         Map<String, Object> conditions = new HashMap<>();
         conditions.put("b", "XXXX");
 
-        boolean result = MapMatcher.matches(event, conditions);
+        boolean result = matches(event, conditions);
         assertFalse(result);
     }
 
@@ -96,7 +98,7 @@ public class MapMatcherTest {
         Map<String, Object> conditions = new HashMap<>();
         conditions.put("a", "123");
 
-        boolean result = MapMatcher.matches(event, conditions);
+        boolean result = matches(event, conditions);
         assertFalse(result);
     }
 
@@ -114,7 +116,7 @@ public class MapMatcherTest {
         conditions.put("a", 100);
         conditions.put("obj", Collections.singletonMap("o1", "o1v1"));
 
-        boolean result = MapMatcher.matches(event, conditions);
+        boolean result = matches(event, conditions);
         assertTrue(result);
     }
 
@@ -126,7 +128,7 @@ public class MapMatcherTest {
         Map<String, Object> conditions = new HashMap<>();
         conditions.put("unknownRepo", Arrays.asList(true, false));
 
-        boolean result = MapMatcher.matches(event, conditions);
+        boolean result = matches(event, conditions);
         assertTrue(result);
     }
 
@@ -138,7 +140,65 @@ public class MapMatcherTest {
         Map<String, Object> conditions = new HashMap<>();
         conditions.put("unknownRepo", Collections.singletonList(false));
 
-        boolean result = MapMatcher.matches(event, conditions);
+        boolean result = matches(event, conditions);
         assertFalse(result);
     }
+
+    @Test
+    public void testListOfPatterns() {
+        Map<String, Object> event = new HashMap<>();
+        event.put("branch", "master");
+        event.put("tags", Arrays.asList("a", "bb", "ccc"));
+
+        Map<String, Object> conditions = new HashMap<>();
+        conditions.put("branch", Arrays.asList("dev", "mast.*", "master"));
+        conditions.put("tags", Arrays.asList("b+", "c{3}"));
+
+        assertTrue(matches(event, conditions));
+
+        conditions.put("tags", Arrays.asList("b+", "d"));
+        assertFalse(matches(event, conditions));
+    }
+
+    @Test
+    public void testCompiledReuse() {
+        Map<String, Object> conditions = new HashMap<>();
+        conditions.put("type", "k8s|docker");
+        conditions.put("flavor", Collections.singletonMap("size", "(small|large)"));
+
+        MapMatcher.Compiled m = MapMatcher.compile(conditions);
+
+        Map<String, Object> a = new HashMap<>();
+        a.put("type", "k8s");
+        a.put("flavor", Collections.singletonMap("size", "large"));
+        assertTrue(m.matches(a));
+
+        Map<String, Object> b = new HashMap<>();
+        b.put("type", "docker");
+        b.put("flavor", Collections.singletonMap("size", "medium"));
+        assertFalse(m.matches(b));
+
+        assertFalse(m.matches(Collections.emptyMap()));
+        assertTrue(MapMatcher.compile(Collections.emptyMap()).matches(a));
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void testInvalidPattern() {
+        Map<String, Object> conditions = Collections.singletonMap("a", "[");
+
+        // invalid patterns are reported only when used, same as with MapMatcher#matches
+        MapMatcher.Compiled m = MapMatcher.compile(conditions);
+        assertFalse(m.matches(Collections.singletonMap("a", 1)));
+
+        m.matches(Collections.singletonMap("a", "b"));
+    }
+
+    /**
+     * Matches using both the regular and the compiled matcher, the results must be the same.
+     */
+    private static boolean matches(Map<String, Object> event, Map<String, Object> conditions) {
+        boolean result = MapMatcher.matches(event, conditions);
+        assertEquals(result, MapMatcher.compile(conditions).matches(event));
+        return result;
+    }
 }
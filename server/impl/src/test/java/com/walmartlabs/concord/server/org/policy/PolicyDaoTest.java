@@ -27,8 +27,13 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
+import static org.junit.Assert.assertEquals;
+
 @Ignore("requires a local DB instance")
 public class PolicyDaoTest extends AbstractDaoTest {
 
@@ -48,4 +53,29 @@ public class PolicyDaoTest extends AbstractDaoTest {
         PolicyRules result = policyDao.getRules(orgId, projectId, userId);
         System.out.println(">>>" + result);
     }
+
+    @Test
+    public void testVersions() {
+        UUID parentId = policyDao.insert("parent_" + UUID.randomUUID(), null, Collections.singletonMap("a", 1));
+        UUID childId = policyDao.insert("child_" + UUID.randomUUID(), parentId, Collections.singletonMap("b", 2));
+
+        // system-wide link
+        policyDao.link(childId, null, null, null);
+
+        try {
+            List<PolicyVersion> versions = policyDao.getVersions(null, null, null);
+            assertEquals(Arrays.asList(PolicyVersion.of(parentId, 0), PolicyVersion.of(childId, 0)), versions);
+            assertEquals(versions, policyDao.getRules(null, null, null).versions());
+
+            // updating the parent must change the versions of the effective policy
+            policyDao.update(parentId, "parent_" + UUID.randomUUID(), null, Collections.singletonMap("a", 2));
+
+            versions = policyDao.getVersions(null, null, null);
+            assertEquals(Arrays.asList(PolicyVersion.of(parentId, 1), PolicyVersion.of(childId, 0)), versions);
+            assertEquals(versions, policyDao.getRules(null, null, null).versions());
+        } finally {
+            policyDao.delete(childId);
+            policyDao.delete(parentId);
+        }
+    }
 }
@@ -0,0 +1,101 @@
+package com.walmartlabs.concord.server.process;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_DATA_PARTITIONS;
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_EVENTS;
+import static org.jooq.impl.DSL.field;
+import static org.junit.Assert.assertEquals;
+
+@Ignore
+public class ProcessPartitionManagerTest extends AbstractDaoTest {
+
+    @Test
+    public void testCreatePartitions() throws Exception {
+        ProcessPartitionManager m = new ProcessPartitionManager(new ProcessPartitionManager.PartitionDao(getConfiguration()));
+        m.performTask();
+
+        DSLContext dsl = DSL.using(getConfiguration());
+
+        // running the task again doesn't create anything new
+        int count = dsl.fetchCount(PROCESS_DATA_PARTITIONS);
+        m.performTask();
+        assertEquals(count, dsl.fetchCount(PROCESS_DATA_PARTITIONS));
+
+        Timestamp createdAt = Timestamp.valueOf(LocalDate.now().plusDays(7).atTime(12, 0));
+        for (String table : ProcessPartitionManager.PARTITIONED_TABLES) {
+            assertEquals(1, dsl.fetchCount(PROCESS_DATA_PARTITIONS, PROCESS_DATA_PARTITIONS.TABLE_NAME.eq(table)
+                    .and(PROCESS_DATA_PARTITIONS.RANGE_FROM.lessOrEqual(createdAt))
+                    .and(PROCESS_DATA_PARTITIONS.RANGE_TO.greaterThan(createdAt))));
+        }
+
+        UUID instanceId = UUID.randomUUID();
+        tx(tx -> tx.insertInto(PROCESS_EVENTS)
+                .set(PROCESS_EVENTS.INSTANCE_ID, instanceId)
+                .set(PROCESS_EVENTS.INSTANCE_CREATED_AT, createdAt)
+                .set(PROCESS_EVENTS.EVENT_TYPE, "TEST")
+                .set(PROCESS_EVENTS.EVENT_DATE, createdAt)
+                .set(PROCESS_EVENTS.EVENT_DATA, field("'{}'::jsonb", PROCESS_EVENTS.EVENT_DATA.getDataType()))
+                .execute());
+
+        assertEquals(1, dsl.fetchCount(PROCESS_EVENTS, PROCESS_EVENTS.INSTANCE_ID.eq(instanceId)));
+    }
+
+    @Test
+    public void testEnsurePartitions() throws Exception {
+        ProcessPartitionManager m = new ProcessPartitionManager(new ProcessPartitionManager.PartitionDao(getConfiguration()));
+
+        // way past the partitions created ahead of time
+        Timestamp createdAt = Timestamp.valueOf(LocalDate.now().plusDays(30).atTime(12, 0));
+        m.ensurePartitions(createdAt);
+
+        DSLContext dsl = DSL.using(getConfiguration());
+        int count = dsl.fetchCount(PROCESS_DATA_PARTITIONS);
+
+        // the second call doesn't create anything new
+        m.ensurePartitions(createdAt);
+        assertEquals(count, dsl.fetchCount(PROCESS_DATA_PARTITIONS));
+
+        UUID instanceId = UUID.randomUUID();
+        tx(tx -> tx.insertInto(PROCESS_EVENTS)
+                .set(PROCESS_EVENTS.INSTANCE_ID, instanceId)
+                .set(PROCESS_EVENTS.INSTANCE_CREATED_AT, createdAt)
+                .set(PROCESS_EVENTS.EVENT_TYPE, "TEST")
+                .set(PROCESS_EVENTS.EVENT_DATE, createdAt)
+                .set(PROCESS_EVENTS.EVENT_DATA, field("'{}'::jsonb", PROCESS_EVENTS.EVENT_DATA.getDataType()))
+                .execute());
+
+        assertEquals(1, dsl.fetchCount(PROCESS_EVENTS, PROCESS_EVENTS.INSTANCE_ID.eq(instanceId)));
+
+        // the regular task skips the partitions created on demand
+        m.performTask();
+    }
+}
@@ -0,0 +1,307 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+
+import com.walmartlabs.concord.server.cfg.ProcessLogConfiguration;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class LogTailManagerTest {
+
+    private ProcessKey processKey;
+    private List<ProcessLogChunk> chunks;
+    private AtomicReference<ProcessStatus> status;
+    private ProcessQueueDao queueDao;
+    private LogTailManager tailManager;
+
+    @Before
+    public void setUp() {
+        processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        chunks = new CopyOnWriteArrayList<>();
+        status = new AtomicReference<>(ProcessStatus.RUNNING);
+
+        ProcessLogsDao logsDao = mock(ProcessLogsDao.class);
+        when(logsDao.get(any(), anyLong(), anyLong())).thenAnswer(i -> {
+            long lo = i.getArgument(1);
+            long hi = i.getArgument(2);
+            return new ProcessLog(0, chunks.stream()
+                    .filter(c -> c.getStart() < hi && c.getStart() + c.getData().length > lo)
+                    .collect(Collectors.toList()));
+        });
+
+        queueDao = mock(ProcessQueueDao.class);
+        when(queueDao.getStatuses(any())).thenAnswer(i -> Collections.singletonMap(processKey.getInstanceId(), status.get()));
+
+        tailManager = new LogTailManager(logsDao, queueDao, new ProcessLogConfiguration(1024, 100, 10));
+    }
+
+    @Test(timeout = 10000)
+    public void testTail() throws Exception {
+        chunks.add(new ProcessLogChunk(0, "one\n".getBytes()));
+
+        Client client = startTail(2);
+
+        // appended on this node
+        client.waitFor("id: 4");
+        ProcessLogChunk c = new ProcessLogChunk(4, "two\r\nthree\n".getBytes());
+        chunks.add(c);
+        tailManager.onAppend(processKey, c.getStart(), c.getData());
+
+        // appended on another node
+        client.waitFor("id: 15");
+        chunks.add(new ProcessLogChunk(15, "four".getBytes()));
+        status.set(ProcessStatus.FINISHED);
+
+        client.awaitCompletion();
+
+        String expected = event(4, "e\n") +
+                event(15, "two\r\nthree\n") +
+                event(19, "four") +
+                "event: end\ndata: FINISHED\n\n";
+
+        assertEquals(expected, client.events());
+    }
+
+    @Test(timeout = 10000)
+    public void testMultibyte() throws Exception {
+        // a multibyte character split between two chunks
+        byte[] ab = "\u00e9\n".getBytes(StandardCharsets.UTF_8);
+        chunks.add(new ProcessLogChunk(0, new byte[]{ab[0]}));
+        chunks.add(new ProcessLogChunk(1, new byte[]{ab[1], ab[2]}));
+        status.set(ProcessStatus.FINISHED);
+
+        Client client = startTail(0);
+        client.awaitCompletion();
+
+        String expected = "id: 1\ndata: " + Base64.getEncoder().encodeToString(new byte[]{ab[0]}) + "\n\n" +
+                "id: 3\ndata: " + Base64.getEncoder().encodeToString(new byte[]{ab[1], ab[2]}) + "\n\n" +
+                "event: end\ndata: FINISHED\n\n";
+
+        assertEquals(expected, client.events());
+    }
+
+    @Test(timeout = 10000)
+    public void testSharedPoller() throws Exception {
+        Client client1 = startTail(0);
+        Client client2 = startTail(0);
+
+        // wait for both clients to start
+        client1.waitFor(":");
+        client2.waitFor(":");
+
+        // appended on another node
+        chunks.add(new ProcessLogChunk(0, "one\n".getBytes()));
+        client1.waitFor("id: 4");
+        client2.waitFor("id: 4");
+
+        status.set(ProcessStatus.FINISHED);
+        client1.awaitCompletion();
+        client2.awaitCompletion();
+
+        String expected = event(4, "one\n") + "event: end\ndata: FINISHED\n\n";
+        assertEquals(expected, client1.events());
+        assertEquals(expected, client2.events());
+
+        // the statuses are fetched by the poller, not by each client
+        verify(queueDao, never()).getStatus(any());
+    }
+
+    @Test(timeout = 10000)
+    public void testSlowClient() throws Exception {
+        // the slow client can't accept any data
+        Client slow = new Client();
+        slow.out.setReady(false);
+        tailManager.tail(processKey, 0, slow.ctx);
+
+        Client fast = startTail(0);
+        fast.waitFor(":");
+
+        ProcessLogChunk c = new ProcessLogChunk(0, "one\n".getBytes());
+        chunks.add(c);
+        tailManager.onAppend(processKey, c.getStart(), c.getData());
+
+        // the other clients get the data without waiting for the slow one
+        fast.waitFor("id: 4");
+        assertEquals("", slow.out.toString());
+
+        slow.out.setReady(true);
+        slow.waitFor("id: 4");
+
+        status.set(ProcessStatus.FINISHED);
+        slow.awaitCompletion();
+        fast.awaitCompletion();
+    }
+
+    @Test(timeout = 30000)
+    public void testManyTails() throws Exception {
+        int threadsBefore = Thread.activeCount();
+
+        // tail() returns right away, if it blocked the test would time out
+        List<Client> clients = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            clients.add(startTail(0));
+        }
+
+        ProcessLogChunk c = new ProcessLogChunk(0, "one\n".getBytes());
+        chunks.add(c);
+        tailManager.onAppend(processKey, c.getStart(), c.getData());
+
+        for (Client client : clients) {
+            client.waitFor("id: 4");
+        }
+
+        // the clients are served by the shared writer threads, not one thread per client
+        assertTrue(Thread.activeCount() - threadsBefore < 10);
+
+        status.set(ProcessStatus.FINISHED);
+
+        String expected = event(4, "one\n") + "event: end\ndata: FINISHED\n\n";
+        for (Client client : clients) {
+            client.awaitCompletion();
+            assertEquals(expected, client.events());
+        }
+    }
+
+    private Client startTail(long offset) throws Exception {
+        Client client = new Client();
+        tailManager.tail(processKey, offset, client.ctx);
+        return client;
+    }
+
+    private static String event(long id, String data) {
+        return "id: " + id + "\ndata: " + Base64.getEncoder().encodeToString(data.getBytes(StandardCharsets.UTF_8)) + "\n\n";
+    }
+
+    /**
+     * An async request of a single client.
+     */
+    private static final class Client {
+
+        private final TestOutputStream out = new TestOutputStream();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private final AsyncContext ctx;
+
+        private Client() throws Exception {
+            HttpServletResponse resp = mock(HttpServletResponse.class);
+            when(resp.getOutputStream()).thenReturn(out);
+
+            ctx = mock(AsyncContext.class);
+            when(ctx.getResponse()).thenReturn(resp);
+            doAnswer(i -> {
+                completed.countDown();
+                return null;
+            }).when(ctx).complete();
+        }
+
+        private void waitFor(String s) throws InterruptedException {
+            while (!out.toString().contains(s)) {
+                Thread.sleep(10);
+            }
+        }
+
+        private void awaitCompletion() throws InterruptedException {
+            completed.await();
+        }
+
+        /**
+         * @return the events without the heartbeats
+         */
+        private String events() {
+            return out.toString().replace(":\n\n", "");
+        }
+    }
+
+    /**
+     * Behaves like the container's non-blocking output stream: the listener
+     * is notified when the client becomes ready.
+     */
+    private static final class TestOutputStream extends ServletOutputStream {
+
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+        private volatile WriteListener listener;
+        private volatile boolean ready = true;
+
+        private void setReady(boolean ready) throws IOException {
+            this.ready = ready;
+            if (ready && listener != null) {
+                listener.onWritePossible();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            this.listener = listener;
+            try {
+                listener.onWritePossible();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            buf.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            buf.write(b, off, len);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return new String(buf.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
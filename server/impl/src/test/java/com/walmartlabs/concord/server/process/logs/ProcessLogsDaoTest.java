@@ -21,10 +21,21 @@ package com.walmartlabs.concord.server.process.logs;
  */
 
 import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.cfg.ProcessLogConfiguration;
 import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import static com.walmartlabs.concord.server.jooq.Routines.processLogNextRange2;
+import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOGS;
+import static org.jooq.impl.DSL.value;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
 import java.sql.Timestamp;
 import java.util.UUID;
 import java.util.concurrent.ThreadLocalRandom;
@@ -34,7 +45,7 @@ public class ProcessLogsDaoTest extends AbstractDaoTest {
 
     @Test
     public void testAppend() throws Exception {
-        ProcessLogsDao processLogsDao = new ProcessLogsDao(getConfiguration());
+        ProcessLogsDao processLogsDao = new ProcessLogsDao(getConfiguration(), new ProcessLogConfiguration(1024 * 1024));
 
         int files = 100;
         int chunks = 10;
@@ -56,4 +67,92 @@ public class ProcessLogsDaoTest extends AbstractDaoTest {
             }
         }
     }
+
+    @Test
+    public void testSegments() throws Exception {
+        ProcessLogsDao processLogsDao = new ProcessLogsDao(getConfiguration(), new ProcessLogConfiguration(100));
+
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 50; i++) {
+            byte[] line = String.format("line %02d\n", i).getBytes();
+            processLogsDao.append(processKey, line);
+            expected.write(line);
+        }
+
+        byte[] all = expected.toByteArray();
+
+        // entire log
+        ProcessLog l = processLogsDao.get(processKey, null, null);
+        assertEquals(all.length, l.getSize());
+        assertArrayEquals(all, toBytes(l));
+        // 400 bytes in total, the first three segments are rolled
+        assertTrue(l.getChunks().size() < 50);
+
+        // ranges are expanded to the whole chunks
+        l = processLogsDao.get(processKey, 10L, 20L);
+        assertEquals(8, l.getChunks().get(0).getStart());
+        assertEquals("line 01\nline 02\n", new String(toBytes(l)));
+
+        l = processLogsDao.get(processKey, 390L, null);
+        assertEquals(384, l.getChunks().get(0).getStart());
+        assertEquals("line 48\nline 49\n", new String(toBytes(l)));
+
+        // the last N bytes
+        l = processLogsDao.get(processKey, null, 12L);
+        assertEquals(384, l.getChunks().get(0).getStart());
+        assertEquals("line 48\nline 49\n", new String(toBytes(l)));
+
+        // past the end
+        l = processLogsDao.get(processKey, 400L, null);
+        assertTrue(l.getChunks().isEmpty());
+        assertEquals(all.length, l.getSize());
+    }
+
+    @Test
+    public void testLegacyLogs() throws Exception {
+        ProcessLogsDao processLogsDao = new ProcessLogsDao(getConfiguration(), new ProcessLogConfiguration(100));
+
+        UUID instanceId = UUID.randomUUID();
+        Timestamp createdAt = new Timestamp(System.currentTimeMillis());
+        ProcessKey processKey = new ProcessKey(instanceId, createdAt);
+
+        for (int i = 0; i < 2; i++) {
+            byte[] line = String.format("line %02d\n", i).getBytes();
+            tx(tx -> tx.insertInto(PROCESS_LOGS)
+                    .columns(PROCESS_LOGS.INSTANCE_ID,
+                            PROCESS_LOGS.INSTANCE_CREATED_AT,
+                            PROCESS_LOGS.CHUNK_RANGE,
+                            PROCESS_LOGS.CHUNK_DATA)
+                    .values(value(instanceId),
+                            value(createdAt),
+                            processLogNextRange2(instanceId, createdAt, line.length),
+                            value(line))
+                    .execute());
+        }
+
+        ProcessLog l = processLogsDao.get(processKey, null, null);
+        assertEquals(16, l.getSize());
+        assertEquals("line 00\nline 01\n", new String(toBytes(l)));
+
+        // the first append moves the legacy data
+        processLogsDao.append(processKey, "line 02\n".getBytes());
+
+        l = processLogsDao.get(processKey, null, 8L);
+        assertEquals(24, l.getSize());
+        assertEquals(16, l.getChunks().get(0).getStart());
+        assertEquals("line 02\n", new String(toBytes(l)));
+
+        l = processLogsDao.get(processKey, null, null);
+        assertEquals("line 00\nline 01\nline 02\n", new String(toBytes(l)));
+    }
+
+    private static byte[] toBytes(ProcessLog l) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (ProcessLogChunk c : l.getChunks()) {
+            out.write(c.getData());
+        }
+        return out.toByteArray();
+    }
 }
@@ -0,0 +1,133 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class ProcessCompletionWatcherTest {
+
+    @Test(timeout = 10000)
+    public void testStatusChange() throws Exception {
+        UUID instanceId = UUID.randomUUID();
+
+        Map<UUID, ProcessStatus> statuses = new ConcurrentHashMap<>();
+        statuses.put(instanceId, ProcessStatus.RUNNING);
+
+        ProcessQueueDao queueDao = mock(ProcessQueueDao.class);
+        when(queueDao.getStatuses(any())).thenAnswer(i -> statuses);
+
+        ProcessQueueListener queueListener = mock(ProcessQueueListener.class);
+        ArgumentCaptor<ProcessQueueListener.Listener> listener = ArgumentCaptor.forClass(ProcessQueueListener.Listener.class);
+
+        ProcessCompletionWatcher watcher = new ProcessCompletionWatcher(queueDao, queueListener);
+        verify(queueListener).addListener(listener.capture());
+
+        CompletableFuture<ProcessStatus> f = watcher.watch(instanceId, -1);
+        verify(queueDao, timeout(5000)).getStatuses(any());
+        assertFalse(f.isDone());
+
+        statuses.put(instanceId, ProcessStatus.FINISHED);
+        listener.getValue().onStatusChange(ProcessStatus.FINISHED);
+
+        assertEquals(ProcessStatus.FINISHED, f.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void testCallbackThread() throws Exception {
+        UUID instanceId = UUID.randomUUID();
+
+        ProcessQueueDao queueDao = mock(ProcessQueueDao.class);
+        when(queueDao.getStatuses(any())).thenAnswer(i -> {
+            Map<UUID, ProcessStatus> m = new ConcurrentHashMap<>();
+            m.put(instanceId, ProcessStatus.FINISHED);
+            return m;
+        });
+
+        ProcessCompletionWatcher watcher = new ProcessCompletionWatcher(queueDao, mock(ProcessQueueListener.class));
+
+        // the callbacks must not block the watcher's thread
+        String thread = watcher.watch(instanceId, -1)
+                .thenApply(s -> Thread.currentThread().getName())
+                .get(5, TimeUnit.SECONDS);
+
+        assertNotEquals("process-completion-watcher", thread);
+    }
+
+    @Test(timeout = 10000)
+    @SuppressWarnings("unchecked")
+    public void testCancel() throws Exception {
+        UUID cancelled = UUID.randomUUID();
+        UUID active = UUID.randomUUID();
+
+        ProcessQueueDao queueDao = mock(ProcessQueueDao.class);
+        when(queueDao.getStatuses(any())).thenAnswer(i -> {
+            Map<UUID, ProcessStatus> m = new ConcurrentHashMap<>();
+            for (UUID id : (List<UUID>) i.getArgument(0)) {
+                m.put(id, ProcessStatus.RUNNING);
+            }
+            return m;
+        });
+
+        ProcessCompletionWatcher watcher = new ProcessCompletionWatcher(queueDao, mock(ProcessQueueListener.class));
+
+        CompletableFuture<ProcessStatus> f = watcher.watch(cancelled, -1);
+        verify(queueDao, timeout(5000)).getStatuses(any());
+        f.cancel(false);
+
+        // the next check must skip the cancelled watcher
+        ArgumentCaptor<List<UUID>> ids = ArgumentCaptor.forClass(List.class);
+        watcher.watch(active, -1);
+        verify(queueDao, timeout(5000).times(2)).getStatuses(ids.capture());
+        assertEquals(Collections.singletonList(active), ids.getValue());
+    }
+
+    @Test(timeout = 10000)
+    public void testTimeout() throws Exception {
+        UUID instanceId = UUID.randomUUID();
+
+        ProcessQueueDao queueDao = mock(ProcessQueueDao.class);
+        when(queueDao.getStatuses(any())).thenAnswer(i -> {
+            Map<UUID, ProcessStatus> m = new ConcurrentHashMap<>();
+            m.put(instanceId, ProcessStatus.RUNNING);
+            return m;
+        });
+
+        ProcessCompletionWatcher watcher = new ProcessCompletionWatcher(queueDao, mock(ProcessQueueListener.class));
+
+        CompletableFuture<ProcessStatus> f = watcher.watch(instanceId, 100);
+        assertNull(f.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,95 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.db.DatabaseConfiguration;
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.ConcordObjectMapper;
+import com.walmartlabs.concord.server.TestObjectMapper;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.ProcessKind;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+@Ignore("requires a local DB instance")
+public class ProcessQueueListenerTest extends AbstractDaoTest {
+
+    @Test(timeout = 30000)
+    public void testNotifications() throws Exception {
+        ProcessQueueDao queueDao = new ProcessQueueDao(getConfiguration(), new ConcordObjectMapper(TestObjectMapper.INSTANCE));
+
+        ProcessQueueListener listener = new ProcessQueueListener(new TestDatabaseConfiguration());
+
+        CountDownLatch enqueued = new CountDownLatch(1);
+        listener.addListener(status -> {
+            if (status == ProcessStatus.ENQUEUED) {
+                enqueued.countDown();
+            }
+        });
+
+        listener.start();
+        try {
+            // wait for the listener to connect
+            Thread.sleep(1000);
+
+            ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+            tx(tx -> {
+                queueDao.insert(tx, processKey, ProcessStatus.NEW, ProcessKind.DEFAULT, null, null, null, null, null, null);
+                queueDao.updateStatus(tx, processKey, ProcessStatus.ENQUEUED);
+            });
+
+            assertTrue(enqueued.await(10, TimeUnit.SECONDS));
+        } finally {
+            listener.stop();
+        }
+    }
+
+    private static class TestDatabaseConfiguration implements DatabaseConfiguration {
+
+        @Override
+        public String url() {
+            return "jdbc:postgresql://localhost:5432/postgres";
+        }
+
+        @Override
+        public String username() {
+            return "postgres";
+        }
+
+        @Override
+        public String password() {
+            return "q1";
+        }
+
+        @Override
+        public int maxPoolSize() {
+            return 1;
+        }
+    }
+}
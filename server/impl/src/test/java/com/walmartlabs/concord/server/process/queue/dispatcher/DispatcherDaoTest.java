@@ -0,0 +1,360 @@
+package com.walmartlabs.concord.server.process.queue.dispatcher;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.ConcordObjectMapper;
+import com.walmartlabs.concord.server.TestObjectMapper;
+import com.walmartlabs.concord.server.cfg.DispatcherConfiguration;
+import com.walmartlabs.concord.server.jooq.tables.records.ProcessQueueRecord;
+import com.walmartlabs.concord.server.org.OrganizationDao;
+import com.walmartlabs.concord.server.org.OrganizationEntry;
+import com.walmartlabs.concord.server.org.project.ProjectDao;
+import com.walmartlabs.concord.server.org.project.RepositoryDao;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.ProcessKind;
+import com.walmartlabs.concord.server.process.ProcessPartitionManager;
+import com.walmartlabs.concord.server.process.event.ProcessEventDao;
+import com.walmartlabs.concord.server.process.logs.LogManager;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueEntry;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueListener;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueManager;
+import com.walmartlabs.concord.server.queueclient.message.Message;
+import com.walmartlabs.concord.server.queueclient.message.MessageType;
+import com.walmartlabs.concord.server.queueclient.message.ProcessRequest;
+import com.walmartlabs.concord.server.queueclient.message.ProcessResponse;
+import com.walmartlabs.concord.server.sdk.ProcessStatus;
+import com.walmartlabs.concord.server.websocket.WebSocketChannel;
+import com.walmartlabs.concord.server.websocket.WebSocketChannelManager;
+import org.jooq.InsertValuesStep6;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Ignore("requires a local DB instance")
+public class DispatcherDaoTest extends AbstractDaoTest {
+
+    /**
+     * The number of concurrent dispatchers, must not exceed the size of the test's connection pool.
+     */
+    private static final int NODES = 3;
+    private static final int ORGS = 16;
+    private static final int PROCESSES = 400;
+    private static final int BATCH_SIZE = 10;
+    private static final int LOCK_SHARDS = 4;
+    private static final int QUEUE_DEPTH = 100;
+
+    private OrganizationDao orgDao;
+    private ProjectDao projectDao;
+    private ProcessQueueDao queueDao;
+    private Dispatcher.DispatcherDao dispatcherDao;
+
+    @Before
+    public void setUp() {
+        ConcordObjectMapper objectMapper = new ConcordObjectMapper(TestObjectMapper.INSTANCE);
+        orgDao = new OrganizationDao(getConfiguration(), objectMapper);
+        projectDao = new ProjectDao(getConfiguration(), objectMapper);
+        queueDao = new ProcessQueueDao(getConfiguration(), objectMapper);
+        dispatcherDao = new Dispatcher.DispatcherDao(getConfiguration(), objectMapper);
+    }
+
+    @Test(timeout = 300000)
+    public void testConcurrentDispatchers() throws Exception {
+        List<UUID> projectIds = new ArrayList<>();
+        for (int i = 0; i < ORGS; i++) {
+            UUID orgId = orgDao.insert("org_" + UUID.randomUUID(), null, null, null, null);
+            projectIds.add(projectDao.insert(orgId, "project_" + UUID.randomUUID(), null, null, null, null, null, new byte[0], null));
+        }
+
+        Set<UUID> instanceIds = new HashSet<>();
+        tx(tx -> {
+            for (int i = 0; i < PROCESSES; i++) {
+                ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+                UUID projectId = projectIds.get(i % projectIds.size());
+                queueDao.insert(tx, processKey, ProcessStatus.NEW, ProcessKind.DEFAULT, null, projectId, null, null, null, null);
+                queueDao.updateStatus(tx, processKey, ProcessStatus.ENQUEUED);
+                instanceIds.add(processKey.getInstanceId());
+            }
+        });
+
+        // every response sent by any of the dispatchers
+        List<UUID> picked = Collections.synchronizedList(new ArrayList<>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(NODES);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < NODES; i++) {
+                // each dispatcher acts as a separate server node with its own connected agent
+                Dispatcher dispatcher = createDispatcher(picked);
+                results.add(executor.submit(() -> {
+                    start.await();
+
+                    while (countPicked(picked, instanceIds) < PROCESSES) {
+                        dispatcher.performTask();
+                    }
+
+                    return null;
+                }));
+            }
+
+            start.countDown();
+
+            for (Future<?> f : results) {
+                f.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // each process must be sent to exactly one agent
+        List<UUID> ours = new ArrayList<>();
+        synchronized (picked) {
+            for (UUID id : picked) {
+                if (instanceIds.contains(id)) {
+                    ours.add(id);
+                }
+            }
+        }
+
+        assertEquals(PROCESSES, ours.size());
+        assertEquals(instanceIds, new HashSet<>(ours));
+    }
+
+    @Test
+    public void testExclusiveWithinBatch() throws Exception {
+        ConcordObjectMapper objectMapper = new ConcordObjectMapper(TestObjectMapper.INSTANCE);
+        ProcessQueueManager queueManager = new ProcessQueueManager(queueDao, new ProcessEventDao(getConfiguration(), objectMapper),
+                new ProcessPartitionManager(new ProcessPartitionManager.PartitionDao(getConfiguration())), objectMapper);
+        ExclusiveProcessFilter filter = new ExclusiveProcessFilter(queueManager);
+
+        UUID orgId = orgDao.insert("org_" + UUID.randomUUID(), null, null, null, null);
+        UUID projectId = projectDao.insert(orgId, "project_" + UUID.randomUUID(), null, null, null, null, null, new byte[0], null);
+
+        Map<String, Object> exclusive = new HashMap<>();
+        exclusive.put("group", "test");
+        exclusive.put("mode", "wait");
+
+        tx(tx -> {
+            for (int i = 0; i < 3; i++) {
+                ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+                queueDao.insert(tx, processKey, ProcessStatus.NEW, ProcessKind.DEFAULT, null, projectId, null, null, null, null);
+                queueDao.updateExclusive(tx, processKey, exclusive);
+                queueDao.updateStatus(tx, processKey, ProcessStatus.ENQUEUED);
+            }
+        });
+
+        // dispatch all candidates of the project in a single transaction
+        int dispatched = dispatcherDao.txResult(tx -> {
+            int result = 0;
+            for (ProcessQueueEntry e : dispatcherDao.next(tx, null, 100)) {
+                if (!projectId.equals(e.projectId())) {
+                    continue;
+                }
+
+                if (filter.apply(tx, e)) {
+                    queueDao.updateStatus(tx, e.key(), ProcessStatus.STARTING);
+                    result++;
+                }
+            }
+            return result;
+        });
+
+        // only one process of the exclusive group can be dispatched, the rest must wait for it
+        assertEquals(1, dispatched);
+
+        List<ProcessQueueEntry> remaining = dispatcherDao.txResult(tx -> dispatcherDao.next(tx, null, 100));
+        assertTrue(remaining.stream().noneMatch(e -> projectId.equals(e.projectId())));
+    }
+
+    @Test
+    public void testKeysetPagination() throws Exception {
+        UUID orgId = orgDao.insert("org_" + UUID.randomUUID(), null, null, null, null);
+        UUID projectId = projectDao.insert(orgId, "project_" + UUID.randomUUID(), null, null, null, null, null, new byte[0], null);
+
+        // the test's processes go before any other processes in the queue
+        long now = Timestamp.valueOf("2000-01-01 00:00:00").getTime();
+        Timestamp end = new Timestamp(now + TimeUnit.HOURS.toMillis(1));
+
+        // two processes per timestamp, the ties are resolved using the instance IDs
+        List<ProcessKey> initial = new ArrayList<>();
+        for (int i = 0; i < QUEUE_DEPTH; i++) {
+            initial.add(new ProcessKey(UUID.randomUUID(), new Timestamp(now + i / 2)));
+        }
+        enqueue(projectId, initial);
+
+        Set<UUID> expected = new HashSet<>();
+        initial.forEach(k -> expected.add(k.getInstanceId()));
+
+        Set<UUID> unexpected = new HashSet<>();
+
+        try {
+            List<ProcessQueueEntry> result = new ArrayList<>();
+
+            ProcessKey cursor = null;
+            for (int page = 0; ; page++) {
+                ProcessKey after = cursor;
+                List<ProcessQueueEntry> l = dispatcherDao.txResult(tx -> dispatcherDao.next(tx, after, BATCH_SIZE));
+
+                l.stream()
+                        .filter(e -> projectId.equals(e.projectId()))
+                        .forEach(result::add);
+
+                if (l.size() < BATCH_SIZE || l.get(l.size() - 1).key().getCreatedAt().after(end)) {
+                    // the rest of the queue doesn't belong to the test
+                    break;
+                }
+
+                cursor = l.get(l.size() - 1).key();
+
+                // modify the queue between the pages, the same way the other server nodes do
+
+                // a process after the cursor is removed (e.g. dispatched by another node)
+                int idx = QUEUE_DEPTH / 2 + page;
+                if (idx < initial.size()) {
+                    ProcessKey removed = initial.get(idx);
+                    if (result.stream().noneMatch(e -> e.key().getInstanceId().equals(removed.getInstanceId()))) {
+                        delete(removed);
+                        expected.remove(removed.getInstanceId());
+                        unexpected.add(removed.getInstanceId());
+                    }
+                }
+
+                // a new process is added to the end of the queue
+                ProcessKey tail = new ProcessKey(UUID.randomUUID(), new Timestamp(now + QUEUE_DEPTH + page));
+                enqueue(projectId, Collections.singletonList(tail));
+                expected.add(tail.getInstanceId());
+
+                // a process is added before the cursor (e.g. a process with an older creation date was resumed)
+                ProcessKey head = new ProcessKey(UUID.randomUUID(), new Timestamp(now - 1 - page));
+                enqueue(projectId, Collections.singletonList(head));
+                unexpected.add(head.getInstanceId());
+            }
+
+            Set<UUID> ids = new HashSet<>();
+            for (int i = 0; i < result.size(); i++) {
+                ProcessQueueEntry e = result.get(i);
+
+                // no duplicates
+                assertTrue("duplicate: " + e.key(), ids.add(e.key().getInstanceId()));
+
+                // the order is preserved across the page boundaries
+                if (i > 0) {
+                    assertFalse(e.key().getCreatedAt().before(result.get(i - 1).key().getCreatedAt()));
+                }
+            }
+
+            // no gaps
+            assertEquals(expected, ids);
+
+            // the processes removed or added behind the cursor are not returned
+            for (UUID id : unexpected) {
+                assertFalse(ids.contains(id));
+            }
+        } finally {
+            tx(tx -> tx.deleteFrom(PROCESS_QUEUE)
+                    .where(PROCESS_QUEUE.PROJECT_ID.eq(projectId))
+                    .execute());
+        }
+    }
+
+    private void enqueue(UUID projectId, List<ProcessKey> keys) {
+        tx(tx -> {
+            InsertValuesStep6<ProcessQueueRecord, UUID, String, UUID, Timestamp, String, Timestamp> q = tx.insertInto(PROCESS_QUEUE,
+                    PROCESS_QUEUE.INSTANCE_ID, PROCESS_QUEUE.PROCESS_KIND, PROCESS_QUEUE.PROJECT_ID,
+                    PROCESS_QUEUE.CREATED_AT, PROCESS_QUEUE.CURRENT_STATUS, PROCESS_QUEUE.LAST_UPDATED_AT);
+
+            for (ProcessKey k : keys) {
+                q.values(k.getInstanceId(), ProcessKind.DEFAULT.name(), projectId, k.getCreatedAt(), ProcessStatus.ENQUEUED.name(), k.getCreatedAt());
+            }
+
+            q.execute();
+        });
+    }
+
+    private void delete(ProcessKey key) {
+        tx(tx -> tx.deleteFrom(PROCESS_QUEUE)
+                .where(PROCESS_QUEUE.INSTANCE_ID.eq(key.getInstanceId()))
+                .execute());
+    }
+
+    /**
+     * Creates a {@link Dispatcher} with a single agent channel. The agent
+     * always requests {@link #BATCH_SIZE} processes, the IDs of the processes
+     * sent to the agent are added to {@code picked}.
+     */
+    @SuppressWarnings("unchecked")
+    private Dispatcher createDispatcher(List<UUID> picked) {
+        DispatcherConfiguration cfg = mock(DispatcherConfiguration.class);
+        when(cfg.getBatchSize()).thenReturn(BATCH_SIZE);
+        when(cfg.getLockShards()).thenReturn(LOCK_SHARDS);
+
+        WebSocketChannel channel = mock(WebSocketChannel.class);
+        when(channel.getChannelId()).thenReturn(UUID.randomUUID());
+
+        WebSocketChannelManager channelManager = mock(WebSocketChannelManager.class);
+        when(channelManager.getAllRequests(MessageType.PROCESS_REQUEST)).thenAnswer(invocation -> {
+            List<ProcessRequest> l = new ArrayList<>();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                l.add(new ProcessRequest(Collections.emptyMap()));
+            }
+            return Collections.singletonMap(channel, l);
+        });
+        when(channelManager.sendResponse(any(UUID.class), any(Message.class))).thenAnswer(invocation -> {
+            ProcessResponse resp = invocation.getArgument(1);
+            picked.add(resp.getProcessId());
+            return true;
+        });
+
+        // the org's name is fetched using a separate connection, the test's pool is too small for that
+        OrganizationDao organizationDao = mock(OrganizationDao.class);
+        when(organizationDao.get(any(UUID.class))).thenAnswer(invocation ->
+                new OrganizationEntry("test"));
+
+        return new Dispatcher(cfg, dispatcherDao, channelManager, mock(ProcessQueueListener.class), mock(LogManager.class),
+                organizationDao, mock(RepositoryDao.class), queueDao, Collections.emptySet(), new MetricRegistry());
+    }
+
+    private static int countPicked(List<UUID> picked, Set<UUID> instanceIds) {
+        synchronized (picked) {
+            return (int) picked.stream().filter(instanceIds::contains).count();
+        }
+    }
+}
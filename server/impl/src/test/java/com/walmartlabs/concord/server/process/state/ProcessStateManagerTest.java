@@ -26,6 +26,7 @@ import com.walmartlabs.concord.server.AbstractDaoTest;
 import com.walmartlabs.concord.server.cfg.ProcessStateConfiguration;
 import com.walmartlabs.concord.server.cfg.SecretStoreConfiguration;
 import com.walmartlabs.concord.server.process.ProcessKey;
+import org.jooq.impl.DSL;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -35,14 +36,26 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
+import static com.walmartlabs.concord.server.jooq.tables.ProcessState.PROCESS_STATE;
+import static com.walmartlabs.concord.server.jooq.tables.ProcessStateBlobs.PROCESS_STATE_BLOBS;
 import static com.walmartlabs.concord.server.process.state.ProcessStateManager.copyTo;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @Ignore("requires a local DB instance")
 public class ProcessStateManagerTest extends AbstractDaoTest {
@@ -80,6 +93,158 @@ public class ProcessStateManagerTest extends AbstractDaoTest {
         assertFileContent("456", tmpDir.resolve("file-2"));
     }
 
+    @Test
+    public void testSharedBlobs() throws Exception {
+        ProcessKey processKeyA = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        ProcessKey processKeyB = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+
+        Path baseDir = Files.createTempDirectory("testImport");
+
+        String content = UUID.randomUUID().toString();
+        writeTempFile(baseDir.resolve("file-1"), content.getBytes());
+        writeTempFile(baseDir.resolve("file-2"), content.getBytes());
+        writeTempFile(baseDir.resolve(Constants.Files.REQUEST_DATA_FILE_NAME), "secret".getBytes());
+
+        SecretStoreConfiguration secretCfg = mock(SecretStoreConfiguration.class);
+        when(secretCfg.getServerPwd()).thenReturn("test".getBytes());
+        when(secretCfg.getSecretStoreSalt()).thenReturn("test".getBytes());
+
+        ProcessStateConfiguration stateCfg = new ProcessStateConfiguration(24 * 60 * 60 * 1000, Collections.singletonList(Constants.Files.REQUEST_DATA_FILE_NAME));
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), secretCfg, stateCfg);
+        stateManager.importPath(processKeyA, null, baseDir);
+        stateManager.importPath(processKeyB, null, baseDir);
+
+        // both processes and both files share the same blob
+        int blobs = DSL.using(getConfiguration()).fetchCount(PROCESS_STATE_BLOBS,
+                PROCESS_STATE_BLOBS.BLOB_DATA.eq(content.getBytes()));
+        assertEquals(1, blobs);
+
+        // the secure file is stored with each process
+        int encrypted = DSL.using(getConfiguration()).fetchCount(PROCESS_STATE,
+                PROCESS_STATE.INSTANCE_ID.in(processKeyA.getInstanceId(), processKeyB.getInstanceId())
+                        .and(PROCESS_STATE.IS_ENCRYPTED.isTrue())
+                        .and(PROCESS_STATE.ITEM_DATA.isNotNull())
+                        .and(PROCESS_STATE.ITEM_HASH.isNull()));
+        assertEquals(2, encrypted);
+
+        for (ProcessKey pk : Arrays.asList(processKeyA, processKeyB)) {
+            Path tmpDir = Files.createTempDirectory("testExport");
+            assertTrue(stateManager.export(pk, copyTo(tmpDir)));
+            assertFileContent(content, tmpDir.resolve("file-1"));
+            assertFileContent(content, tmpDir.resolve("file-2"));
+            assertFileContent("secret", tmpDir.resolve(Constants.Files.REQUEST_DATA_FILE_NAME));
+        }
+    }
+
+    @Test
+    public void testExportPages() throws Exception {
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+
+        Path baseDir = Files.createTempDirectory("testImport");
+
+        // more than a single page
+        int files = 50;
+        for (int i = 0; i < files; i++) {
+            writeTempFile(baseDir.resolve("file-" + i), String.valueOf(i).getBytes());
+        }
+
+        ProcessStateConfiguration stateCfg = new ProcessStateConfiguration(24 * 60 * 60 * 1000, Collections.singletonList(Constants.Files.REQUEST_DATA_FILE_NAME));
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), mock(SecretStoreConfiguration.class), stateCfg);
+        stateManager.importPath(processKey, null, baseDir);
+
+        List<String> names = new ArrayList<>();
+        Path tmpDir = Files.createTempDirectory("testExport");
+        ProcessStateManager.ItemConsumer copy = copyTo(tmpDir);
+        assertTrue(stateManager.export(processKey, (name, unixMode, src) -> {
+            names.add(name);
+            copy.accept(name, unixMode, src);
+        }));
+
+        assertEquals(files, names.size());
+        assertEquals(files, new HashSet<>(names).size());
+        for (int i = 0; i < files; i++) {
+            assertFileContent(String.valueOf(i), tmpDir.resolve("file-" + i));
+        }
+    }
+
+    @Test
+    public void testConsistentExport() throws Exception {
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+
+        Path baseDir = Files.createTempDirectory("testImport");
+
+        // more than a single page
+        int files = 1500;
+        for (int i = 0; i < files; i++) {
+            writeTempFile(baseDir.resolve("file-" + i), String.valueOf(i).getBytes());
+        }
+
+        ProcessStateConfiguration stateCfg = new ProcessStateConfiguration(24 * 60 * 60 * 1000, Collections.singletonList(Constants.Files.REQUEST_DATA_FILE_NAME));
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), mock(SecretStoreConfiguration.class), stateCfg);
+        stateManager.importPath(processKey, null, baseDir);
+
+        List<String> names = new ArrayList<>();
+        assertTrue(stateManager.export(processKey, (name, unixMode, src) -> {
+            if (names.isEmpty()) {
+                // the state is removed while the export is in progress
+                stateManager.delete(processKey);
+            }
+            names.add(name);
+        }));
+
+        // the export still returns the whole state
+        assertEquals(files, names.size());
+        assertEquals(files, new HashSet<>(names).size());
+        assertFalse(stateManager.export(processKey, (name, unixMode, src) -> fail("unexpected " + name)));
+    }
+
+    @Test
+    public void testLargeSecureFile() throws Exception {
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+
+        Path baseDir = Files.createTempDirectory("testImport");
+
+        // the encrypted data is sent to the DB in several COPY chunks
+        byte[] data = new byte[300 * 1024];
+        new Random().nextBytes(data);
+        Files.write(baseDir.resolve(Constants.Files.REQUEST_DATA_FILE_NAME), data);
+        writeTempFile(baseDir.resolve("file-1"), "123".getBytes());
+
+        SecretStoreConfiguration secretCfg = mock(SecretStoreConfiguration.class);
+        when(secretCfg.getServerPwd()).thenReturn("test".getBytes());
+        when(secretCfg.getSecretStoreSalt()).thenReturn("test".getBytes());
+
+        ProcessStateConfiguration stateCfg = new ProcessStateConfiguration(24 * 60 * 60 * 1000, Collections.singletonList(Constants.Files.REQUEST_DATA_FILE_NAME));
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), secretCfg, stateCfg);
+        stateManager.importPath(processKey, null, baseDir);
+
+        Path tmpDir = Files.createTempDirectory("testExport");
+        assertTrue(stateManager.export(processKey, copyTo(tmpDir)));
+        assertArrayEquals(data, Files.readAllBytes(tmpDir.resolve(Constants.Files.REQUEST_DATA_FILE_NAME)));
+        assertFileContent("123", tmpDir.resolve("file-1"));
+    }
+
+    @Test
+    public void testSpecialNames() throws Exception {
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+
+        Path baseDir = Files.createTempDirectory("testImport");
+
+        String name = "a\tb\\c\nd e.txt";
+        writeTempFile(baseDir.resolve(name), "123".getBytes());
+
+        ProcessStateConfiguration stateCfg = new ProcessStateConfiguration(24 * 60 * 60 * 1000, Collections.singletonList(Constants.Files.REQUEST_DATA_FILE_NAME));
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), mock(SecretStoreConfiguration.class), stateCfg);
+        stateManager.importPath(processKey, "dir", baseDir);
+
+        Optional<List<String>> paths = stateManager.findPath(processKey, "dir/", s -> Optional.of(s.collect(Collectors.toList())));
+        assertEquals(Optional.of(Collections.singletonList("dir/" + name)), paths);
+
+        Path tmpDir = Files.createTempDirectory("testExport");
+        assertTrue(stateManager.exportDirectory(processKey, "dir", copyTo(tmpDir)));
+        assertFileContent("123", tmpDir.resolve(name));
+    }
+
     @Ignore
     @Test
     public void testLargeImport() throws Exception {
@@ -39,9 +39,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class QueueClient {
@@ -49,7 +47,7 @@ public class QueueClient {
     private static final Logger log = LoggerFactory.getLogger(QueueClient.class);
 
     private final Set<MessageType> ignoreRequests;
-    private final List<RequestEntry> requests;
+    private final BlockingQueue<RequestEntry> requests;
 
     private final Worker worker;
     private Thread workerThread;
@@ -57,7 +55,7 @@ public class QueueClient {
 
     public QueueClient(QueueClientConfiguration cfg) throws URISyntaxException {
         this.ignoreRequests = new HashSet<>();
-        this.requests = new ArrayList<>();
+        this.requests = new LinkedBlockingQueue<>();
 
         this.worker = new Worker(cfg, requests);
     }
@@ -81,7 +79,7 @@ public class QueueClient {
             return;
         }
 
-        synchronized (requests) {
+        synchronized (ignoreRequests) {
             if (onMaintenanceMode) {
                 return;
             }
@@ -94,10 +92,11 @@ public class QueueClient {
     @SuppressWarnings("unchecked")
     public <E extends Message> Future<E> request(Message request) {
         SettableFuture<Message> f = SettableFuture.create();
-        synchronized (requests) {
+        synchronized (ignoreRequests) {
             if (ignoreRequests.contains(request.getMessageType())) {
                 f.set(null);
             } else {
+                // wakes up the worker, the request is sent immediately
                 requests.add(new RequestEntry(request, f));
             }
         }
@@ -112,19 +111,30 @@ public class QueueClient {
             DISCONNECTING
         }
 
-        private static final long PROCESS_REQUEST_DELAY = 1000;
+        /**
+         * Max time to wait for new requests before checking the connection's activity.
+         */
+        private static final long MAX_POLL_TIMEOUT = 1000;
         private static final long RECONNECT_DELAY = 10000;
 
+        /**
+         * Used to wake up the worker, e.g. when a response is received and
+         * a deferred request of the same type can be sent.
+         */
+        private static final RequestEntry WAKEUP = new RequestEntry(null, null);
+
         private final AtomicLong requestIdGenerator = new AtomicLong();
 
         private final String userAgent;
         private final String apiToken;
         private final URI[] destUris;
         private final Map<Long, RequestEntry> awaitResponses;
-        private final List<RequestEntry> requests;
+        private final BlockingQueue<RequestEntry> requests;
+        private final Queue<RequestEntry> deferredRequests = new LinkedList<>();
         private final long pingInterval;
         private final long maxNoActivityPeriod;
         private final long connectTimeout;
+        private final QueueClientConfiguration cfg;
 
         private WebSocketClient client;
         private long lastRequestTimestamp;
@@ -132,7 +142,7 @@ public class QueueClient {
 
         private volatile State state;
 
-        public Worker(QueueClientConfiguration cfg, List<RequestEntry> requests) throws URISyntaxException {
+        public Worker(QueueClientConfiguration cfg, BlockingQueue<RequestEntry> requests) throws URISyntaxException {
             this.userAgent = cfg.getUserAgent();
             this.apiToken = cfg.getApiKey();
 
@@ -142,6 +152,7 @@ public class QueueClient {
             this.pingInterval = cfg.getPingInterval();
             this.maxNoActivityPeriod = cfg.getMaxNoActivityPeriod();
             this.connectTimeout = cfg.getConnectTimeout();
+            this.cfg = cfg;
 
             this.state = State.CONNECTING;
         }
@@ -164,7 +175,6 @@ public class QueueClient {
                         case CONNECTED: {
                             processRequests(session);
                             processPing(session);
-                            sleep(PROCESS_REQUEST_DELAY);
                             break;
                         }
                         case DISCONNECTING: {
@@ -175,6 +185,8 @@ public class QueueClient {
                             break;
                         }
                     }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 } catch (Exception e) {
                     log.error("mainLoop -> error", e);
                     state = State.DISCONNECTING;
@@ -223,12 +235,16 @@ public class QueueClient {
                 return;
             }
             request.onResponse(response);
+
+            // the next request of the same type can be sent now
+            requests.offer(WAKEUP);
+
             log.debug("onWebSocketText ['{}'] -> done", message);
         }
 
         @Override
         public void onWebSocketClose(int statusCode, String reason) {
-            state = State.DISCONNECTING;
+            disconnect();
             log.info("onWebSocketClose [{}, '{}'] -> done", statusCode, reason);
         }
 
@@ -244,6 +260,7 @@ public class QueueClient {
 
         public void disconnect() {
             state = State.DISCONNECTING;
+            requests.offer(WAKEUP);
         }
 
         private Session connect(URI destUri) throws Exception {
@@ -261,7 +278,6 @@ public class QueueClient {
                 return false;
             }
 
-            message.setCorrelationId(requestIdGenerator.incrementAndGet());
             try {
                 session.getRemote().sendString(MessageSerializer.serialize(message));
 
@@ -275,20 +291,22 @@ public class QueueClient {
             }
         }
 
-        private void processRequests(Session session) {
+        private void processRequests(Session session) throws InterruptedException {
             RequestEntry e = nextRequest();
             if (e == null) {
                 return;
             }
 
+            // register the request before sending, the response can arrive before send() returns
+            e.request.setCorrelationId(requestIdGenerator.incrementAndGet());
+            awaitResponses.put(e.getCorrelationId(), e);
+
             boolean sent = send(session, e.request);
             if (!sent) {
+                awaitResponses.remove(e.getCorrelationId());
                 e.cancel();
-                state = State.DISCONNECTING;
-                return;
+                disconnect();
             }
-
-            awaitResponses.put(e.getCorrelationId(), e);
         }
 
         private void processPing(Session session) throws IOException {
@@ -321,35 +339,54 @@ public class QueueClient {
                 log.error("stop -> error", e);
             }
 
-            synchronized (this.requests) {
-                this.requests.forEach(RequestEntry::cancel);
-                this.requests.clear();
+            List<RequestEntry> l = new ArrayList<>(deferredRequests);
+            deferredRequests.clear();
+            requests.drainTo(l);
+            l.stream()
+                    .filter(r -> r != WAKEUP)
+                    .forEach(RequestEntry::cancel);
 
-                this.awaitResponses.values().forEach(RequestEntry::cancel);
-                this.awaitResponses.clear();
-            }
+            this.awaitResponses.values().forEach(RequestEntry::cancel);
+            this.awaitResponses.clear();
 
             log.info("close -> done");
         }
 
-        private RequestEntry nextRequest() {
-            synchronized (requests) {
-                Iterator<RequestEntry> it = requests.iterator();
-                while (it.hasNext()) {
-                    RequestEntry request = it.next();
-                    if (!alreadySent(request.request.getMessageType())) {
-                        it.remove();
-                        return request;
-                    }
+        /**
+         * Returns the next request that can be sent or {@code null} if there
+         * are no such requests. Waits up to {@link #MAX_POLL_TIMEOUT} for
+         * new requests.
+         */
+        private RequestEntry nextRequest() throws InterruptedException {
+            // limit the number of requests of each type waiting for responses
+            Iterator<RequestEntry> it = deferredRequests.iterator();
+            while (it.hasNext()) {
+                RequestEntry request = it.next();
+                if (!limitReached(request.request.getMessageType())) {
+                    it.remove();
+                    return request;
                 }
             }
 
-            return null;
+            RequestEntry request = requests.poll(MAX_POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+            if (request == null || request == WAKEUP) {
+                return null;
+            }
+
+            if (limitReached(request.request.getMessageType())) {
+                deferredRequests.add(request);
+                return null;
+            }
+
+            return request;
         }
 
-        private boolean alreadySent(MessageType requestType) {
-            return awaitResponses.values().stream()
-                    .anyMatch(ar -> ar.request.getMessageType() == requestType);
+        private boolean limitReached(MessageType requestType) {
+            long n = awaitResponses.values().stream()
+                    .filter(ar -> ar.request.getMessageType() == requestType)
+                    .count();
+
+            return n >= cfg.getMaxInFlightRequests(requestType);
         }
 
         private void sleep(long ms) {
@@ -369,7 +406,7 @@ public class QueueClient {
         }
     }
 
-    private class RequestEntry {
+    private static class RequestEntry {
         private final Message request;
         private final SettableFuture<Message> future;
 
@@ -20,7 +20,11 @@ package com.walmartlabs.concord.server.queueclient;
  * =====
  */
 
+import com.walmartlabs.concord.server.queueclient.message.MessageType;
+
 import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class QueueClientConfiguration implements Serializable {
 
@@ -30,6 +34,7 @@ public class QueueClientConfiguration implements Serializable {
     private final long connectTimeout;
     private final long pingInterval;
     private final long maxNoActivityPeriod;
+    private final Map<MessageType, Integer> maxInFlightRequests;
 
     private QueueClientConfiguration(Builder b) {
         this.addresses = b.addresses;
@@ -38,6 +43,7 @@ public class QueueClientConfiguration implements Serializable {
         this.connectTimeout = b.connectTimeout;
         this.pingInterval = b.pingInterval;
         this.maxNoActivityPeriod = b.maxNoActivityPeriod;
+        this.maxInFlightRequests = new EnumMap<>(b.maxInFlightRequests);
     }
 
     public String[] getAddresses() {
@@ -64,6 +70,14 @@ public class QueueClientConfiguration implements Serializable {
         return maxNoActivityPeriod;
     }
 
+    /**
+     * Returns the max number of requests of the specified type waiting
+     * for responses at the same time.
+     */
+    public int getMaxInFlightRequests(MessageType type) {
+        return maxInFlightRequests.getOrDefault(type, 1);
+    }
+
     public static class Builder {
 
         private final String[] addresses;
@@ -73,6 +87,7 @@ public class QueueClientConfiguration implements Serializable {
         private long connectTimeout = 30000;
         private long pingInterval = 10000;
         private long maxNoActivityPeriod = 30000;
+        private final Map<MessageType, Integer> maxInFlightRequests = new EnumMap<>(MessageType.class);
 
         public Builder(String[] addresses) {
             this.addresses = addresses;
@@ -103,6 +118,11 @@ public class QueueClientConfiguration implements Serializable {
             return this;
         }
 
+        public Builder maxInFlightRequests(MessageType type, int max) {
+            this.maxInFlightRequests.put(type, max);
+            return this;
+        }
+
         public QueueClientConfiguration build() {
             return new QueueClientConfiguration(this);
         }
@@ -0,0 +1,224 @@
+package com.walmartlabs.concord.server.queueclient;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.queueclient.message.Message;
+import com.walmartlabs.concord.server.queueclient.message.MessageType;
+import com.walmartlabs.concord.server.queueclient.message.ProcessRequest;
+import com.walmartlabs.concord.server.queueclient.message.ProcessResponse;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.servlet.WebSocketServlet;
+import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the request flow using an in-process websocket server and a fake dispatcher.
+ */
+public class QueueClientTest {
+
+    private static final int WORKERS = 16;
+
+    private final List<QueueClient> clients = new ArrayList<>();
+
+    private Server server;
+    private int port;
+    private volatile FakeDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new Server(0);
+
+        ServletContextHandler ctx = new ServletContextHandler();
+        ctx.addServlet(new ServletHolder(new TestWebSocketServlet(() -> dispatcher)), "/websocket");
+        server.setHandler(ctx);
+        server.start();
+
+        port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        clients.forEach(QueueClient::stop);
+        server.stop();
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentRequests() throws Exception {
+        dispatcher = new FakeDispatcher(1);
+        QueueClient client = createClient("/websocket", 1);
+
+        // requests of the same type are sent one at a time
+        Future<ProcessResponse> a = request(client);
+        Future<ProcessResponse> b = request(client);
+
+        assertNotNull(a.get());
+        assertNotNull(b.get());
+    }
+
+    /**
+     * A new request must be sent as soon as it's queued, without waiting
+     * for the response to the previous one.
+     */
+    @Test(timeout = 30000)
+    public void testSendWithoutWaiting() throws Exception {
+        // the responses are held until both requests are received
+        dispatcher = new FakeDispatcher(2);
+        QueueClient client = createClient("/websocket", 2);
+
+        Future<ProcessResponse> a = request(client);
+        assertNotNull(dispatcher.received.poll(10, TimeUnit.SECONDS));
+        assertFalse(a.isDone());
+
+        // the first request is still waiting for its response
+        Future<ProcessResponse> b = request(client);
+        assertNotNull(dispatcher.received.poll(10, TimeUnit.SECONDS));
+
+        assertNotNull(a.get(10, TimeUnit.SECONDS));
+        assertNotNull(b.get(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * The requests for all of the agent's workers must be sent at once.
+     * The dispatcher doesn't respond until it receives all of them.
+     */
+    @Test(timeout = 30000)
+    public void testRequestsForAllWorkers() throws Exception {
+        dispatcher = new FakeDispatcher(WORKERS);
+        QueueClient client = createClient("/websocket", WORKERS);
+
+        List<Future<ProcessResponse>> l = new ArrayList<>();
+        for (int i = 0; i < WORKERS; i++) {
+            l.add(request(client));
+        }
+
+        for (Future<ProcessResponse> f : l) {
+            assertNotNull(f.get(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(WORKERS, dispatcher.received.size());
+    }
+
+    private QueueClient createClient(String path, int maxInFlight) throws Exception {
+        QueueClient c = new QueueClient(new QueueClientConfiguration.Builder(new String[]{"ws://localhost:" + port + path})
+                .apiKey("test")
+                .userAgent("test")
+                .maxInFlightRequests(MessageType.PROCESS_REQUEST, maxInFlight)
+                .build());
+        c.start();
+        clients.add(c);
+        return c;
+    }
+
+    private static Future<ProcessResponse> request(QueueClient client) {
+        return client.request(new ProcessRequest(Collections.emptyMap()));
+    }
+
+    public static class TestWebSocketServlet extends WebSocketServlet {
+
+        private final Callable<FakeDispatcher> dispatcher;
+
+        public TestWebSocketServlet(Callable<FakeDispatcher> dispatcher) {
+            this.dispatcher = dispatcher;
+        }
+
+        @Override
+        public void configure(WebSocketServletFactory factory) {
+            factory.setCreator((req, resp) -> {
+                try {
+                    return new Responder(dispatcher.call());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Responds to each {@link ProcessRequest} with a new {@link ProcessResponse}.
+     * The responses are held until the specified number of requests is received.
+     */
+    public static class FakeDispatcher {
+
+        private final int holdUntil;
+        private final List<Runnable> held = new ArrayList<>();
+        private final BlockingQueue<Long> received = new LinkedBlockingQueue<>();
+
+        public FakeDispatcher(int holdUntil) {
+            this.holdUntil = holdUntil;
+        }
+
+        private synchronized void onRequest(Responder responder, Message req) {
+            received.add(req.getCorrelationId());
+
+            ProcessResponse resp = new ProcessResponse(req.getCorrelationId(), UUID.randomUUID(),
+                    null, null, null, null, null, null);
+            held.add(() -> responder.send(resp));
+
+            if (held.size() < holdUntil) {
+                return;
+            }
+
+            held.forEach(Runnable::run);
+            held.clear();
+        }
+    }
+
+    public static class Responder extends WebSocketAdapter {
+
+        private final FakeDispatcher dispatcher;
+
+        public Responder(FakeDispatcher dispatcher) {
+            this.dispatcher = dispatcher;
+        }
+
+        @Override
+        public void onWebSocketText(String message) {
+            Message req = MessageSerializer.deserialize(message);
+            if (req.getMessageType() != MessageType.PROCESS_REQUEST) {
+                return;
+            }
+
+            dispatcher.onRequest(this, req);
+        }
+
+        private void send(Message resp) {
+            try {
+                getRemote().sendString(MessageSerializer.serialize(resp));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}